@@ -0,0 +1,106 @@
+package com.griddynamics.api_gateway;
+
+/**
+ * How many requests may be in flight to one backend at a time, adjusted from the latency it
+ * answers with (AIMD on a latency signal, in the spirit of TCP Vegas).
+ * <p>
+ * Two moving averages of the backend latency are kept: a short one (about the last 10
+ * responses) and a long one (about the last 500). While the short one stays within
+ * {@code tolerance} times the long one, each success adds {@code 1 / limit}, so the limit grows
+ * by about one per round of {@code limit} requests. When the short average climbs above that,
+ * or a request fails or times out, the backend is queueing: the limit is multiplied by
+ * {@code backoff}, at most once per short-average latency so a single slow burst doesn't
+ * collapse it. The limit only grows while at least half of it is in use.
+ * <p>
+ * Until the first decrease each success adds a whole 1 instead (slow start), so a fresh gateway
+ * finds a busy backend's level in a few round trips rather than minutes.
+ * <p>
+ * Shared by every gateway instance; the state is tiny and every method is short, so a plain
+ * lock is cheaper than anything clever.
+ */
+final class AdaptiveLimiter {
+
+  private static final double SHORT_WEIGHT = 0.1;
+  private static final double LONG_WEIGHT = 0.002;
+  // The long average means little before this many samples (JIT warm-up, pools still growing)
+  private static final int BASELINE_SAMPLES = 200;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double tolerance;
+  private final double backoff;
+
+  private double limit;
+  private int inFlight;
+  private double shortRttNanos;
+  private double longRttNanos;
+  private long samples;
+  private long lastDecreaseNanos;
+  private boolean slowStart = true;
+
+  AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoff) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.tolerance = tolerance;
+    this.backoff = backoff;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+  }
+
+  synchronized boolean tryAcquire() {
+    if (inFlight >= (int) limit) {
+      return false;
+    }
+    inFlight++;
+    return true;
+  }
+
+  // The request was answered (any status below 500): use its latency
+  synchronized void onSuccess(long latencyNanos, long nowNanos) {
+    boolean busy = inFlight * 2 >= limit;
+    inFlight--;
+    shortRttNanos = shortRttNanos == 0 ? latencyNanos : shortRttNanos + SHORT_WEIGHT * (latencyNanos - shortRttNanos);
+    longRttNanos = longRttNanos == 0 ? latencyNanos : longRttNanos + LONG_WEIGHT * (latencyNanos - longRttNanos);
+
+    if (++samples >= BASELINE_SAMPLES && shortRttNanos > longRttNanos * tolerance) {
+      decrease(nowNanos);
+    } else if (busy) {
+      limit = Math.min(maxLimit, limit + (slowStart ? 1 : 1 / limit));
+    }
+  }
+
+  // The request failed, timed out or got a 5xx: the backend is struggling
+  synchronized void onFailure(long nowNanos) {
+    inFlight--;
+    decrease(nowNanos);
+  }
+
+  // The request never reached the backend (e.g. the gateway's own pool was full): no signal
+  synchronized void release() {
+    inFlight--;
+  }
+
+  synchronized int limit() {
+    return (int) limit;
+  }
+
+  synchronized int inFlight() {
+    return inFlight;
+  }
+
+  synchronized double shortRttMs() {
+    return shortRttNanos / 1e6;
+  }
+
+  synchronized double longRttMs() {
+    return longRttNanos / 1e6;
+  }
+
+  private void decrease(long nowNanos) {
+    if (lastDecreaseNanos != 0 && nowNanos - lastDecreaseNanos < shortRttNanos) {
+      return;
+    }
+    lastDecreaseNanos = nowNanos;
+    slowStart = false;
+    limit = Math.max(minLimit, limit * backoff);
+  }
+}
@@ -0,0 +1,27 @@
+package com.griddynamics.api_gateway;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Vertx;
+
+/**
+ * What every gateway instance shares about one backend: its counters, its admission guard and
+ * its routing table. Each instance builds its own {@link BackendClient} on top (see
+ * {@link BackendClient#fromEnv}); settings are read with the backend's prefix, e.g. USER_SERVICE.
+ */
+public record Backend(String name, String envPrefix, BackendStats stats, BackendGuard guard, RoutingTable routes) {
+
+  public static Backend fromEnv(String name, String envPrefix, String defaultHost, int defaultPort,
+                                MeterRegistry registry) {
+    RoutingTable routes = RoutingTable.fromEnv(name, envPrefix, defaultHost, defaultPort);
+    routes.bindTo(registry);
+    return new Backend(name, envPrefix,
+      new BackendStats(name, registry),
+      BackendGuard.fromEnv(name, envPrefix, registry),
+      routes);
+  }
+
+  // The endpoints file watch and the health checks: once per gateway, not per instance
+  public void start(Vertx vertx) {
+    routes.start(vertx, envPrefix);
+  }
+}
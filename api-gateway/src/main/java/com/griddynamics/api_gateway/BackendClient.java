@@ -0,0 +1,235 @@
+package com.griddynamics.api_gateway;
+
+import com.griddynamics.common.Env;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.ConnectionPoolTooBusyException;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.http.PoolOptions;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.handler.HttpException;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A pooled HTTP client for one backend service, tuned from environment variables with
+ * the backend's prefix (e.g. USER_SERVICE_POOL_SIZE):
+ * <ul>
+ *   <li>{@code _POOL_SIZE} max HTTP/1.1 connections per endpoint per gateway instance (default 50)</li>
+ *   <li>{@code _HTTP2} talk HTTP/2 over cleartext with prior knowledge (default false)</li>
+ *   <li>{@code _HTTP2_POOL_SIZE} max HTTP/2 connections (default 1)</li>
+ *   <li>{@code _HTTP2_MULTIPLEXING_LIMIT} max concurrent streams per connection (default 100)</li>
+ *   <li>{@code _KEEP_ALIVE} / {@code _KEEP_ALIVE_TIMEOUT_S} (default true / 60)</li>
+ *   <li>{@code _PIPELINING} / {@code _PIPELINING_LIMIT} (default false / 10)</li>
+ *   <li>{@code _CONNECT_TIMEOUT_MS} (default 2000), {@code _IDLE_TIMEOUT_S} (default 60)</li>
+ *   <li>{@code _MAX_WAIT_QUEUE} requests allowed to wait for a connection, -1 for unbounded (default 500)</li>
+ *   <li>{@code _REQUEST_TIMEOUT_MS} longest wait for a connection, and for the next bit of the
+ *   response once sent (default 10000)</li>
+ * </ul>
+ * Every request first has to get past the backend's {@link BackendGuard}, then goes to the
+ * endpoint its {@link RoutingTable} picks; the vert.x client keeps a separate pool per endpoint.
+ */
+public class BackendClient {
+
+  private final String name;
+  private final HttpClient httpClient;
+  private final BackendStats stats;
+  private final BackendGuard guard;
+  private final RoutingTable routes;
+  private final long timeoutMs;
+  // Where each open request went. Only touched from this instance's event loop
+  private final Map<HttpClientRequest, Endpoint> endpointsByRequest = new IdentityHashMap<>();
+
+  public BackendClient(String name, HttpClient httpClient, BackendStats stats, BackendGuard guard,
+                       RoutingTable routes, long timeoutMs) {
+    this.name = name;
+    this.httpClient = httpClient;
+    this.stats = stats;
+    this.guard = guard;
+    this.routes = routes;
+    this.timeoutMs = timeoutMs;
+  }
+
+  /**
+   * Builds a client on top of the backend's shared state. Each gateway instance has its own
+   * client (the pool limits are per instance) but all instances share one stats object, one
+   * guard and one routing table per backend.
+   */
+  public static BackendClient fromEnv(Vertx vertx, Backend backend) {
+    String name = backend.name();
+    String envPrefix = backend.envPrefix();
+
+    HttpClientOptions clientOptions = new HttpClientOptions()
+      .setName(name)
+      .setKeepAlive(Env.bool(envPrefix + "_KEEP_ALIVE", true))
+      .setKeepAliveTimeout(Env.integer(envPrefix + "_KEEP_ALIVE_TIMEOUT_S", 60))
+      .setPipelining(Env.bool(envPrefix + "_PIPELINING", false))
+      .setPipeliningLimit(Env.integer(envPrefix + "_PIPELINING_LIMIT", 10))
+      .setConnectTimeout(Env.integer(envPrefix + "_CONNECT_TIMEOUT_MS", 2000))
+      .setIdleTimeout(Env.integer(envPrefix + "_IDLE_TIMEOUT_S", 60))
+      .setIdleTimeoutUnit(TimeUnit.SECONDS);
+
+    if (Env.bool(envPrefix + "_HTTP2", false)) {
+      // h2c with prior knowledge: no upgrade round trip, one connection carries many streams
+      clientOptions
+        .setProtocolVersion(HttpVersion.HTTP_2)
+        .setHttp2ClearTextUpgrade(false)
+        .setHttp2MultiplexingLimit(Env.integer(envPrefix + "_HTTP2_MULTIPLEXING_LIMIT", 100))
+        .setHttp2KeepAliveTimeout(Env.integer(envPrefix + "_KEEP_ALIVE_TIMEOUT_S", 60));
+    }
+
+    PoolOptions poolOptions = new PoolOptions()
+      .setHttp1MaxSize(Env.integer(envPrefix + "_POOL_SIZE", 50))
+      .setHttp2MaxSize(Env.integer(envPrefix + "_HTTP2_POOL_SIZE", 1))
+      .setMaxWaitQueueSize(Env.integer(envPrefix + "_MAX_WAIT_QUEUE", 500));
+
+    HttpClient httpClient = vertx.httpClientBuilder()
+      .with(clientOptions)
+      .with(poolOptions)
+      .build();
+
+    return new BackendClient(name, httpClient, backend.stats(), backend.guard(), backend.routes(),
+      Env.longValue(envPrefix + "_REQUEST_TIMEOUT_MS", 10000));
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public BackendStats stats() {
+    return stats;
+  }
+
+  /**
+   * Leases a connection and opens a request on it. The caller must call {@link #requestEnded}
+   * once the exchange is over (response fully received or failed). Fails right away with
+   * {@link BackendGuard.Rejected} when the backend's guard turns the request away.
+   */
+  public Future<HttpClientRequest> request(HttpMethod method, String uri) {
+    long start = System.nanoTime();
+    BackendGuard.Rejected rejected = guard.tryAcquire(start);
+    if (rejected != null) {
+      return Future.failedFuture(rejected);
+    }
+    Endpoint endpoint = routes.pick();
+    endpoint.requestStarted();
+    stats.connectionRequested();
+    return httpClient.request(new RequestOptions()
+        .setMethod(method)
+        .setHost(endpoint.host)
+        .setPort(endpoint.port)
+        .setURI(uri)
+        .setConnectTimeout(timeoutMs)
+        .setIdleTimeout(timeoutMs))
+      .onSuccess(req -> {
+        stats.connectionAcquired(System.nanoTime() - start);
+        endpointsByRequest.put(req, endpoint);
+      })
+      .onFailure(err -> {
+        boolean poolFull = err instanceof ConnectionPoolTooBusyException;
+        stats.connectionFailed(poolFull);
+        if (poolFull) {
+          guard.release(start);
+          endpoint.requestReleased();
+        } else {
+          guard.onFailure(start);
+          routes.requestEnded(endpoint, true);
+        }
+      });
+  }
+
+  // startNanos is when the caller called request(); statusCode 0 means the exchange failed
+  public void requestEnded(HttpClientRequest request, long startNanos, int statusCode) {
+    Endpoint endpoint = endpointsByRequest.remove(request);
+    if (endpoint != null) {
+      routes.requestEnded(endpoint, statusCode == 0 || statusCode >= 500);
+    }
+    stats.requestEnded(System.nanoTime() - startNanos, statusCode);
+    if (statusCode == 0) {
+      guard.onFailure(startNanos);
+    } else {
+      guard.onResponse(startNanos, statusCode);
+    }
+  }
+
+  /**
+   * Answers the client when a request to this backend failed before anything was sent back:
+   * {@code 503} (with Retry-After) when the gateway turned it away itself, {@code 504} when the
+   * backend didn't answer in time, {@code 502} otherwise.
+   */
+  public void respondWithFailure(HttpServerResponse response, Throwable err) {
+    if (err instanceof BackendGuard.Rejected rejected) {
+      response.setStatusCode(503)
+        .putHeader(HttpHeaders.RETRY_AFTER, String.valueOf(rejected.retryAfterSeconds()))
+        .end("Service Unavailable: " + rejected.getMessage());
+    } else if (err instanceof ConnectionPoolTooBusyException) {
+      // Too many requests already waiting for a connection: shed load instead of queueing more
+      response.setStatusCode(503).end("Service Unavailable: " + name + " is busy");
+    } else if (err instanceof TimeoutException) {
+      response.setStatusCode(504).end("Gateway Timeout: " + name + " did not answer in time");
+    } else {
+      response.setStatusCode(502).end("Bad Gateway: " + err.getMessage());
+    }
+  }
+
+  /**
+   * A GET whose response the gateway uses itself (e.g. to assemble {@code /feed}) instead of
+   * relaying it. The caller's conditional, Range and Accept-Encoding headers are not sent, so the
+   * backend answers with the whole plain body. Fails with an {@link HttpException} on a non-2xx
+   * status, and with a {@link java.util.concurrent.TimeoutException} once {@code timeoutMs} has
+   * passed in total, waiting for a connection included. A timed-out request is reset so it lets
+   * go of its connection.
+   */
+  public Future<Buffer> get(String uri, MultiMap headers, long timeoutMs) {
+    long start = System.nanoTime();
+    HttpClientRequest[] sent = new HttpClientRequest[1];
+    boolean[] abandoned = new boolean[1];
+    int[] status = new int[1];
+
+    return request(HttpMethod.GET, uri)
+      .compose(req -> {
+        if (abandoned[0]) {
+          // The connection came too late, the caller has moved on
+          req.reset();
+          requestEnded(req, start, 0);
+          return Future.failedFuture("Request to " + name + " timed out");
+        }
+        sent[0] = req;
+        ProxyHeaders.copySubRequestHeaders(headers, req.headers());
+        return req.send()
+          .compose(response -> {
+            status[0] = response.statusCode();
+            return response.body();
+          })
+          .andThen(ar -> requestEnded(req, start, ar.succeeded() ? status[0] : 0));
+      })
+      .timeout(timeoutMs, TimeUnit.MILLISECONDS)
+      .onFailure(err -> {
+        abandoned[0] = true;
+        if (sent[0] != null) {
+          sent[0].reset();
+        }
+      })
+      .compose(body -> status[0] >= 200 && status[0] < 300
+        ? Future.succeededFuture(body)
+        : Future.failedFuture(new HttpException(status[0], body.toString())));
+  }
+
+  public JsonObject toJson() {
+    return stats.toJson()
+      .put("guard", guard.toJson())
+      .put("endpoints", routes.toJson());
+  }
+}
@@ -0,0 +1,150 @@
+package com.griddynamics.api_gateway;
+
+import com.griddynamics.common.Env;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.VertxException;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for one backend, shared by every gateway instance: an {@link AdaptiveLimiter}
+ * on the number of requests in flight and a {@link CircuitBreaker} in front of it. A request
+ * that either of them turns away fails at once with {@link Rejected} (a {@code 503} for the
+ * client) instead of waiting in the connection pool's queue for a backend that can't keep up.
+ * <p>
+ * Settings use the backend's prefix (e.g. USER_SERVICE_LIMIT_MAX):
+ * <ul>
+ *   <li>{@code _LIMIT_INITIAL} / {@code _LIMIT_MIN} / {@code _LIMIT_MAX} concurrent requests (default 50 / 4 / 500);
+ *   equal min and max give a fixed limit</li>
+ *   <li>{@code _LIMIT_TOLERANCE} how far recent latency may rise over the long-term average before
+ *   the limit shrinks (default 2.0), {@code _LIMIT_BACKOFF} factor it shrinks by (default 0.9)</li>
+ *   <li>{@code _BREAKER_WINDOW} / {@code _BREAKER_FAILURE_RATIO} open after this share of the last
+ *   N requests failed (default 20 / 0.5)</li>
+ *   <li>{@code _BREAKER_OPEN_MS} / {@code _BREAKER_PROBES} reject for this long, then try this many
+ *   requests (default 5000 / 3)</li>
+ * </ul>
+ */
+public class BackendGuard {
+
+  /** Why a request was turned away before reaching the backend. */
+  public static final class Rejected extends VertxException {
+
+    private final long retryAfterSeconds;
+
+    Rejected(String message, long retryAfterSeconds) {
+      super(message, true);
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long retryAfterSeconds() {
+      return retryAfterSeconds;
+    }
+  }
+
+  private final String backend;
+  private final AdaptiveLimiter limiter;
+  private final CircuitBreaker breaker;
+  private final Counter shedByLimit;
+  private final Counter rejectedByBreaker;
+
+  public BackendGuard(String backend, AdaptiveLimiter limiter, CircuitBreaker breaker, MeterRegistry registry) {
+    this.backend = backend;
+    this.limiter = limiter;
+    this.breaker = breaker;
+
+    shedByLimit = Counter.builder("gateway.backend.shed")
+      .description("Requests rejected with 503 before reaching the backend")
+      .tags("backend", backend, "reason", "concurrency_limit")
+      .register(registry);
+    rejectedByBreaker = Counter.builder("gateway.backend.shed")
+      .description("Requests rejected with 503 before reaching the backend")
+      .tags("backend", backend, "reason", "circuit_open")
+      .register(registry);
+    Gauge.builder("gateway.backend.concurrency.limit", limiter, AdaptiveLimiter::limit)
+      .description("Current adaptive limit on requests in flight")
+      .tag("backend", backend)
+      .register(registry);
+    Gauge.builder("gateway.backend.circuit.state", breaker, b -> b.state().ordinal())
+      .description("0 = closed, 1 = half-open, 2 = open")
+      .tag("backend", backend)
+      .register(registry);
+    FunctionCounter.builder("gateway.backend.circuit.opened", breaker, CircuitBreaker::timesOpened)
+      .tag("backend", backend)
+      .register(registry);
+  }
+
+  public static BackendGuard fromEnv(String backend, String envPrefix, MeterRegistry registry) {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(
+      Env.integer(envPrefix + "_LIMIT_INITIAL", 50),
+      Env.integer(envPrefix + "_LIMIT_MIN", 4),
+      Env.integer(envPrefix + "_LIMIT_MAX", 500),
+      Env.doubleValue(envPrefix + "_LIMIT_TOLERANCE", 2.0),
+      Env.doubleValue(envPrefix + "_LIMIT_BACKOFF", 0.9));
+    CircuitBreaker breaker = new CircuitBreaker(
+      Env.integer(envPrefix + "_BREAKER_WINDOW", 20),
+      Env.doubleValue(envPrefix + "_BREAKER_FAILURE_RATIO", 0.5),
+      TimeUnit.MILLISECONDS.toNanos(Env.longValue(envPrefix + "_BREAKER_OPEN_MS", 5000)),
+      Env.integer(envPrefix + "_BREAKER_PROBES", 3));
+    return new BackendGuard(backend, limiter, breaker, registry);
+  }
+
+  /**
+   * Returns null when the request may go ahead, in which case exactly one of {@link #onResponse},
+   * {@link #onFailure} or {@link #release} must follow. Otherwise returns why it may not.
+   */
+  Rejected tryAcquire(long startNanos) {
+    if (!breaker.tryAcquire(startNanos)) {
+      rejectedByBreaker.increment();
+      long retryAfter = TimeUnit.NANOSECONDS.toSeconds(breaker.remainingOpenNanos(startNanos)) + 1;
+      return new Rejected(backend + " is failing, not sending requests to it for now", retryAfter);
+    }
+    if (!limiter.tryAcquire()) {
+      // The breaker let it through, so hand back a probe slot it may have taken
+      breaker.release(startNanos);
+      shedByLimit.increment();
+      return new Rejected(backend + " is at its concurrency limit", 1);
+    }
+    return null;
+  }
+
+  // A full response came back; 5xx counts as a failure for both the limit and the breaker
+  void onResponse(long startNanos, int statusCode) {
+    long now = System.nanoTime();
+    boolean failed = statusCode >= 500;
+    if (failed) {
+      limiter.onFailure(now);
+    } else {
+      limiter.onSuccess(now - startNanos, now);
+    }
+    breaker.onResult(startNanos, failed, now);
+  }
+
+  // Connection refused, reset, timed out...
+  void onFailure(long startNanos) {
+    long now = System.nanoTime();
+    limiter.onFailure(now);
+    breaker.onResult(startNanos, true, now);
+  }
+
+  // Never reached the backend through no fault of its own (the gateway's pool queue was full)
+  void release(long startNanos) {
+    limiter.release();
+    breaker.release(startNanos);
+  }
+
+  public JsonObject toJson() {
+    return new JsonObject()
+      .put("limit", limiter.limit())
+      .put("inFlight", limiter.inFlight())
+      .put("recentLatencyMs", limiter.shortRttMs())
+      .put("baselineLatencyMs", limiter.longRttMs())
+      .put("shed", (long) shedByLimit.count())
+      .put("circuit", breaker.state().name())
+      .put("circuitOpened", breaker.timesOpened())
+      .put("circuitRejected", (long) rejectedByBreaker.count());
+  }
+}
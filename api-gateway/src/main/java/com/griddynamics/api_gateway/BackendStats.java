@@ -0,0 +1,101 @@
+package com.griddynamics.api_gateway;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection pool counters for one backend. "Queued" requests are waiting for a pooled
+ * connection (or HTTP/2 stream); the wait time is measured from asking the pool until a
+ * connection is handed over, so it includes connect time when the pool has to grow.
+ * <p>
+ * The same numbers go to Prometheus, plus the backend latency: time from asking for a
+ * connection until the backend's response has been fully relayed, by status code.
+ */
+public class BackendStats {
+
+  private final AtomicLong queued = new AtomicLong();
+  private final AtomicLong maxQueued = new AtomicLong();
+  private final AtomicLong inFlight = new AtomicLong();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder poolRejections = new LongAdder();
+  private final LongAdder waitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  private final String backend;
+  private final MeterRegistry registry;
+  private final Timer connectionWait;
+  private final ConcurrentHashMap<Integer, Timer> latencyByStatus = new ConcurrentHashMap<>();
+
+  public BackendStats(String backend, MeterRegistry registry) {
+    this.backend = backend;
+    this.registry = registry;
+    Gauge.builder("gateway.backend.queued", queued, AtomicLong::get)
+      .description("Requests waiting for a pooled connection")
+      .tag("backend", backend)
+      .register(registry);
+    Gauge.builder("gateway.backend.in.flight", inFlight, AtomicLong::get)
+      .description("Requests holding a connection")
+      .tag("backend", backend)
+      .register(registry);
+    registry.more().counter("gateway.backend.pool.rejections", Tags.of("backend", backend), poolRejections);
+    connectionWait = Timer.builder("gateway.backend.connection.wait")
+      .description("Time to get a connection (or HTTP/2 stream) from the backend pool")
+      .tag("backend", backend)
+      .register(registry);
+  }
+
+  void connectionRequested() {
+    requests.increment();
+    long depth = queued.incrementAndGet();
+    maxQueued.accumulateAndGet(depth, Math::max);
+  }
+
+  void connectionAcquired(long waitedNanos) {
+    queued.decrementAndGet();
+    inFlight.incrementAndGet();
+    waitNanos.add(waitedNanos);
+    maxWaitNanos.accumulateAndGet(waitedNanos, Math::max);
+    connectionWait.record(waitedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  void connectionFailed(boolean poolFull) {
+    queued.decrementAndGet();
+    if (poolFull) {
+      poolRejections.increment();
+    }
+  }
+
+  // statusCode 0 = the exchange failed before a full response came back
+  void requestEnded(long latencyNanos, int statusCode) {
+    inFlight.decrementAndGet();
+    latencyByStatus.computeIfAbsent(statusCode, code -> Timer.builder("gateway.backend.requests")
+        .description("Backend latency as seen by the gateway")
+        .tags("backend", backend, "status", code == 0 ? "error" : String.valueOf(code))
+        .register(registry))
+      .record(latencyNanos, TimeUnit.NANOSECONDS);
+  }
+
+  public long queued() {
+    return queued.get();
+  }
+
+  public JsonObject toJson() {
+    long count = requests.sum();
+    return new JsonObject()
+      .put("queued", queued.get())
+      .put("maxQueued", maxQueued.get())
+      .put("inFlight", inFlight.get())
+      .put("requests", count)
+      .put("poolRejections", poolRejections.sum())
+      .put("avgConnectionWaitMs", count == 0 ? 0.0 : waitNanos.sum() / 1e6 / count)
+      .put("maxConnectionWaitMs", maxWaitNanos.get() / 1e6);
+  }
+}
@@ -0,0 +1,133 @@
+package com.griddynamics.api_gateway;
+
+/**
+ * Stops sending requests to a backend that keeps failing, and lets a few through now and then
+ * to find out whether it has recovered.
+ * <ul>
+ *   <li>CLOSED: everything goes through. The outcome of the last {@code windowSize} requests is
+ *   kept; once at least {@code failureRatio} of a full window failed, the breaker opens.</li>
+ *   <li>OPEN: everything is rejected for {@code openNanos}.</li>
+ *   <li>HALF_OPEN: up to {@code probes} requests go through. If they all succeed the breaker
+ *   closes with an empty window, and the first failure opens it again.</li>
+ * </ul>
+ * Requests are told apart by their start time: a request started before the breaker last opened
+ * belongs to an older period and its outcome is ignored, so a slow response from before the
+ * outage can't pass for a probe.
+ */
+final class CircuitBreaker {
+
+  enum State { CLOSED, HALF_OPEN, OPEN }
+
+  private final int windowSize;
+  private final double failureRatio;
+  private final long openNanos;
+  private final int probes;
+
+  // Ring of the last windowSize outcomes in the CLOSED state, true = failed
+  private final boolean[] window;
+  private int windowNext;
+  private int windowCount;
+  private int windowFailures;
+
+  private State state = State.CLOSED;
+  private long openedAtNanos;
+  private boolean everOpened;
+  // Probes let through in this HALF_OPEN period, answered or not
+  private int probesSent;
+  private int probeSuccesses;
+  private long opened;
+
+  CircuitBreaker(int windowSize, double failureRatio, long openNanos, int probes) {
+    this.windowSize = windowSize;
+    this.failureRatio = failureRatio;
+    this.openNanos = openNanos;
+    this.probes = probes;
+    this.window = new boolean[windowSize];
+  }
+
+  synchronized boolean tryAcquire(long nowNanos) {
+    if (state == State.OPEN) {
+      if (nowNanos - openedAtNanos < openNanos) {
+        return false;
+      }
+      state = State.HALF_OPEN;
+      probesSent = 0;
+      probeSuccesses = 0;
+    }
+    if (state == State.HALF_OPEN) {
+      if (probesSent >= probes) {
+        return false;
+      }
+      probesSent++;
+    }
+    return true;
+  }
+
+  synchronized void onResult(long startNanos, boolean failed, long nowNanos) {
+    if (isStale(startNanos)) {
+      return;
+    }
+    if (state == State.HALF_OPEN) {
+      if (failed) {
+        open(nowNanos);
+      } else if (++probeSuccesses >= probes) {
+        close();
+      }
+    } else if (state == State.CLOSED) {
+      record(failed);
+      if (windowCount == windowSize && windowFailures >= failureRatio * windowSize) {
+        open(nowNanos);
+      }
+    }
+  }
+
+  // The request never reached the backend: frees its probe slot without telling anything
+  synchronized void release(long startNanos) {
+    if (state == State.HALF_OPEN && !isStale(startNanos)) {
+      probesSent--;
+    }
+  }
+
+  synchronized State state() {
+    return state;
+  }
+
+  // How long until an open breaker lets probes through (0 when it isn't open)
+  synchronized long remainingOpenNanos(long nowNanos) {
+    return state == State.OPEN ? Math.max(0, openNanos - (nowNanos - openedAtNanos)) : 0;
+  }
+
+  synchronized long timesOpened() {
+    return opened;
+  }
+
+  private boolean isStale(long startNanos) {
+    return everOpened && startNanos - openedAtNanos < 0;
+  }
+
+  private void record(boolean failed) {
+    if (windowCount == windowSize && window[windowNext]) {
+      windowFailures--;
+    }
+    window[windowNext] = failed;
+    if (failed) {
+      windowFailures++;
+    }
+    windowNext = (windowNext + 1) % windowSize;
+    windowCount = Math.min(windowSize, windowCount + 1);
+  }
+
+  private void open(long nowNanos) {
+    state = State.OPEN;
+    openedAtNanos = nowNanos;
+    everOpened = true;
+    opened++;
+  }
+
+  private void close() {
+    state = State.CLOSED;
+    windowNext = 0;
+    windowCount = 0;
+    windowFailures = 0;
+  }
+}
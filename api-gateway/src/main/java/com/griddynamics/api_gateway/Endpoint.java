@@ -0,0 +1,109 @@
+package com.griddynamics.api_gateway;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One replica of a backend in a {@link RoutingTable}: its address, the requests currently
+ * outstanding on it (what the balancer compares) and whether it may take traffic. It may not
+ * while it is ejected (too many failures in a row on real traffic) or unhealthy (failed its last
+ * health checks). Shared by every gateway instance.
+ */
+final class Endpoint {
+
+  final String host;
+  final int port;
+  final String address;
+
+  private final AtomicInteger outstanding = new AtomicInteger();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+
+  // Passive outlier detection, guarded by this
+  private int consecutiveFailures;
+  private int timesEjected;
+  private long ejectedUntilNanos;
+  private boolean ejected;
+
+  // Active health checks, guarded by this
+  private boolean healthy = true;
+  private int healthChecksFailed;
+  private int healthChecksPassed;
+
+  Endpoint(String host, int port) {
+    this.host = host;
+    this.port = port;
+    this.address = host + ":" + port;
+  }
+
+  int outstanding() {
+    return outstanding.get();
+  }
+
+  void requestStarted() {
+    requests.increment();
+    outstanding.incrementAndGet();
+  }
+
+  // The request never reached the endpoint (e.g. the gateway's own pool queue was full)
+  void requestReleased() {
+    outstanding.decrementAndGet();
+  }
+
+  // Returns true when this failure crossed the ejection threshold (the table decides whether to eject)
+  synchronized boolean requestEnded(boolean failed, int ejectAfterFailures) {
+    outstanding.decrementAndGet();
+    if (!failed) {
+      consecutiveFailures = 0;
+      return false;
+    }
+    failures.increment();
+    return ++consecutiveFailures >= ejectAfterFailures && !ejected;
+  }
+
+  // Ejected for baseNanos times the number of ejections so far, so a flapping replica stays out longer
+  synchronized void eject(long nowNanos, long baseNanos) {
+    ejected = true;
+    timesEjected++;
+    ejectedUntilNanos = nowNanos + baseNanos * Math.min(timesEjected, 10);
+  }
+
+  synchronized boolean isEjected(long nowNanos) {
+    if (ejected && nowNanos - ejectedUntilNanos >= 0) {
+      ejected = false;
+      consecutiveFailures = 0;
+    }
+    return ejected;
+  }
+
+  synchronized boolean isAvailable(long nowNanos) {
+    return healthy && !isEjected(nowNanos);
+  }
+
+  synchronized void healthCheckPassed(int healthyThreshold) {
+    healthChecksFailed = 0;
+    if (!healthy && ++healthChecksPassed >= healthyThreshold) {
+      healthy = true;
+    }
+  }
+
+  synchronized void healthCheckFailed(int unhealthyThreshold) {
+    healthChecksPassed = 0;
+    if (healthy && ++healthChecksFailed >= unhealthyThreshold) {
+      healthy = false;
+    }
+  }
+
+  synchronized JsonObject toJson(long nowNanos) {
+    return new JsonObject()
+      .put("address", address)
+      .put("healthy", healthy)
+      .put("ejected", isEjected(nowNanos))
+      .put("timesEjected", timesEjected)
+      .put("outstanding", outstanding.get())
+      .put("requests", requests.sum())
+      .put("failures", failures.sum());
+  }
+}
@@ -0,0 +1,140 @@
+package com.griddynamics.api_gateway;
+
+import com.griddynamics.common.Log;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.HttpException;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code GET /feed?after=&limit=}: a page of posts with each post's author attached, so the UI
+ * doesn't have to look up every author itself (one {@code GET /users/:id} per post).
+ * <p>
+ * One call to post-service for the page, then the distinct author ids go to user-service as
+ * {@code GET /users?ids=...}, {@code lookupBatchSize} ids per call, all calls at once. Every call
+ * has its own timeout. If the posts can't be read the feed fails. If some author lookups fail,
+ * the page is still returned with {@code "partial": true} and {@code "author": null} on the posts
+ * whose author couldn't be resolved.
+ */
+class FeedHandler implements Handler<RoutingContext> {
+
+  private static final Log FAILURES = Log.get("feed.error", 50);
+
+  private final BackendClient postService;
+  private final BackendClient userService;
+  private final long timeoutMs;
+  private final int lookupBatchSize;
+
+  FeedHandler(BackendClient postService, BackendClient userService, long timeoutMs, int lookupBatchSize) {
+    this.postService = postService;
+    this.userService = userService;
+    this.timeoutMs = timeoutMs;
+    this.lookupBatchSize = lookupBatchSize;
+  }
+
+  @Override
+  public void handle(RoutingContext ctx) {
+    // Only the paging parameters go through (re-encoded), so ?stream=true can't change the response shape
+    StringBuilder uri = new StringBuilder("/posts?");
+    String after = ctx.request().getParam("after");
+    String limit = ctx.request().getParam("limit");
+    if (after != null) {
+      uri.append("after=").append(URLEncoder.encode(after, StandardCharsets.UTF_8)).append('&');
+    }
+    if (limit != null) {
+      uri.append("limit=").append(URLEncoder.encode(limit, StandardCharsets.UTF_8));
+    }
+
+    postService.get(uri.toString(), ctx.request().headers(), timeoutMs)
+      .map(body -> body.toJsonObject())
+      .compose(page -> resolveAuthors(ctx, page))
+      .onSuccess(feed -> {
+        ProxyHeaders.applyCors(ctx.response().headers());
+        ctx.json(feed);
+      })
+      .onFailure(err -> fail(ctx, err));
+  }
+
+  private Future<JsonObject> resolveAuthors(RoutingContext ctx, JsonObject page) {
+    JsonArray posts = page.getJsonArray("posts", new JsonArray());
+    Set<Long> authorIds = new LinkedHashSet<>();
+    for (int i = 0; i < posts.size(); i++) {
+      Long authorId = posts.getJsonObject(i).getLong("authorId");
+      if (authorId != null) {
+        authorIds.add(authorId);
+      }
+    }
+
+    // All lookups in flight together; join (not all) so one failed chunk doesn't hide the others
+    List<Future<JsonArray>> lookups = new ArrayList<>();
+    List<Long> chunk = new ArrayList<>(lookupBatchSize);
+    for (Long id : authorIds) {
+      chunk.add(id);
+      if (chunk.size() == lookupBatchSize) {
+        lookups.add(lookup(ctx, chunk));
+        chunk = new ArrayList<>(lookupBatchSize);
+      }
+    }
+    if (!chunk.isEmpty()) {
+      lookups.add(lookup(ctx, chunk));
+    }
+
+    return Future.join(lookups).transform(ar -> {
+      Map<Long, JsonObject> authors = new HashMap<>();
+      boolean partial = false;
+      for (Future<JsonArray> lookup : lookups) {
+        if (lookup.failed()) {
+          partial = true;
+          FAILURES.warn("Author lookup failed", "error", lookup.cause());
+          continue;
+        }
+        for (int i = 0; i < lookup.result().size(); i++) {
+          JsonObject user = lookup.result().getJsonObject(i);
+          authors.put(user.getLong("id"), new JsonObject()
+            .put("id", user.getLong("id"))
+            .put("username", user.getString("username")));
+        }
+      }
+
+      JsonArray joined = new JsonArray(new ArrayList<>(posts.size()));
+      for (int i = 0; i < posts.size(); i++) {
+        JsonObject post = posts.getJsonObject(i);
+        joined.add(post.copy().put("author", authors.get(post.getLong("authorId"))));
+      }
+      return Future.succeededFuture(new JsonObject()
+        .put("posts", joined)
+        .put("nextCursor", page.getValue("nextCursor"))
+        .put("partial", partial));
+    });
+  }
+
+  private Future<JsonArray> lookup(RoutingContext ctx, List<Long> ids) {
+    StringBuilder uri = new StringBuilder("/users?ids=");
+    for (int i = 0; i < ids.size(); i++) {
+      uri.append(i == 0 ? "" : ",").append(ids.get(i));
+    }
+    return userService.get(uri.toString(), ctx.request().headers(), timeoutMs)
+      .map(body -> body.toJsonArray());
+  }
+
+  // Only the posts call can fail the feed; map its failure like the plain proxy does
+  private void fail(RoutingContext ctx, Throwable err) {
+    FAILURES.warn("Feed failed", "error", err);
+    if (err instanceof HttpException http) {
+      ctx.response().setStatusCode(http.getStatusCode()).end(http.getPayload());
+    } else {
+      postService.respondWithFailure(ctx.response(), err);
+    }
+  }
+}
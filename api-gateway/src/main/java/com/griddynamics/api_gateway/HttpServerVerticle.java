@@ -0,0 +1,363 @@
+package com.griddynamics.api_gateway;
+
+import com.griddynamics.common.Env;
+import com.griddynamics.common.Log;
+import com.griddynamics.common.LogWriter;
+import com.griddynamics.common.ServiceMetrics;
+import io.netty.handler.codec.compression.Brotli;
+import io.netty.handler.codec.compression.StandardCompressionOptions;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.BodyHandler;
+import io.vertx.ext.web.handler.CorsHandler;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The HTTP side of the gateway. {@link MainVerticle} deploys several instances of it, each on
+ * its own event loop, all listening on port 8080. Every instance has its own backend clients (so
+ * connections stay on the instance's event loop) but shares the response cache, the coalescer,
+ * the token cache, the backend counters and the backend guards with the others.
+ */
+public class HttpServerVerticle extends AbstractVerticle {
+
+  private static final Log LOG = Log.get("gateway");
+  // One line per proxied request; capped so a load test can't turn logging into the bottleneck
+  private static final Log REQUESTS = Log.get("proxy.request", 10);
+  private static final Log FAILURES = Log.get("proxy.error", 50);
+
+  private final ResponseCache responseCache;
+  private final JwtAuthGuard authGuard;
+  private final Backend userServiceBackend;
+  private final Backend postServiceBackend;
+  private final RequestCoalescer coalescer;
+  private final ServiceMetrics metrics;
+
+  private BackendClient userService;
+  private BackendClient postService;
+
+  // GATEWAY_PROXY_MODE=streaming pipes bodies through instead of buffering them
+  private boolean streamingProxy;
+
+  public HttpServerVerticle(ResponseCache responseCache, JwtAuthGuard authGuard,
+                            Backend userServiceBackend, Backend postServiceBackend,
+                            RequestCoalescer coalescer, ServiceMetrics metrics) {
+    this.responseCache = responseCache;
+    this.authGuard = authGuard;
+    this.userServiceBackend = userServiceBackend;
+    this.postServiceBackend = postServiceBackend;
+    this.coalescer = coalescer;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void start(Promise<Void> startPromise) {
+    // 1. + 2. One tuned, pooled client per backend (endpoints and pool settings come from Env Variables)
+    userService = BackendClient.fromEnv(vertx, userServiceBackend);
+    postService = BackendClient.fromEnv(vertx, postServiceBackend);
+    long usersTtlMs = Env.longValue("GATEWAY_CACHE_TTL_USERS_MS", 2000);
+    long userTtlMs = Env.longValue("GATEWAY_CACHE_TTL_USER_MS", 30000);
+    long postsTtlMs = Env.longValue("GATEWAY_CACHE_TTL_POSTS_MS", 5000);
+    long userPostsTtlMs = Env.longValue("GATEWAY_CACHE_TTL_USER_POSTS_MS", 5000);
+    long searchTtlMs = Env.longValue("GATEWAY_CACHE_TTL_SEARCH_MS", 5000);
+    FeedHandler feed = new FeedHandler(postService, userService,
+      Env.longValue("GATEWAY_FEED_TIMEOUT_MS", 2000),
+      Env.integer("GATEWAY_FEED_LOOKUP_BATCH", 100));
+    streamingProxy = "streaming".equalsIgnoreCase(Env.string("GATEWAY_PROXY_MODE", "buffered"));
+
+    Router router = Router.router(vertx);
+    router.route().handler(metrics.routeTimer());
+    // Only the auth guard may say who the caller is, on every route
+    router.route().handler(JwtAuthGuard.stripIdentity());
+
+    // ====================================================
+    // 🛑 3. PROPER CORS CONFIGURATION (Use Official Handler)
+    // ====================================================
+    Set<String> allowedHeaders = new HashSet<>();
+    allowedHeaders.add("x-requested-with");
+    allowedHeaders.add("Access-Control-Allow-Origin");
+    allowedHeaders.add("origin");
+    allowedHeaders.add("Content-Type");
+    allowedHeaders.add("accept");
+    allowedHeaders.add("Authorization");
+
+    Set<HttpMethod> allowedMethods = new HashSet<>();
+    allowedMethods.add(HttpMethod.GET);
+    allowedMethods.add(HttpMethod.POST);
+    allowedMethods.add(HttpMethod.OPTIONS);
+    allowedMethods.add(HttpMethod.PUT);
+    allowedMethods.add(HttpMethod.DELETE);
+
+    // This handles the OPTIONS check automatically AND adds headers to responses
+    router.route().handler(CorsHandler.create()
+      .addOrigin("http://localhost:5173") // Your Frontend URL
+      .allowedHeaders(allowedHeaders)
+      .allowedMethods(allowedMethods));
+
+    // Bulk imports are always piped straight through, whatever the proxy mode: they can be far
+    // bigger than anything worth buffering, and post-service streams its per-item results back.
+    // An import adds posts for any number of authors, so every timeline goes too
+    router.post("/posts/batch")
+      .handler(authGuard.handler())
+      .handler(responseCache.invalidateOnEnd("/posts", "/users/"))
+      .handler(ctx -> proxyStreaming(ctx, postService));
+
+    // The streaming proxy reads the request body itself, so it must not be aggregated first
+    if (!streamingProxy) {
+      router.route().handler(BodyHandler.create());
+    }
+
+    // 4. Define Routes (Direct Mapping)
+    router.get("/health").handler(ctx -> ctx.json(new JsonObject().put("status", "API Gateway UP")));
+    router.get("/stats").handler(ctx -> ctx.json(new JsonObject().put("backends", new JsonObject()
+      .put(userService.name(), userService.toJson())
+      .put(postService.name(), postService.toJson()))
+      .put("cache", responseCache.toJson())
+      .put("coalescing", coalescer.toJson())
+      .put("auth", authGuard.toJson())
+      .put("log", LogWriter.instance().toJson())));
+    router.get("/metrics").handler(metrics::scrape);
+
+    // ==========================================
+    // 🚦 USER SERVICE ROUTES (Port 8888)
+    // ==========================================
+
+    // 4.1 POST /register
+    router.post("/register")
+      .handler(responseCache.invalidateOnSuccess("/users"))
+      .handler(ctx -> proxyRequest(ctx, userService));
+
+    // 4.2 POST /login
+    router.post("/login").handler(ctx -> proxyRequest(ctx, userService));
+
+    // 4.3 GET /users
+    router.get("/users")
+      .handler(authGuard.handler())
+      .handler(responseCache.handler(usersTtlMs))
+      .handler(coalescer.handler())
+      .handler(ctx -> proxyRequest(ctx, userService));
+
+    // 4.4 GET /users/:id
+    router.get("/users/:id")
+      .handler(authGuard.handler())
+      .handler(responseCache.handler(userTtlMs))
+      .handler(coalescer.handler())
+      .handler(ctx -> proxyRequest(ctx, userService));
+
+    // ==========================================
+    // 📝 POST SERVICE ROUTES (Port 8889)
+    // ==========================================
+
+    // 4.5 POST /posts (Create a post)
+    router.post("/posts")
+      .handler(authGuard.handler())
+      .handler(responseCache.invalidateOnSuccess("/posts"))
+      .handler(responseCache.invalidateOnSuccess(HttpServerVerticle::authorPostsPath))
+      .handler(ctx -> proxyRequest(ctx, postService));
+
+    // 4.6 GET /posts (Get all posts)
+    router.get("/posts")
+      .handler(authGuard.handler())
+      .handler(responseCache.handler(postsTtlMs))
+      .handler(coalescer.handler())
+      .handler(ctx -> proxyRequest(ctx, postService));
+
+    // 4.7 GET /users/:id/posts (One author's posts, newest first; served by post-service)
+    router.get("/users/:id/posts")
+      .handler(authGuard.handler())
+      .handler(responseCache.handler(userPostsTtlMs))
+      .handler(coalescer.handler())
+      .handler(ctx -> proxyRequest(ctx, postService));
+
+    // 4.8 POST /posts/:id/like (Counted in memory by post-service). The cached lists are left alone:
+    // a like storm would otherwise empty them many times a second, so counts lag by at most their TTL
+    router.post("/posts/:id/like")
+      .handler(authGuard.handler())
+      .handler(ctx -> proxyRequest(ctx, postService));
+
+    // 4.9 GET /posts/search?q= (Ranked full-text search; creating posts drops the cached pages with the "/posts" prefix)
+    router.get("/posts/search")
+      .handler(authGuard.handler())
+      .handler(responseCache.handler(searchTtlMs))
+      .handler(coalescer.handler())
+      .handler(ctx -> proxyRequest(ctx, postService));
+
+    // ==========================================
+    // 📰 AGGREGATED ROUTES (Both services)
+    // ==========================================
+
+    // 4.10 GET /feed (A page of posts with their authors)
+    router.get("/feed")
+      .handler(authGuard.handler())
+      .handler(feed);
+
+    // 5. Start Server
+    vertx.createHttpServer(serverOptions())
+      .requestHandler(router)
+      .listen(8080)
+      .onSuccess(server -> startPromise.complete())
+      .onFailure(err -> {
+        LOG.error("Failed to start API Gateway", "error", err);
+        startPromise.fail(err);
+      });
+  }
+
+  // Response compression, negotiated from Accept-Encoding. Brotli only when brotli4j is on the
+  // classpath; bodies under GATEWAY_COMPRESSION_MIN_BYTES go out as they are, not worth the CPU
+  private static HttpServerOptions serverOptions() {
+    HttpServerOptions options = new HttpServerOptions();
+    if (!Env.bool("GATEWAY_COMPRESSION", true)) {
+      return options;
+    }
+    int level = Env.integer("GATEWAY_COMPRESSION_LEVEL", 6);
+    if (Brotli.isAvailable()) {
+      options.addCompressor(StandardCompressionOptions.brotli());
+    }
+    return options
+      .setCompressionSupported(true)
+      .setCompressionContentSizeThreshold(Env.integer("GATEWAY_COMPRESSION_MIN_BYTES", 1024))
+      .addCompressor(StandardCompressionOptions.gzip(level, 15, 8))
+      .addCompressor(StandardCompressionOptions.deflate(level, 15, 8));
+  }
+
+  // The new post's author timeline: authorId from the body, else the verified caller
+  private static String authorPostsPath(RoutingContext ctx) {
+    String authorId = ctx.request().getHeader(JwtAuthGuard.USER_ID_HEADER);
+    if (ctx.body().available()) {
+      try {
+        JsonObject body = ctx.body().asJsonObject();
+        if (body != null && body.getValue("authorId") != null) {
+          authorId = String.valueOf(body.getValue("authorId"));
+        }
+      } catch (RuntimeException e) {
+        // Not JSON: post-service will reject it, nothing to invalidate
+      }
+    }
+    return authorId == null ? null : "/users/" + authorId + "/posts";
+  }
+
+  private void proxyRequest(RoutingContext ctx, BackendClient backend) {
+    // Responses headed for the cache or shared with other requests have to be read in full,
+    // so they take the buffered path
+    if (streamingProxy && ctx.get(ResponseCache.FILL_KEY) == null && !RequestCoalescer.isCoalesced(ctx)) {
+      proxyStreaming(ctx, backend);
+      return;
+    }
+
+    String uri = ctx.request().uri();
+    HttpMethod method = ctx.request().method();
+
+    // Identical GETs already in flight share that call; each request still writes its own response
+    coalescer.run(ctx, () -> fetch(ctx, backend, method, uri))
+      .onSuccess(response -> {
+        // 1. Set Status Code
+        ctx.response().setStatusCode(response.statusCode());
+
+        // 2. Copy headers from Backend (already without its CORS headers, see fetch)
+        ctx.response().headers().addAll(response.headers());
+        responseCache.fill(ctx, response.statusCode(), ctx.response().headers(), response.body());
+
+        // 3. FORCE CORS HEADERS (The "Nuclear" Fix) ☢️
+        // This ensures the browser ALWAYS sees these permissions
+        ProxyHeaders.applyCors(ctx.response().headers());
+
+        // 4. Send Body
+        ctx.response().end(response.body());
+        REQUESTS.info("Backend responded", "backend", backend.name(), "method", method.name(),
+          "uri", uri, "status", response.statusCode(), "bytes", response.body().length());
+      })
+      .onFailure(err -> {
+        FAILURES.warn("Proxy failed", "backend", backend.name(), "uri", uri, "error", err);
+        if (ctx.response().headWritten()) {
+          ctx.response().reset();
+        } else {
+          backend.respondWithFailure(ctx.response(), err);
+        }
+      });
+  }
+
+  // One buffered exchange with the backend, the response headers already filtered for the client
+  private Future<BackendResponse> fetch(RoutingContext ctx, BackendClient backend, HttpMethod method, String uri) {
+    long start = System.nanoTime();
+    return backend.request(method, uri)
+      .compose(backendRequest -> {
+        ProxyHeaders.copyRequestHeaders(ctx.request().headers(), backendRequest.headers());
+        Buffer body = ctx.body().available() ? ctx.body().buffer() : null;
+        return (body != null ? backendRequest.send(body) : backendRequest.send())
+          .compose(response -> response.body().map(responseBody -> {
+            // Skip the backend's CORS headers to avoid conflicts with ours
+            MultiMap headers = MultiMap.caseInsensitiveMultiMap();
+            ProxyHeaders.copyResponseHeaders(response.headers(), headers);
+            return new BackendResponse(response.statusCode(), headers, responseBody);
+          }))
+          .andThen(ar -> backend.requestEnded(backendRequest, start, ar.succeeded() ? ar.result().statusCode() : 0));
+      });
+  }
+
+  // Pipes both bodies between client and backend with backpressure, never holding more than
+  // the socket buffers in memory. Headers and CORS are handled exactly like the buffered path.
+  private void proxyStreaming(RoutingContext ctx, BackendClient backend) {
+    HttpServerRequest request = ctx.request();
+    String uri = request.uri();
+    // Hold the body until the backend request is ready to receive it
+    request.pause();
+
+    long start = System.nanoTime();
+    backend.request(request.method(), uri)
+      .compose(backendRequest -> {
+        ProxyHeaders.copyRequestHeaders(request.headers(), backendRequest.headers());
+
+        Future<HttpClientResponse> sent;
+        String contentLength = request.getHeader(HttpHeaders.CONTENT_LENGTH);
+        if (contentLength != null) {
+          backendRequest.putHeader(HttpHeaders.CONTENT_LENGTH, contentLength);
+          sent = backendRequest.send(request);
+        } else if (request.headers().contains(HttpHeaders.TRANSFER_ENCODING)) {
+          sent = backendRequest.send(request); // chunked in, chunked out
+        } else {
+          request.resume();
+          sent = backendRequest.send();
+        }
+
+        return sent
+          .compose(response -> {
+            ctx.response().setStatusCode(response.statusCode());
+            ProxyHeaders.copyResponseHeaders(response.headers(), ctx.response().headers());
+            String responseLength = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+            if (responseLength != null) {
+              ctx.response().putHeader(HttpHeaders.CONTENT_LENGTH, responseLength);
+            } else {
+              ctx.response().setChunked(true);
+            }
+            ProxyHeaders.applyCors(ctx.response().headers());
+
+            return response.pipeTo(ctx.response());
+          })
+          .onFailure(err -> backendRequest.reset())
+          .onComplete(ar -> backend.requestEnded(backendRequest, start, ar.succeeded() ? ctx.response().getStatusCode() : 0));
+      })
+      .onFailure(err -> {
+        FAILURES.warn("Streaming proxy failed", "backend", backend.name(), "uri", uri, "error", err);
+        request.resume(); // Drain whatever body is left so the connection can be reused
+        if (ctx.response().headWritten()) {
+          ctx.response().reset();
+        } else {
+          backend.respondWithFailure(ctx.response(), err);
+        }
+      });
+  }
+
+  private record BackendResponse(int statusCode, MultiMap headers, Buffer body) {}
+}
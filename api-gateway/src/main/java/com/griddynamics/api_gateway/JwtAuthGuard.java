@@ -0,0 +1,171 @@
+package com.griddynamics.api_gateway;
+
+import com.griddynamics.common.Env;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.authentication.TokenCredentials;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Verifies the HS256 tokens issued by user-service's /login before a request is proxied,
+ * and forwards the verified {@code userId} claim to the backend in {@value #USER_ID_HEADER}.
+ * <p>
+ * Verified tokens are kept in a small LRU until they expire, so a client repeating its token
+ * costs one map lookup instead of an HMAC check and a JSON parse. Modes (GATEWAY_AUTH_MODE):
+ * {@code required} (default), {@code optional} (check a token only when one is sent) and {@code off}.
+ */
+public class JwtAuthGuard {
+
+  public static final String USER_ID_HEADER = "X-User-Id";
+
+  private enum Mode { OFF, OPTIONAL, REQUIRED }
+
+  private final JWTAuth jwtAuth;
+  private final Mode mode;
+  private final int maxEntries;
+  private final LinkedHashMap<String, VerifiedToken> verified = new LinkedHashMap<>(256, 0.75f, true);
+
+  private long cacheHits;
+  private long verifications;
+  private long rejections;
+
+  public JwtAuthGuard(JWTAuth jwtAuth, String mode, int maxEntries) {
+    this.jwtAuth = jwtAuth;
+    this.mode = Mode.valueOf(mode.toUpperCase());
+    this.maxEntries = maxEntries;
+  }
+
+  public static JwtAuthGuard fromEnv(Vertx vertx) {
+    JWTAuth jwtAuth = JWTAuth.create(vertx, new JWTAuthOptions()
+      .addPubSecKey(new PubSecKeyOptions()
+        .setAlgorithm("HS256")
+        .setBuffer(Env.string("JWT_SECRET", "my-secret-password-key-1234567890"))));
+    return new JwtAuthGuard(jwtAuth,
+      Env.string("GATEWAY_AUTH_MODE", "required"),
+      Env.integer("GATEWAY_JWT_CACHE_SIZE", 10000));
+  }
+
+  /**
+   * Drops any {@value #USER_ID_HEADER} the client sent. Installed ahead of every route, including
+   * the ones without the guard ({@code /login}, {@code /register}), so only {@link #handler} ever
+   * sets it.
+   */
+  public static Handler<RoutingContext> stripIdentity() {
+    return ctx -> {
+      ctx.request().headers().remove(USER_ID_HEADER);
+      ctx.next();
+    };
+  }
+
+  public Handler<RoutingContext> handler() {
+    return ctx -> {
+      // Never trust an identity header coming from the outside (stripIdentity already ran, but the
+      // guard must not depend on it)
+      ctx.request().headers().remove(USER_ID_HEADER);
+      if (mode == Mode.OFF) {
+        ctx.next();
+        return;
+      }
+
+      String authorization = ctx.request().getHeader("Authorization");
+      if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+        if (mode == Mode.REQUIRED) {
+          reject(ctx);
+        } else {
+          ctx.next();
+        }
+        return;
+      }
+
+      // A cache miss verifies asynchronously: hold the body for the streaming proxy meanwhile
+      HttpServerRequest request = ctx.request();
+      if (!request.isEnded()) {
+        request.pause();
+      }
+      verify(authorization.substring(7).trim())
+        .onSuccess(token -> {
+          if (token.userId != null) {
+            request.headers().set(USER_ID_HEADER, token.userId);
+          }
+          ctx.next();
+        })
+        .onFailure(err -> {
+          request.resume();
+          reject(ctx);
+        });
+    };
+  }
+
+  Future<VerifiedToken> verify(String token) {
+    VerifiedToken cached = cached(token);
+    if (cached != null) {
+      return Future.succeededFuture(cached);
+    }
+
+    return jwtAuth.authenticate(new TokenCredentials(token))
+      .map(user -> {
+        JsonObject claims = user.attributes().getJsonObject("accessToken", new JsonObject());
+        Object userId = claims.getValue("userId");
+        Long exp = claims.getLong("exp");
+        VerifiedToken verifiedToken = new VerifiedToken(
+          userId == null ? null : String.valueOf(userId),
+          exp == null ? Long.MAX_VALUE : exp * 1000);
+        remember(token, verifiedToken);
+        return verifiedToken;
+      });
+  }
+
+  private synchronized VerifiedToken cached(String token) {
+    VerifiedToken entry = verified.get(token);
+    if (entry == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() >= entry.expiresAtMillis) {
+      verified.remove(token);
+      return null;
+    }
+    cacheHits++;
+    return entry;
+  }
+
+  private synchronized void remember(String token, VerifiedToken entry) {
+    verifications++;
+    verified.put(token, entry);
+    if (verified.size() > maxEntries) {
+      Map.Entry<String, VerifiedToken> eldest = verified.entrySet().iterator().next();
+      verified.remove(eldest.getKey());
+    }
+  }
+
+  // Only the counter is updated under the lock; the response is written outside it
+  private void reject(RoutingContext ctx) {
+    synchronized (this) {
+      rejections++;
+    }
+    ctx.response()
+      .setStatusCode(401)
+      .putHeader("WWW-Authenticate", "Bearer");
+    ProxyHeaders.applyCors(ctx.response().headers());
+    ctx.response().end(new JsonObject().put("message", "Invalid or missing token").encode());
+  }
+
+  public synchronized JsonObject toJson() {
+    return new JsonObject()
+      .put("mode", mode.name().toLowerCase())
+      .put("cachedTokens", verified.size())
+      .put("cacheHits", cacheHits)
+      .put("verifications", verifications)
+      .put("rejections", rejections);
+  }
+
+  record VerifiedToken(String userId, long expiresAtMillis) {}
+}
@@ -0,0 +1,79 @@
+package com.griddynamics.api_gateway;
+
+import io.vertx.core.MultiMap;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Header rules for proxied requests and responses
+public final class ProxyHeaders {
+
+  public static final String ALLOWED_ORIGIN = "http://localhost:5173";
+
+  // Hop-by-hop headers (RFC 9110 7.6.1) belong to one connection and must not be forwarded.
+  // Host is rebuilt by the client for the backend address.
+  private static final Set<String> HOP_BY_HOP = Set.of(
+    "connection", "keep-alive", "proxy-authenticate", "proxy-authorization", "proxy-connection",
+    "te", "trailer", "transfer-encoding", "upgrade", "host");
+
+  // Not sent on a sub-request: the gateway needs the whole plain body, and a 304 or 206 meant for
+  // the client's own copy of the feed would otherwise come back as the answer to it
+  private static final Set<String> CONDITIONAL_OR_ENCODING = Set.of(
+    "if-none-match", "if-modified-since", "if-match", "if-unmodified-since", "if-range", "range",
+    "accept-encoding");
+
+  private ProxyHeaders() {}
+
+  // Client -> backend. Content-Length is left out: the client recomputes it for the body it sends.
+  public static void copyRequestHeaders(MultiMap from, MultiMap to) {
+    for (Map.Entry<String, String> entry : from) {
+      String name = entry.getKey().toLowerCase(Locale.ROOT);
+      if (!HOP_BY_HOP.contains(name) && !name.equals("content-length")) {
+        to.add(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  // Client -> backend for a sub-request whose response the gateway uses itself (see BackendClient.get)
+  public static void copySubRequestHeaders(MultiMap from, MultiMap to) {
+    for (Map.Entry<String, String> entry : from) {
+      String name = entry.getKey().toLowerCase(Locale.ROOT);
+      if (!HOP_BY_HOP.contains(name) && !name.equals("content-length") && !CONDITIONAL_OR_ENCODING.contains(name)) {
+        to.add(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  // Backend -> client, SKIPPING the backend's CORS headers to avoid conflicts with ours
+  public static void copyResponseHeaders(MultiMap from, MultiMap to) {
+    for (Map.Entry<String, String> entry : from) {
+      String name = entry.getKey().toLowerCase(Locale.ROOT);
+      if (!HOP_BY_HOP.contains(name) && !name.equals("content-length") && !name.startsWith("access-control-allow")) {
+        to.add(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  // If-None-Match against a response's ETag: "*" or any listed tag, compared weakly (RFC 9110 13.1.2)
+  public static boolean etagMatches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null || etag == null) {
+      return false;
+    }
+    String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.equals("*") || (candidate.startsWith("W/") ? candidate.substring(2) : candidate).equals(opaque)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // FORCE CORS HEADERS so the browser ALWAYS sees these permissions
+  public static void applyCors(MultiMap headers) {
+    headers.set("Access-Control-Allow-Origin", ALLOWED_ORIGIN);
+    headers.set("Access-Control-Allow-Methods", "GET, POST, OPTIONS, PUT, DELETE");
+    headers.set("Access-Control-Allow-Headers", "Content-Type, Authorization");
+  }
+}
@@ -0,0 +1,178 @@
+package com.griddynamics.api_gateway;
+
+import com.griddynamics.common.Env;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for GETs: while a backend call for a request is in flight, identical requests
+ * (same method, URI and {@link #KEY_HEADERS}) wait for that call instead of making their own, and
+ * every one of them gets its copy of the response, errors included. Unlike the response cache
+ * nothing is kept afterwards: a request that arrives once the call has finished starts a new one,
+ * so no response is older than the request that receives it.
+ * <p>
+ * Shared by every gateway instance, so a burst spread over several event loops still costs the
+ * backend one call. Waiters are resumed on their own event loop. Routes opt in by adding
+ * {@link #handler()}; {@code GATEWAY_COALESCE_ROUTES} (route templates, comma separated, empty
+ * to turn it off) says which of them actually coalesce.
+ */
+public class RequestCoalescer {
+
+  // RoutingContext key holding the request's coalescing key, when it has one
+  static final String KEY = "coalescer.key";
+  private static final String ROUTE_KEY = "coalescer.route";
+
+  // Headers that can change what the backend answers; requests only share a call if they match.
+  // If-None-Match too: a 304 is only the right answer for the client that sent the matching tag
+  private static final String[] KEY_HEADERS = {
+    "Authorization", "Cookie", JwtAuthGuard.USER_ID_HEADER, "Accept", "Accept-Encoding", "If-None-Match"};
+
+  private final Set<String> routes;
+  private final MeterRegistry registry;
+  private final ConcurrentHashMap<String, Future<?>> inFlight = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, RouteCounters> counters = new ConcurrentHashMap<>();
+
+  public RequestCoalescer(Set<String> routes, MeterRegistry registry) {
+    this.routes = routes;
+    this.registry = registry;
+  }
+
+  public static RequestCoalescer fromEnv(MeterRegistry registry) {
+    Set<String> routes = new HashSet<>();
+    for (String route : Env.string("GATEWAY_COALESCE_ROUTES", "/users,/users/:id,/posts,/users/:id/posts,/posts/search").split(",")) {
+      if (!route.isBlank()) {
+        routes.add(route.trim());
+      }
+    }
+    return new RequestCoalescer(routes, registry);
+  }
+
+  // Marks GETs on enabled routes so the proxy sends them through run()
+  public Handler<RoutingContext> handler() {
+    return ctx -> {
+      Route route = ctx.currentRoute();
+      String path = route != null ? route.getPath() : null;
+      if (ctx.request().method() == HttpMethod.GET && path != null && routes.contains(path)) {
+        ctx.put(KEY, key(ctx));
+        ctx.put(ROUTE_KEY, path);
+      }
+      ctx.next();
+    };
+  }
+
+  static boolean isCoalesced(RoutingContext ctx) {
+    return ctx.get(KEY) != null;
+  }
+
+  /**
+   * Runs {@code call}, or joins the identical call already in flight. Requests that
+   * {@link #handler()} didn't mark always run their own call.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Future<T> run(RoutingContext ctx, Supplier<Future<T>> call) {
+    String key = ctx.get(KEY);
+    if (key == null) {
+      return call.get();
+    }
+    RouteCounters route = counters.computeIfAbsent(ctx.get(ROUTE_KEY), RouteCounters::new);
+
+    Promise<T> leader = Promise.promise();
+    Future<T> existing = (Future<T>) inFlight.putIfAbsent(key, leader.future());
+    if (existing != null) {
+      route.followers.increment();
+      return onThisContext(existing);
+    }
+    route.leaders.increment();
+    call.get().onComplete(ar -> {
+      // Out of the map before anyone hears the result, so later requests make a fresh call
+      inFlight.remove(key, leader.future());
+      leader.handle(ar);
+    });
+    return leader.future();
+  }
+
+  /**
+   * Stops handing out the calls in flight under a path that was just written to: they may have
+   * read the old data, so requests from now on start their own. Current waiters keep theirs.
+   */
+  public void forget(String pathPrefix) {
+    inFlight.keySet().removeIf(key -> pathOf(key).startsWith(pathPrefix));
+  }
+
+  public JsonObject toJson() {
+    JsonObject json = new JsonObject().put("inFlight", inFlight.size());
+    JsonObject byRoute = new JsonObject();
+    new TreeMap<>(counters).forEach((path, route) -> {
+      long leaders = (long) route.leaders.count();
+      long followers = (long) route.followers.count();
+      byRoute.put(path, new JsonObject()
+        .put("backendCalls", leaders)
+        .put("coalesced", followers)
+        .put("coalescedRatio", leaders + followers == 0 ? 0.0 : (double) followers / (leaders + followers)));
+    });
+    return json.put("routes", byRoute);
+  }
+
+  // The leader's call completes on the leader's event loop; hop back to the waiter's own
+  private static <T> Future<T> onThisContext(Future<T> future) {
+    Context context = Vertx.currentContext();
+    if (context == null) {
+      return future;
+    }
+    Promise<T> promise = Promise.promise();
+    future.onComplete(ar -> {
+      if (Vertx.currentContext() == context) {
+        promise.handle(ar);
+      } else {
+        context.runOnContext(v -> promise.handle(ar));
+      }
+    });
+    return promise.future();
+  }
+
+  private static String key(RoutingContext ctx) {
+    StringBuilder key = new StringBuilder(ctx.request().method().name()).append(' ').append(ctx.request().uri());
+    for (String header : KEY_HEADERS) {
+      key.append('\n').append(String.join(",", ctx.request().headers().getAll(header)));
+    }
+    return key.toString();
+  }
+
+  private static String pathOf(String key) {
+    int start = key.indexOf(' ') + 1;
+    int end = key.indexOf('\n', start);
+    int query = key.indexOf('?', start);
+    return key.substring(start, query >= 0 && query < end ? query : end);
+  }
+
+  private final class RouteCounters {
+    final Counter leaders;
+    final Counter followers;
+
+    RouteCounters(String path) {
+      leaders = Counter.builder("gateway.coalesce.requests")
+        .description("Coalescable GETs: role=leader made the backend call, role=follower shared one")
+        .tags("route", path, "role", "leader")
+        .register(registry);
+      followers = Counter.builder("gateway.coalesce.requests")
+        .description("Coalescable GETs: role=leader made the backend call, role=follower shared one")
+        .tags("route", path, "role", "follower")
+        .register(registry);
+    }
+  }
+}
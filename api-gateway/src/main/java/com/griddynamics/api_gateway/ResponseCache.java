@@ -0,0 +1,256 @@
+package com.griddynamics.api_gateway;
+
+import com.griddynamics.common.Env;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Bounded in-memory cache of backend GET responses, keyed on method + URI.
+ * <p>
+ * Eviction is LRU by total size: every entry is charged its body, headers and key, and the
+ * least recently used entries are dropped once {@code maxBytes} is exceeded. Each route sets
+ * its own TTL; write routes drop the entries they make stale through {@link #invalidateOnSuccess}.
+ * Conditional GETs that hit the cache are answered against the stored response's ETag.
+ * All methods are thread-safe.
+ */
+public class ResponseCache {
+
+  // RoutingContext key telling the proxy to store the response it gets back
+  static final String FILL_KEY = "responseCache.fill";
+
+  private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+  private final long maxBytes;
+  private final long maxEntryBytes;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+  private long currentBytes;
+  // Bumped by every invalidation; a fill that started before it may carry stale data
+  private long generation;
+  // Told about every invalidated path prefix (e.g. to stop sharing reads that started before the write)
+  private final List<Consumer<String>> invalidationListeners = new CopyOnWriteArrayList<>();
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long expirations;
+  private long invalidations;
+
+  public ResponseCache(long maxBytes, long maxEntryBytes) {
+    this.maxBytes = maxBytes;
+    this.maxEntryBytes = maxEntryBytes;
+  }
+
+  public static ResponseCache fromEnv() {
+    return new ResponseCache(
+      Env.longValue("GATEWAY_CACHE_MAX_BYTES", 64L * 1024 * 1024),
+      Env.longValue("GATEWAY_CACHE_MAX_ENTRY_BYTES", 1024L * 1024));
+  }
+
+  /**
+   * Answers from the cache when it can; otherwise marks the request so the proxy fills the
+   * cache with the backend's 200 response, and passes it on.
+   */
+  public Handler<RoutingContext> handler(long ttlMs) {
+    return ctx -> {
+      String key = key(ctx);
+      Entry entry = get(key);
+      if (entry != null) {
+        ctx.response().headers().addAll(entry.headers);
+        ProxyHeaders.applyCors(ctx.response().headers());
+        ctx.response().putHeader("X-Cache", "HIT");
+        if (ProxyHeaders.etagMatches(ctx.request().getHeader(HttpHeaders.IF_NONE_MATCH), entry.headers.get(HttpHeaders.ETAG))) {
+          ctx.response().setStatusCode(304).end();
+        } else {
+          ctx.response().setStatusCode(entry.statusCode).end(entry.body);
+        }
+        return;
+      }
+      ctx.put(FILL_KEY, new Fill(key, ttlMs, generation()));
+      ctx.next();
+    };
+  }
+
+  // Called by the proxy with the (already filtered) backend response
+  public void fill(RoutingContext ctx, int statusCode, MultiMap headers, Buffer body) {
+    Fill fill = ctx.get(FILL_KEY);
+    if (fill == null || statusCode != 200 || isNotStorable(headers)) {
+      return;
+    }
+    ctx.response().putHeader("X-Cache", "MISS");
+    MultiMap copy = MultiMap.caseInsensitiveMultiMap().addAll(headers);
+    put(fill.key, new Entry(statusCode, copy, body, System.nanoTime() + fill.ttlMs * 1_000_000), fill.generation);
+  }
+
+  // Drops every cached URI under the given paths once the write request succeeded
+  public Handler<RoutingContext> invalidateOnSuccess(String... pathPrefixes) {
+    return ctx -> {
+      ctx.addHeadersEndHandler(v -> {
+        int status = ctx.response().getStatusCode();
+        if (status >= 200 && status < 300) {
+          for (String prefix : pathPrefixes) {
+            invalidate(prefix);
+          }
+        }
+      });
+      ctx.next();
+    };
+  }
+
+  // For a streamed response: its headers go out with the first chunk, while the backend is still
+  // writing, so drop the entries once it has ended (also when it broke off half way: some of the
+  // writes may have landed)
+  public Handler<RoutingContext> invalidateOnEnd(String... pathPrefixes) {
+    return ctx -> {
+      ctx.addEndHandler(ar -> {
+        int status = ctx.response().getStatusCode();
+        if (status >= 200 && status < 300) {
+          for (String prefix : pathPrefixes) {
+            invalidate(prefix);
+          }
+        }
+      });
+      ctx.next();
+    };
+  }
+
+  // Same as invalidateOnSuccess, for a path that depends on the request (pathPrefix returns null when there is nothing to drop)
+  public Handler<RoutingContext> invalidateOnSuccess(Function<RoutingContext, String> pathPrefix) {
+    return ctx -> {
+      String prefix = pathPrefix.apply(ctx);
+      if (prefix == null) {
+        ctx.next();
+        return;
+      }
+      invalidateOnSuccess(prefix).handle(ctx);
+    };
+  }
+
+  public void onInvalidate(Consumer<String> listener) {
+    invalidationListeners.add(listener);
+  }
+
+  public void invalidate(String pathPrefix) {
+    dropEntries(pathPrefix);
+    invalidationListeners.forEach(listener -> listener.accept(pathPrefix));
+  }
+
+  private synchronized void dropEntries(String pathPrefix) {
+    generation++;
+    Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, Entry> e = it.next();
+      if (pathOf(e.getKey()).startsWith(pathPrefix)) {
+        currentBytes -= e.getValue().size;
+        it.remove();
+        invalidations++;
+      }
+    }
+  }
+
+  synchronized Entry get(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    if (System.nanoTime() - entry.expiresAtNanos > 0) {
+      entries.remove(key);
+      currentBytes -= entry.size;
+      expirations++;
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry;
+  }
+
+  synchronized void put(String key, Entry entry, long fillGeneration) {
+    entry.size = sizeOf(key, entry);
+    if (entry.size > maxEntryBytes || fillGeneration != generation) {
+      return;
+    }
+    Entry previous = entries.put(key, entry);
+    if (previous != null) {
+      currentBytes -= previous.size;
+    }
+    currentBytes += entry.size;
+
+    // Access-ordered map: the first entries are the least recently used
+    Iterator<Entry> it = entries.values().iterator();
+    while (currentBytes > maxBytes && it.hasNext()) {
+      currentBytes -= it.next().size;
+      it.remove();
+      evictions++;
+    }
+  }
+
+  synchronized long generation() {
+    return generation;
+  }
+
+  public synchronized JsonObject toJson() {
+    long lookups = hits + misses;
+    return new JsonObject()
+      .put("entries", entries.size())
+      .put("bytes", currentBytes)
+      .put("maxBytes", maxBytes)
+      .put("hits", hits)
+      .put("misses", misses)
+      .put("hitRatio", lookups == 0 ? 0.0 : (double) hits / lookups)
+      .put("evictions", evictions)
+      .put("expirations", expirations)
+      .put("invalidations", invalidations);
+  }
+
+  private static String key(RoutingContext ctx) {
+    return ctx.request().method().name() + " " + ctx.request().uri();
+  }
+
+  private static String pathOf(String key) {
+    int start = key.indexOf(' ') + 1;
+    int query = key.indexOf('?', start);
+    return query < 0 ? key.substring(start) : key.substring(start, query);
+  }
+
+  private static boolean isNotStorable(MultiMap headers) {
+    String cacheControl = headers.get("Cache-Control");
+    return cacheControl != null && (cacheControl.contains("no-store") || cacheControl.contains("private"));
+  }
+
+  private static long sizeOf(String key, Entry entry) {
+    long size = ENTRY_OVERHEAD_BYTES + key.length() * 2L + entry.body.length();
+    for (Map.Entry<String, String> header : entry.headers) {
+      size += (header.getKey().length() + header.getValue().length()) * 2L;
+    }
+    return size;
+  }
+
+  static final class Entry {
+    final int statusCode;
+    final MultiMap headers;
+    final Buffer body;
+    final long expiresAtNanos;
+    long size;
+
+    Entry(int statusCode, MultiMap headers, Buffer body, long expiresAtNanos) {
+      this.statusCode = statusCode;
+      this.headers = headers;
+      this.body = body;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+  }
+
+  private record Fill(String key, long ttlMs, long generation) {}
+}
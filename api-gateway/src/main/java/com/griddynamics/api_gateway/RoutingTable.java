@@ -0,0 +1,292 @@
+package com.griddynamics.api_gateway;
+
+import com.griddynamics.common.Env;
+import com.griddynamics.common.Log;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The replicas of one backend, and which of them the next request goes to.
+ * <p>
+ * Endpoints come from {@code _ENDPOINTS} ("host:port,host:port"), else from {@code _HOST} /
+ * {@code _PORT}. With {@code _ENDPOINTS_FILE} set they are read from that file instead (one
+ * host:port per line, # for comments), and the file is checked for changes every
+ * {@code _ENDPOINTS_FILE_POLL_MS}; replicas that stay in the file keep their counters.
+ * <p>
+ * Each request goes to the less busy of two random available endpoints (power of two choices
+ * on outstanding requests), which spreads load per request rather than per connection, without
+ * a lock and without herding onto whichever endpoint was least busy a moment ago. An endpoint
+ * stops being available when:
+ * <ul>
+ *   <li>it failed {@code _EJECT_AFTER_FAILURES} real requests in a row (no response or 5xx):
+ *   it is ejected for {@code _EJECT_BASE_MS} times the number of times it has been ejected, but
+ *   never more than {@code _EJECT_MAX_PERCENT} of the endpoints at once</li>
+ *   <li>{@code GET /health} failed {@code _UNHEALTHY_THRESHOLD} times in a row; it comes back after
+ *   {@code _HEALTHY_THRESHOLD} passes. Checked every {@code _HEALTH_CHECK_INTERVAL_MS} (0 = off).</li>
+ * </ul>
+ * If no endpoint is available, requests are spread over all of them anyway: trying a replica
+ * that looks down beats failing every request at the gateway.
+ */
+public class RoutingTable {
+
+  private static final Log LOG = Log.get("routing");
+
+  private final String backend;
+  private final int defaultPort;
+  private final int ejectAfterFailures;
+  private final long ejectBaseNanos;
+  private final int ejectMaxPercent;
+  private final LongAdder ejections = new LongAdder();
+
+  // Replaced as a whole when the endpoints change, so pick() never sees a half-updated list
+  private volatile List<Endpoint> endpoints;
+
+  public RoutingTable(String backend, int defaultPort, List<Endpoint> endpoints,
+                      int ejectAfterFailures, long ejectBaseMs, int ejectMaxPercent) {
+    this.backend = backend;
+    this.defaultPort = defaultPort;
+    this.endpoints = List.copyOf(endpoints);
+    this.ejectAfterFailures = ejectAfterFailures;
+    this.ejectBaseNanos = TimeUnit.MILLISECONDS.toNanos(ejectBaseMs);
+    this.ejectMaxPercent = ejectMaxPercent;
+  }
+
+  public static RoutingTable fromEnv(String backend, String envPrefix, String defaultHost, int defaultPort) {
+    String configured = Env.string(envPrefix + "_ENDPOINTS",
+      Env.string(envPrefix + "_HOST", defaultHost) + ":" + Env.integer(envPrefix + "_PORT", defaultPort));
+    return new RoutingTable(backend, defaultPort, parse(configured.replace(',', '\n'), defaultPort),
+      Env.integer(envPrefix + "_EJECT_AFTER_FAILURES", 5),
+      Env.longValue(envPrefix + "_EJECT_BASE_MS", 30000),
+      Env.integer(envPrefix + "_EJECT_MAX_PERCENT", 50));
+  }
+
+  /**
+   * Starts the file watch and the health checks for this table (settings under {@code envPrefix}).
+   * Called once per gateway, not per HTTP instance.
+   */
+  public void start(Vertx vertx, String envPrefix) {
+    String file = Env.string(envPrefix + "_ENDPOINTS_FILE", "");
+    if (!file.isEmpty()) {
+      update(parse(vertx.fileSystem().readFileBlocking(file).toString(), defaultPort), file);
+      watch(vertx, file, Env.longValue(envPrefix + "_ENDPOINTS_FILE_POLL_MS", 2000));
+    }
+
+    long interval = Env.longValue(envPrefix + "_HEALTH_CHECK_INTERVAL_MS", 5000);
+    if (interval > 0) {
+      long timeout = Env.longValue(envPrefix + "_HEALTH_CHECK_TIMEOUT_MS", 1000);
+      int unhealthyThreshold = Env.integer(envPrefix + "_UNHEALTHY_THRESHOLD", 2);
+      int healthyThreshold = Env.integer(envPrefix + "_HEALTHY_THRESHOLD", 2);
+      // Its own small client, so health checks never wait behind proxied traffic for a connection
+      HttpClient client = vertx.createHttpClient(new HttpClientOptions().setName(backend + "-health"));
+      vertx.setPeriodic(interval, id -> {
+        for (Endpoint endpoint : endpoints) {
+          check(client, endpoint, timeout).onComplete(ar -> {
+            if (ar.succeeded() && ar.result()) {
+              endpoint.healthCheckPassed(healthyThreshold);
+            } else {
+              endpoint.healthCheckFailed(unhealthyThreshold);
+            }
+          });
+        }
+      });
+    }
+  }
+
+  // Power of two choices among the available endpoints (all of them if none is available)
+  Endpoint pick() {
+    List<Endpoint> current = endpoints;
+    if (current.size() == 1) {
+      return current.get(0);
+    }
+    long now = System.nanoTime();
+    Endpoint[] two = sampleTwo(current, now, true);
+    if (two[0] == null) {
+      two = sampleTwo(current, now, false);
+    }
+    if (two[1] == null) {
+      return two[0];
+    }
+    int first = two[0].outstanding();
+    int second = two[1].outstanding();
+    if (first == second) {
+      // Common when idle; the sample keeps list order for the first two, so break ties at random
+      return ThreadLocalRandom.current().nextBoolean() ? two[0] : two[1];
+    }
+    return second < first ? two[1] : two[0];
+  }
+
+  void requestEnded(Endpoint endpoint, boolean failed) {
+    if (endpoint.requestEnded(failed, ejectAfterFailures)) {
+      tryEject(endpoint);
+    }
+  }
+
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("gateway.backend.endpoints", this, table -> table.endpoints.size())
+      .description("Endpoints in the routing table")
+      .tag("backend", backend)
+      .register(registry);
+    Gauge.builder("gateway.backend.endpoints.available", this, RoutingTable::availableCount)
+      .description("Endpoints neither ejected nor failing health checks")
+      .tag("backend", backend)
+      .register(registry);
+    FunctionCounter.builder("gateway.backend.endpoint.ejections", ejections, LongAdder::sum)
+      .description("Endpoints taken out of rotation after failing requests in a row")
+      .tag("backend", backend)
+      .register(registry);
+  }
+
+  public String addresses() {
+    List<String> addresses = new ArrayList<>();
+    for (Endpoint endpoint : endpoints) {
+      addresses.add(endpoint.address);
+    }
+    return String.join(",", addresses);
+  }
+
+  public JsonArray toJson() {
+    long now = System.nanoTime();
+    JsonArray json = new JsonArray();
+    for (Endpoint endpoint : endpoints) {
+      json.add(endpoint.toJson(now));
+    }
+    return json;
+  }
+
+  // Reservoir sampling of two distinct endpoints in one pass
+  private static Endpoint[] sampleTwo(List<Endpoint> candidates, long now, boolean availableOnly) {
+    Endpoint[] two = new Endpoint[2];
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int seen = 0;
+    for (Endpoint endpoint : candidates) {
+      if (availableOnly && !endpoint.isAvailable(now)) {
+        continue;
+      }
+      seen++;
+      if (seen <= 2) {
+        two[seen - 1] = endpoint;
+      } else {
+        int slot = random.nextInt(seen);
+        if (slot < 2) {
+          two[slot] = endpoint;
+        }
+      }
+    }
+    return two;
+  }
+
+  private synchronized void tryEject(Endpoint endpoint) {
+    long now = System.nanoTime();
+    List<Endpoint> current = endpoints;
+    int ejected = 0;
+    for (Endpoint other : current) {
+      if (other.isEjected(now)) {
+        ejected++;
+      }
+    }
+    if ((ejected + 1) * 100 > current.size() * ejectMaxPercent) {
+      return; // Ejecting more would push too much load onto the rest
+    }
+    endpoint.eject(now, ejectBaseNanos);
+    ejections.increment();
+    LOG.warn("Endpoint ejected", "backend", backend, "endpoint", endpoint.address);
+  }
+
+  private int availableCount() {
+    long now = System.nanoTime();
+    int available = 0;
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint.isAvailable(now)) {
+        available++;
+      }
+    }
+    return available;
+  }
+
+  private void watch(Vertx vertx, String file, long pollMs) {
+    long[] lastModified = {-1};
+    vertx.setPeriodic(pollMs, id -> vertx.fileSystem().props(file)
+      .compose(props -> {
+        if (props.lastModifiedTime() == lastModified[0]) {
+          return Future.succeededFuture();
+        }
+        lastModified[0] = props.lastModifiedTime();
+        return vertx.fileSystem().readFile(file).map(content -> {
+          update(parse(content.toString(), defaultPort), file);
+          return null;
+        });
+      })
+      .onFailure(err -> LOG.warn("Could not read endpoints file, keeping the current endpoints",
+        "backend", backend, "file", file, "error", err)));
+  }
+
+  synchronized void update(List<Endpoint> parsed, String source) {
+    if (parsed.isEmpty()) {
+      LOG.warn("No endpoints listed, keeping the current endpoints", "backend", backend, "source", source);
+      return;
+    }
+    // Keep the Endpoint objects (counters, ejection, health) of replicas that are still listed
+    Map<String, Endpoint> existing = new HashMap<>();
+    for (Endpoint endpoint : endpoints) {
+      existing.put(endpoint.address, endpoint);
+    }
+    List<Endpoint> next = new ArrayList<>(parsed.size());
+    for (Endpoint endpoint : parsed) {
+      next.add(existing.getOrDefault(endpoint.address, endpoint));
+    }
+    String before = addresses();
+    endpoints = List.copyOf(next);
+    if (!before.equals(addresses())) {
+      LOG.info("Endpoints updated", "backend", backend, "endpoints", addresses());
+    }
+  }
+
+  private static Future<Boolean> check(HttpClient client, Endpoint endpoint, long timeoutMs) {
+    return client.request(new RequestOptions()
+        .setMethod(HttpMethod.GET)
+        .setHost(endpoint.host)
+        .setPort(endpoint.port)
+        .setURI("/health")
+        .setConnectTimeout(timeoutMs)
+        .setIdleTimeout(timeoutMs))
+      .compose(HttpClientRequest::send)
+      .compose(response -> response.body().map(body -> response.statusCode() / 100 == 2));
+  }
+
+  // "host:port" per line (or comma); a missing port means the backend's default
+  static List<Endpoint> parse(String text, int defaultPort) {
+    List<Endpoint> endpoints = new ArrayList<>();
+    for (String line : text.split("\n")) {
+      int comment = line.indexOf('#');
+      String address = (comment >= 0 ? line.substring(0, comment) : line).trim();
+      if (address.isEmpty()) {
+        continue;
+      }
+      int colon = address.lastIndexOf(':');
+      String host = colon < 0 ? address : address.substring(0, colon);
+      int port = colon < 0 ? defaultPort : Integer.parseInt(address.substring(colon + 1));
+      if (endpoints.stream().noneMatch(e -> e.host.equals(host) && e.port == port)) {
+        endpoints.add(new Endpoint(host, port));
+      }
+    }
+    return endpoints;
+  }
+}
@@ -0,0 +1,138 @@
+package com.griddynamics.api_gateway;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Drives the limiter with made-up latencies and clock readings
+public class TestAdaptiveLimiter {
+
+  private static final long MS = 1_000_000;
+  // Any non-zero start: the limiter treats a last decrease at 0 as "never"
+  private static final long T0 = 1_000 * MS;
+
+  @Test
+  void limit_caps_requests_in_flight() {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(3, 1, 100, 2.0, 0.5);
+    assertTrue(limiter.tryAcquire());
+    assertTrue(limiter.tryAcquire());
+    assertTrue(limiter.tryAcquire());
+    assertFalse(limiter.tryAcquire());
+
+    limiter.release();
+    assertEquals(2, limiter.inFlight());
+    assertTrue(limiter.tryAcquire());
+  }
+
+  @Test
+  void slow_start_adds_one_per_success_while_busy() {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(10, 1, 100, 2.0, 0.5);
+    fill(limiter, 8);
+    for (int i = 0; i < 5; i++) {
+      answer(limiter, 10 * MS, T0 + i * MS);
+    }
+    assertEquals(15, limiter.limit());
+  }
+
+  @Test
+  void limit_does_not_grow_while_mostly_idle() {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(10, 1, 100, 2.0, 0.5);
+    fill(limiter, 3);
+    for (int i = 0; i < 50; i++) {
+      answer(limiter, 10 * MS, T0 + i * MS);
+    }
+    assertEquals(10, limiter.limit());
+  }
+
+  @Test
+  void after_the_first_decrease_growth_is_one_per_round_of_limit_requests() {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(16, 1, 100, 2.0, 0.5);
+    assertTrue(limiter.tryAcquire());
+    limiter.onFailure(T0);
+    assertEquals(8, limiter.limit());
+
+    fill(limiter, 7);
+    // Each success adds 1 / limit, and the limit grows as it goes: nine of them make one step
+    for (int i = 0; i < 8; i++) {
+      answer(limiter, 10 * MS, T0 + (i + 1) * MS);
+    }
+    assertEquals(8, limiter.limit());
+    answer(limiter, 10 * MS, T0 + 9 * MS);
+    assertEquals(9, limiter.limit());
+  }
+
+  @Test
+  void decreases_at_most_once_per_short_average_latency() {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(64, 1, 100, 2.0, 0.5);
+    answer(limiter, 10 * MS, T0);
+    fill(limiter, 4);
+
+    limiter.onFailure(T0 + MS);
+    assertEquals(32, limiter.limit());
+    // Same slow burst: within 10 ms of the last decrease
+    limiter.onFailure(T0 + 5 * MS);
+    limiter.onFailure(T0 + 10 * MS);
+    assertEquals(32, limiter.limit());
+
+    limiter.onFailure(T0 + 11 * MS);
+    assertEquals(16, limiter.limit());
+  }
+
+  @Test
+  void rising_latency_decreases_once_the_baseline_is_known() {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(20, 1, 100, 2.0, 0.5);
+    long now = T0;
+    // No baseline yet: a slow patch this early is not taken for queueing
+    for (int i = 0; i < 10; i++) {
+      answer(limiter, 10 * MS, now += MS);
+    }
+    for (int i = 0; i < 20; i++) {
+      answer(limiter, 100 * MS, now += MS);
+    }
+    assertEquals(20, limiter.limit());
+    for (int i = 0; i < 200; i++) {
+      answer(limiter, 10 * MS, now += MS);
+    }
+    assertEquals(20, limiter.limit());
+
+    // The short average passes twice the long one after a few slow answers
+    for (int i = 0; i < 20; i++) {
+      answer(limiter, 50 * MS, now += MS);
+    }
+    assertEquals(10, limiter.limit());
+    assertTrue(limiter.shortRttMs() > 2 * limiter.longRttMs());
+  }
+
+  @Test
+  void limit_stays_between_min_and_max() {
+    AdaptiveLimiter limiter = new AdaptiveLimiter(4, 2, 6, 2.0, 0.5);
+    fill(limiter, 3);
+    for (int i = 0; i < 10; i++) {
+      answer(limiter, 10 * MS, T0 + i * MS);
+    }
+    assertEquals(6, limiter.limit());
+
+    for (int i = 0; i < 3; i++) {
+      limiter.release();
+    }
+    for (int i = 0; i < 10; i++) {
+      assertTrue(limiter.tryAcquire());
+      limiter.onFailure(T0 + (100 + 100 * i) * MS);
+    }
+    assertEquals(2, limiter.limit());
+  }
+
+  private static void fill(AdaptiveLimiter limiter, int requests) {
+    for (int i = 0; i < requests; i++) {
+      assertTrue(limiter.tryAcquire());
+    }
+  }
+
+  // One more request goes out and is answered, so the number in flight stays where it was
+  private static void answer(AdaptiveLimiter limiter, long latencyNanos, long nowNanos) {
+    assertTrue(limiter.tryAcquire());
+    limiter.onSuccess(latencyNanos, nowNanos);
+  }
+}
@@ -0,0 +1,156 @@
+package com.griddynamics.api_gateway;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Drives the breaker with made-up clock readings
+public class TestCircuitBreaker {
+
+  private static final long MS = 1_000_000;
+  private static final long OPEN = 1_000 * MS;
+
+  @Test
+  void opens_only_once_a_full_window_reaches_the_failure_ratio() {
+    CircuitBreaker breaker = new CircuitBreaker(10, 0.5, OPEN, 2);
+    long now = 0;
+    // Four failures out of four, but the window isn't full yet
+    for (int i = 0; i < 4; i++) {
+      call(breaker, true, now += MS);
+    }
+    for (int i = 0; i < 5; i++) {
+      call(breaker, false, now += MS);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+    // 10th outcome: 5 of 10 failed
+    call(breaker, true, now += MS);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    assertEquals(1, breaker.timesOpened());
+  }
+
+  @Test
+  void old_failures_leave_the_window() {
+    CircuitBreaker breaker = new CircuitBreaker(4, 0.5, OPEN, 2);
+    long now = 0;
+    call(breaker, true, now += MS);
+    call(breaker, false, now += MS);
+    call(breaker, false, now += MS);
+    call(breaker, false, now += MS);
+    // The first failure drops out as this one comes in: still 1 of 4
+    call(breaker, true, now += MS);
+    call(breaker, false, now += MS);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+    call(breaker, true, now += MS);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+  }
+
+  @Test
+  void open_breaker_rejects_until_its_time_is_up() {
+    CircuitBreaker breaker = new CircuitBreaker(2, 0.5, OPEN, 2);
+    call(breaker, true, MS);
+    call(breaker, true, 2 * MS);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+    assertFalse(breaker.tryAcquire(3 * MS));
+    assertEquals(OPEN - MS, breaker.remainingOpenNanos(3 * MS));
+    assertFalse(breaker.tryAcquire(2 * MS + OPEN - 1));
+
+    assertTrue(breaker.tryAcquire(2 * MS + OPEN));
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    assertEquals(0, breaker.remainingOpenNanos(2 * MS + OPEN));
+  }
+
+  @Test
+  void half_open_lets_through_only_the_probes_and_closes_when_all_succeed() {
+    CircuitBreaker breaker = opened(3);
+    long now = OPEN + 10 * MS;
+    assertTrue(breaker.tryAcquire(now));
+    assertTrue(breaker.tryAcquire(now));
+    assertTrue(breaker.tryAcquire(now));
+    assertFalse(breaker.tryAcquire(now));
+
+    breaker.onResult(now, false, now + MS);
+    breaker.onResult(now, false, now + MS);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    // Two probes answered, but the third is still out
+    assertFalse(breaker.tryAcquire(now + MS));
+
+    breaker.onResult(now, false, now + 2 * MS);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+    // Closed with an empty window: a full window is needed before it opens again
+    call(breaker, true, now + 3 * MS);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    call(breaker, true, now + 4 * MS);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+  }
+
+  @Test
+  void a_failed_probe_opens_it_again() {
+    CircuitBreaker breaker = opened(2);
+    long now = OPEN + 10 * MS;
+    assertTrue(breaker.tryAcquire(now));
+    assertTrue(breaker.tryAcquire(now));
+    breaker.onResult(now, false, now + MS);
+    breaker.onResult(now, true, now + 2 * MS);
+
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    assertEquals(2, breaker.timesOpened());
+    assertFalse(breaker.tryAcquire(now + OPEN));
+    assertTrue(breaker.tryAcquire(now + 2 * MS + OPEN));
+  }
+
+  @Test
+  void results_of_requests_started_before_it_opened_are_ignored() {
+    CircuitBreaker breaker = new CircuitBreaker(2, 0.5, OPEN, 1);
+    // A slow request goes out while the breaker is still closed
+    long slowStart = MS;
+    assertTrue(breaker.tryAcquire(slowStart));
+    call(breaker, true, 2 * MS);
+    call(breaker, true, 3 * MS);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+    long now = 3 * MS + OPEN;
+    assertTrue(breaker.tryAcquire(now));
+    // The old request's success is no answer to the probe
+    breaker.onResult(slowStart, false, now + MS);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    assertFalse(breaker.tryAcquire(now + MS));
+    // Nor does releasing it free the probe's slot
+    breaker.release(slowStart);
+    assertFalse(breaker.tryAcquire(now + MS));
+
+    breaker.onResult(now, false, now + 2 * MS);
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+  }
+
+  @Test
+  void probe_that_never_reached_the_backend_frees_its_slot() {
+    CircuitBreaker breaker = opened(1);
+    long now = OPEN + 10 * MS;
+    assertTrue(breaker.tryAcquire(now));
+    assertFalse(breaker.tryAcquire(now));
+
+    breaker.release(now);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    assertTrue(breaker.tryAcquire(now + MS));
+  }
+
+  // Window of 2, opened by two failures ending at 2 ms
+  private static CircuitBreaker opened(int probes) {
+    CircuitBreaker breaker = new CircuitBreaker(2, 0.5, OPEN, probes);
+    call(breaker, true, MS);
+    call(breaker, true, 2 * MS);
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    return breaker;
+  }
+
+  private static void call(CircuitBreaker breaker, boolean failed, long nowNanos) {
+    assertTrue(breaker.tryAcquire(nowNanos));
+    breaker.onResult(nowNanos, failed, nowNanos);
+  }
+}
@@ -0,0 +1,102 @@
+package com.griddynamics.api_gateway;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Drives one endpoint with made-up clock readings
+public class TestEndpoint {
+
+  private static final long MS = 1_000_000;
+  private static final long BASE = 100 * MS;
+
+  @Test
+  void only_failures_in_a_row_cross_the_threshold() {
+    Endpoint endpoint = new Endpoint("a", 1);
+    assertFalse(failed(endpoint, 3));
+    assertFalse(failed(endpoint, 3));
+    // A success starts the count again
+    endpoint.requestStarted();
+    assertFalse(endpoint.requestEnded(false, 3));
+
+    assertFalse(failed(endpoint, 3));
+    assertFalse(failed(endpoint, 3));
+    assertTrue(failed(endpoint, 3));
+    assertEquals(0, endpoint.outstanding());
+  }
+
+  @Test
+  void failures_while_ejected_do_not_ask_to_eject_again() {
+    Endpoint endpoint = new Endpoint("a", 1);
+    assertTrue(failed(endpoint, 1));
+    endpoint.eject(0, BASE);
+
+    assertFalse(failed(endpoint, 1));
+  }
+
+  @Test
+  void each_ejection_lasts_longer_up_to_ten_times_the_base() {
+    Endpoint endpoint = new Endpoint("a", 1);
+    long now = 0;
+    for (int times = 1; times <= 12; times++) {
+      endpoint.eject(now, BASE);
+      long length = BASE * Math.min(times, 10);
+      assertTrue(endpoint.isEjected(now + length - 1), "ejection " + times);
+      assertFalse(endpoint.isAvailable(now + length - 1));
+      assertFalse(endpoint.isEjected(now + length), "ejection " + times);
+      assertTrue(endpoint.isAvailable(now + length));
+      now += length;
+    }
+    assertEquals(12, endpoint.toJson(now).getInteger("timesEjected"));
+  }
+
+  @Test
+  void coming_back_from_ejection_clears_the_failure_count() {
+    Endpoint endpoint = new Endpoint("a", 1);
+    assertFalse(failed(endpoint, 2));
+    assertTrue(failed(endpoint, 2));
+    endpoint.eject(0, BASE);
+    assertFalse(endpoint.isEjected(BASE));
+
+    // One failure after coming back is not two in a row
+    assertFalse(failed(endpoint, 2));
+    assertTrue(failed(endpoint, 2));
+  }
+
+  @Test
+  void unhealthy_after_failed_checks_in_a_row_and_healthy_after_passes_in_a_row() {
+    Endpoint endpoint = new Endpoint("a", 1);
+    endpoint.healthCheckFailed(2);
+    endpoint.healthCheckPassed(2);
+    endpoint.healthCheckFailed(2);
+    assertTrue(endpoint.isAvailable(0));
+
+    endpoint.healthCheckFailed(2);
+    assertFalse(endpoint.isAvailable(0));
+
+    endpoint.healthCheckPassed(3);
+    endpoint.healthCheckPassed(3);
+    endpoint.healthCheckFailed(3);
+    endpoint.healthCheckPassed(3);
+    endpoint.healthCheckPassed(3);
+    assertFalse(endpoint.isAvailable(0));
+    endpoint.healthCheckPassed(3);
+    assertTrue(endpoint.isAvailable(0));
+  }
+
+  @Test
+  void healthy_but_ejected_is_not_available() {
+    Endpoint endpoint = new Endpoint("a", 1);
+    endpoint.eject(0, BASE);
+    assertFalse(endpoint.isAvailable(MS));
+    assertTrue(endpoint.toJson(MS).getBoolean("healthy"));
+    assertTrue(endpoint.toJson(MS).getBoolean("ejected"));
+  }
+
+  private static boolean failed(Endpoint endpoint, int ejectAfterFailures) {
+    endpoint.requestStarted();
+    return endpoint.requestEnded(true, ejectAfterFailures);
+  }
+}
@@ -0,0 +1,75 @@
+package com.griddynamics.api_gateway;
+
+import com.griddynamics.common.ServiceMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.auth.PubSecKeyOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Runs one gateway instance on 8080 in front of a stand-in backend that records what it receives
+@ExtendWith(VertxExtension.class)
+public class TestHttpServerVerticle {
+
+  private final Map<String, MultiMap> received = new ConcurrentHashMap<>();
+  private WebClient client;
+
+  @BeforeEach
+  void deploy_gateway(Vertx vertx, VertxTestContext testContext) {
+    client = WebClient.create(vertx);
+    vertx.createHttpServer()
+      .requestHandler(request -> {
+        received.put(request.method().name() + " " + request.path(), MultiMap.caseInsensitiveMultiMap().addAll(request.headers()));
+        request.body().onSuccess(body -> request.response()
+          .putHeader("Content-Type", "application/json")
+          .end(request.path().equals("/users") ? "[]" : "{}"));
+      })
+      .listen(0)
+      .map(HttpServer::actualPort)
+      .compose(port -> {
+        ServiceMetrics metrics = new ServiceMetrics("api-gateway-test");
+        JwtAuthGuard authGuard = new JwtAuthGuard(JWTAuth.create(vertx, new JWTAuthOptions()
+          .addPubSecKey(new PubSecKeyOptions().setAlgorithm("HS256").setBuffer("test-secret-test-secret-test-secret"))),
+          "optional", 100);
+        return vertx.deployVerticle(new HttpServerVerticle(new ResponseCache(1 << 20, 1 << 16), authGuard,
+          backend("user-service", port, metrics.registry()), backend("post-service", port, metrics.registry()),
+          RequestCoalescer.fromEnv(metrics.registry()), metrics));
+      })
+      .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  void client_sent_user_id_never_reaches_a_backend(Vertx vertx, VertxTestContext testContext) {
+    client.post(8080, "localhost", "/login").putHeader("X-User-Id", "1").sendJson(Map.of("username", "a"))
+      .compose(login -> client.post(8080, "localhost", "/register").putHeader("x-user-id", "1").sendJson(Map.of("username", "a")))
+      .compose(register -> client.get(8080, "localhost", "/users").putHeader("X-User-Id", "1").send())
+      .onComplete(testContext.succeeding(users -> testContext.verify(() -> {
+        for (String route : List.of("POST /login", "POST /register", "GET /users")) {
+          MultiMap headers = received.get(route);
+          assertNull(headers.get(JwtAuthGuard.USER_ID_HEADER), route);
+        }
+        testContext.completeNow();
+      })));
+  }
+
+  private static Backend backend(String name, int port, MeterRegistry registry) {
+    return new Backend(name, name.toUpperCase().replace('-', '_'),
+      new BackendStats(name, registry),
+      BackendGuard.fromEnv(name, name.toUpperCase().replace('-', '_'), registry),
+      new RoutingTable(name, port, List.of(new Endpoint("localhost", port)), 5, 30000, 50));
+  }
+}
@@ -0,0 +1,45 @@
+package com.griddynamics.api_gateway;
+
+import io.vertx.core.MultiMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TestProxyHeaders {
+
+  @Test
+  void proxied_requests_keep_conditional_and_encoding_headers() {
+    MultiMap copied = MultiMap.caseInsensitiveMultiMap();
+    ProxyHeaders.copyRequestHeaders(clientHeaders(), copied);
+
+    assertEquals("W/\"v1\"", copied.get("If-None-Match"));
+    assertEquals("gzip, br", copied.get("Accept-Encoding"));
+    assertNull(copied.get("Connection"));
+  }
+
+  @Test
+  void sub_requests_drop_conditional_range_and_encoding_headers() {
+    MultiMap copied = MultiMap.caseInsensitiveMultiMap();
+    ProxyHeaders.copySubRequestHeaders(clientHeaders(), copied);
+
+    assertEquals(Set.of("Authorization", "X-Request-Id"), copied.names());
+    assertEquals("Bearer token", copied.get("Authorization"));
+  }
+
+  private static MultiMap clientHeaders() {
+    return MultiMap.caseInsensitiveMultiMap()
+      .add("Authorization", "Bearer token")
+      .add("If-None-Match", "W/\"v1\"")
+      .add("if-modified-since", "Sat, 17 Oct 2026 10:00:00 GMT")
+      .add("If-Match", "\"v1\"")
+      .add("If-Unmodified-Since", "Sat, 17 Oct 2026 10:00:00 GMT")
+      .add("If-Range", "\"v1\"")
+      .add("Range", "bytes=0-99")
+      .add("Accept-Encoding", "gzip, br")
+      .add("Connection", "keep-alive")
+      .add("X-Request-Id", "abc");
+  }
+}
@@ -0,0 +1,237 @@
+package com.griddynamics.api_gateway;
+
+import io.vertx.core.Future;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.client.HttpResponse;
+import io.vertx.ext.web.client.WebClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+public class TestResponseCache {
+
+  private static final long HOUR_NANOS = 3_600_000_000_000L;
+  // "GET /a" with a 100-byte body and no headers
+  private static final long ENTRY_BYTES = 96 + 6 * 2 + 100;
+
+  @Test
+  void least_recently_used_entries_go_once_the_bytes_run_out() {
+    ResponseCache cache = new ResponseCache(3 * ENTRY_BYTES, ENTRY_BYTES);
+    cache.put("GET /a", entry(100, System.nanoTime() + HOUR_NANOS), 0);
+    cache.put("GET /b", entry(100, System.nanoTime() + HOUR_NANOS), 0);
+    cache.put("GET /c", entry(100, System.nanoTime() + HOUR_NANOS), 0);
+    assertEquals(3 * ENTRY_BYTES, cache.toJson().getLong("bytes"));
+
+    // Reading /a makes /b the least recently used
+    assertNotNull(cache.get("GET /a"));
+    cache.put("GET /d", entry(100, System.nanoTime() + HOUR_NANOS), 0);
+
+    assertNull(cache.get("GET /b"));
+    assertNotNull(cache.get("GET /a"));
+    assertNotNull(cache.get("GET /c"));
+    assertNotNull(cache.get("GET /d"));
+    assertEquals(1, cache.toJson().getInteger("evictions"));
+    assertEquals(3 * ENTRY_BYTES, cache.toJson().getLong("bytes"));
+  }
+
+  @Test
+  void one_large_entry_can_push_out_several_small_ones() {
+    ResponseCache cache = new ResponseCache(3 * ENTRY_BYTES, 3 * ENTRY_BYTES);
+    cache.put("GET /a", entry(100, System.nanoTime() + HOUR_NANOS), 0);
+    cache.put("GET /b", entry(100, System.nanoTime() + HOUR_NANOS), 0);
+    cache.put("GET /c", entry(100, System.nanoTime() + HOUR_NANOS), 0);
+    cache.put("GET /e", entry(250, System.nanoTime() + HOUR_NANOS), 0);
+
+    assertEquals(2, cache.toJson().getInteger("entries"));
+    assertNull(cache.get("GET /a"));
+    assertNull(cache.get("GET /b"));
+  }
+
+  @Test
+  void entries_over_the_entry_limit_are_not_stored() {
+    ResponseCache cache = new ResponseCache(10 * ENTRY_BYTES, ENTRY_BYTES);
+    cache.put("GET /a", entry(101, System.nanoTime() + HOUR_NANOS), 0);
+
+    assertNull(cache.get("GET /a"));
+    assertEquals(0, cache.toJson().getLong("bytes"));
+  }
+
+  @Test
+  void expired_entries_are_misses_and_free_their_bytes() {
+    ResponseCache cache = new ResponseCache(10 * ENTRY_BYTES, ENTRY_BYTES);
+    cache.put("GET /a", entry(100, System.nanoTime() - 1), 0);
+    cache.put("GET /b", entry(100, System.nanoTime() + HOUR_NANOS), 0);
+
+    assertNull(cache.get("GET /a"));
+    assertNotNull(cache.get("GET /b"));
+    assertEquals(1, cache.toJson().getInteger("expirations"));
+    assertEquals(ENTRY_BYTES, cache.toJson().getLong("bytes"));
+  }
+
+  @Test
+  void invalidation_drops_the_paths_under_the_prefix_whatever_the_query() {
+    ResponseCache cache = new ResponseCache(10 * ENTRY_BYTES, 2 * ENTRY_BYTES);
+    cache.put("GET /users", entry(10, System.nanoTime() + HOUR_NANOS), 0);
+    cache.put("GET /users/7?fields=all", entry(10, System.nanoTime() + HOUR_NANOS), 0);
+    cache.put("GET /posts?users=1", entry(10, System.nanoTime() + HOUR_NANOS), 0);
+    List<String> told = new ArrayList<>();
+    cache.onInvalidate(told::add);
+
+    cache.invalidate("/users");
+
+    assertNull(cache.get("GET /users"));
+    assertNull(cache.get("GET /users/7?fields=all"));
+    assertNotNull(cache.get("GET /posts?users=1"));
+    assertEquals(2, cache.toJson().getInteger("invalidations"));
+    assertEquals(List.of("/users"), told);
+  }
+
+  @Test
+  void fill_from_before_an_invalidation_is_dropped() {
+    ResponseCache cache = new ResponseCache(10 * ENTRY_BYTES, ENTRY_BYTES);
+    // Any invalidation, not only one of this path: the read may have joined data from both
+    cache.invalidate("/posts");
+
+    cache.put("GET /a", entry(100, System.nanoTime() + HOUR_NANOS), 0);
+    assertNull(cache.get("GET /a"));
+    cache.put("GET /a", entry(100, System.nanoTime() + HOUR_NANOS), 1);
+    assertNotNull(cache.get("GET /a"));
+  }
+
+  @Test
+  void hit_answers_304_when_the_etag_matches(Vertx vertx, VertxTestContext testContext) {
+    ResponseCache cache = new ResponseCache(10_000, 10_000);
+    AtomicInteger backendCalls = new AtomicInteger();
+    WebClient client = WebClient.create(vertx);
+
+    serve(vertx, cache, ctx -> backendCalls.incrementAndGet()).compose(port ->
+      client.get(port, "localhost", "/users").send()
+        .compose(miss -> {
+          testContext.verify(() -> {
+            assertEquals(200, miss.statusCode());
+            assertEquals("MISS", miss.getHeader("X-Cache"));
+          });
+          return client.get(port, "localhost", "/users").putHeader("If-None-Match", "W/\"v1\"").send();
+        })
+        .compose(notModified -> {
+          testContext.verify(() -> {
+            assertEquals(304, notModified.statusCode());
+            assertEquals("HIT", notModified.getHeader("X-Cache"));
+            assertEquals("\"v1\"", notModified.getHeader("ETag"));
+            assertNull(notModified.body());
+          });
+          return client.get(port, "localhost", "/users").putHeader("If-None-Match", "\"v0\"").send();
+        })
+        .map(HttpResponse::bodyAsString))
+      .onComplete(testContext.succeeding(body -> testContext.verify(() -> {
+        assertEquals("[]", body);
+        assertEquals(1, backendCalls.get());
+        assertEquals(2, cache.toJson().getInteger("hits"));
+        testContext.completeNow();
+      })));
+  }
+
+  @Test
+  void response_read_across_a_write_is_not_cached(Vertx vertx, VertxTestContext testContext) {
+    ResponseCache cache = new ResponseCache(10_000, 10_000);
+    AtomicInteger backendCalls = new AtomicInteger();
+    WebClient client = WebClient.create(vertx);
+
+    // The first read is still at the backend when a write to /users succeeds
+    Consumer<RoutingContext> backend = ctx -> {
+      if (backendCalls.incrementAndGet() == 1) {
+        cache.invalidate("/users");
+      }
+    };
+    serve(vertx, cache, backend).compose(port ->
+      client.get(port, "localhost", "/users").send()
+        .compose(first -> client.get(port, "localhost", "/users").send())
+        .compose(second -> client.get(port, "localhost", "/users").send()))
+      .onComplete(testContext.succeeding(third -> testContext.verify(() -> {
+        assertEquals("HIT", third.getHeader("X-Cache"));
+        assertEquals(2, backendCalls.get());
+        testContext.completeNow();
+      })));
+  }
+
+  @Test
+  void streamed_write_invalidates_only_once_its_response_has_ended(Vertx vertx, VertxTestContext testContext) {
+    ResponseCache cache = new ResponseCache(10_000, 10_000);
+    AtomicReference<HttpServerResponse> importing = new AtomicReference<>();
+    AtomicBoolean refilled = new AtomicBoolean();
+    Router router = Router.router(vertx);
+    // A bulk import: results go out as it runs, the last chunk once it is done
+    router.post("/posts/batch")
+      .handler(cache.invalidateOnEnd("/posts", "/users/"))
+      .handler(ctx -> {
+        ctx.response().setChunked(true).write("{\"results\": [");
+        importing.set(ctx.response());
+      });
+    cache.onInvalidate(prefix -> testContext.verify(() -> {
+      // Not before a read that overlapped the import had stored its page
+      assertTrue(refilled.get(), "invalidated before the import ended");
+      if (prefix.equals("/users/")) {
+        assertNull(cache.get("GET /posts?after=0"));
+        assertNull(cache.get("GET /users/7/posts"));
+        assertNotNull(cache.get("GET /users"));
+        testContext.completeNow();
+      }
+    }));
+
+    vertx.createHttpServer().requestHandler(router).listen(0)
+      .compose(server -> vertx.createHttpClient().request(HttpMethod.POST, server.actualPort(), "localhost", "/posts/batch"))
+      .compose(HttpClientRequest::send)
+      .onComplete(testContext.succeeding(response -> {
+        // Pages read while the import is still running
+        cache.put("GET /posts?after=0", entry(10, System.nanoTime() + HOUR_NANOS), cache.generation());
+        cache.put("GET /users/7/posts", entry(10, System.nanoTime() + HOUR_NANOS), cache.generation());
+        cache.put("GET /users", entry(10, System.nanoTime() + HOUR_NANOS), cache.generation());
+        refilled.set(true);
+        importing.get().end("]}");
+      }));
+  }
+
+  // GET /users behind the cache, answered by a stand-in for the proxy that fills it
+  private static Future<Integer> serve(Vertx vertx, ResponseCache cache, Consumer<RoutingContext> backend) {
+    Router router = Router.router(vertx);
+    router.get("/users")
+      .handler(cache.handler(60_000))
+      .handler(ctx -> {
+        backend.accept(ctx);
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap()
+          .add("Content-Type", "application/json")
+          .add("ETag", "\"v1\"");
+        Buffer body = Buffer.buffer("[]");
+        cache.fill(ctx, 200, headers, body);
+        ctx.response().headers().addAll(headers);
+        ctx.response().end(body);
+      });
+    return vertx.createHttpServer().requestHandler(router).listen(0).map(HttpServer::actualPort);
+  }
+
+  private static ResponseCache.Entry entry(int bodyBytes, long expiresAtNanos) {
+    return new ResponseCache.Entry(200, MultiMap.caseInsensitiveMultiMap(), Buffer.buffer(new byte[bodyBytes]), expiresAtNanos);
+  }
+}
@@ -0,0 +1,187 @@
+package com.griddynamics.api_gateway;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestRoutingTable {
+
+  // Long enough that nothing comes back from ejection while a test runs
+  private static final long EJECT_MS = 600_000;
+  private static final int PICKS = 2_000;
+
+  @Test
+  void busiest_endpoint_is_never_picked() {
+    Endpoint a = new Endpoint("a", 1);
+    Endpoint b = new Endpoint("b", 1);
+    Endpoint c = new Endpoint("c", 1);
+    start(a, 1);
+    start(b, 2);
+    start(c, 3);
+    RoutingTable table = table(List.of(a, b, c), 50);
+
+    // Whichever two are drawn, the less busy one wins: c never does, b only against c
+    Map<Endpoint, Integer> picked = picks(table);
+    assertNull(picked.get(c));
+    assertTrue(picked.get(a) > picked.get(b));
+    assertTrue(picked.get(b) > 0);
+  }
+
+  @Test
+  void equally_busy_endpoints_share_the_load() {
+    Endpoint a = new Endpoint("a", 1);
+    Endpoint b = new Endpoint("b", 1);
+    Endpoint c = new Endpoint("c", 1);
+    RoutingTable table = table(List.of(a, b, c), 50);
+
+    Map<Endpoint, Integer> picked = picks(table);
+    for (Endpoint endpoint : List.of(a, b, c)) {
+      assertTrue(picked.getOrDefault(endpoint, 0) > PICKS / 6, endpoint.address);
+    }
+  }
+
+  @Test
+  void unavailable_endpoints_are_skipped() {
+    Endpoint a = new Endpoint("a", 1);
+    Endpoint b = new Endpoint("b", 1);
+    Endpoint c = new Endpoint("c", 1);
+    b.healthCheckFailed(1);
+    RoutingTable table = table(List.of(a, b, c), 50);
+    Map<Endpoint, Integer> picked = picks(table);
+    assertNull(picked.get(b));
+    assertTrue(picked.get(a) > 0 && picked.get(c) > 0);
+
+    // Only one left: it takes everything, however busy
+    c.healthCheckFailed(1);
+    start(a, 10);
+    assertEquals(Map.of(a, PICKS), picks(table));
+  }
+
+  @Test
+  void with_none_available_every_endpoint_still_gets_requests() {
+    Endpoint a = new Endpoint("a", 1);
+    Endpoint b = new Endpoint("b", 1);
+    Endpoint c = new Endpoint("c", 1);
+    for (Endpoint endpoint : List.of(a, b, c)) {
+      endpoint.healthCheckFailed(1);
+    }
+    RoutingTable table = table(List.of(a, b, c), 50);
+
+    assertEquals(3, picks(table).size());
+
+    Endpoint only = new Endpoint("only", 1);
+    only.healthCheckFailed(1);
+    assertSame(only, table(List.of(only), 50).pick());
+  }
+
+  @Test
+  void ejection_stops_at_the_max_percent_of_endpoints() {
+    Endpoint a = new Endpoint("a", 1);
+    Endpoint b = new Endpoint("b", 1);
+    Endpoint c = new Endpoint("c", 1);
+    Endpoint d = new Endpoint("d", 1);
+    RoutingTable table = table(List.of(a, b, c, d), 50);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    table.bindTo(registry);
+
+    fail(table, a);
+    fail(table, b);
+    // A third would leave only one of four in rotation
+    fail(table, c);
+
+    assertTrue(ejected(table, "a:1"));
+    assertTrue(ejected(table, "b:1"));
+    assertFalse(ejected(table, "c:1"));
+    assertEquals(2.0, registry.get("gateway.backend.endpoint.ejections").functionCounter().count());
+    assertEquals(2.0, registry.get("gateway.backend.endpoints.available").gauge().value());
+    Map<Endpoint, Integer> picked = picks(table);
+    assertNull(picked.get(a));
+    assertNull(picked.get(b));
+  }
+
+  @Test
+  void below_one_endpoint_worth_of_percent_nothing_is_ejected() {
+    Endpoint a = new Endpoint("a", 1);
+    Endpoint b = new Endpoint("b", 1);
+    Endpoint c = new Endpoint("c", 1);
+    RoutingTable table = table(List.of(a, b, c), 30);
+
+    fail(table, a);
+    assertFalse(ejected(table, "a:1"));
+  }
+
+  @Test
+  void reload_keeps_the_state_of_endpoints_still_listed() {
+    Endpoint a = new Endpoint("a", 1);
+    Endpoint b = new Endpoint("b", 2);
+    RoutingTable table = table(List.of(a, b), 50);
+    start(a, 2);
+    fail(table, a);
+    assertTrue(ejected(table, "a:1"));
+
+    table.update(RoutingTable.parse("c:3\na:1\n", 80), "test");
+    assertEquals("c:3,a:1", table.addresses());
+    JsonObject kept = json(table, "a:1");
+    assertTrue(kept.getBoolean("ejected"));
+    assertEquals(3, kept.getInteger("requests"));
+    assertEquals(2, kept.getInteger("outstanding"));
+    assertEquals(0, json(table, "c:3").getInteger("requests"));
+
+    // An empty file keeps what was there
+    table.update(RoutingTable.parse("# nothing yet\n", 80), "test");
+    assertEquals("c:3,a:1", table.addresses());
+  }
+
+  @Test
+  void endpoints_file_lines_are_host_and_optional_port() {
+    List<Endpoint> parsed = RoutingTable.parse("a:1\n  b  # second\n\n# c:3\na:1\nb:80\nd:4", 80);
+
+    assertEquals(List.of("a:1", "b:80", "d:4"), parsed.stream().map(e -> e.address).toList());
+  }
+
+  private static RoutingTable table(List<Endpoint> endpoints, int ejectMaxPercent) {
+    return new RoutingTable("test", 80, endpoints, 1, EJECT_MS, ejectMaxPercent);
+  }
+
+  private static void start(Endpoint endpoint, int requests) {
+    for (int i = 0; i < requests; i++) {
+      endpoint.requestStarted();
+    }
+  }
+
+  private static void fail(RoutingTable table, Endpoint endpoint) {
+    endpoint.requestStarted();
+    table.requestEnded(endpoint, true);
+  }
+
+  private static Map<Endpoint, Integer> picks(RoutingTable table) {
+    Map<Endpoint, Integer> picked = new HashMap<>();
+    for (int i = 0; i < PICKS; i++) {
+      picked.merge(table.pick(), 1, Integer::sum);
+    }
+    return picked;
+  }
+
+  private static boolean ejected(RoutingTable table, String address) {
+    return json(table, address).getBoolean("ejected");
+  }
+
+  private static JsonObject json(RoutingTable table, String address) {
+    for (Object endpoint : table.toJson()) {
+      if (((JsonObject) endpoint).getString("address").equals(address)) {
+        return (JsonObject) endpoint;
+      }
+    }
+    throw new AssertionError("no endpoint " + address);
+  }
+}
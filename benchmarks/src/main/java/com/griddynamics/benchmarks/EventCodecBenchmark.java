@@ -0,0 +1,80 @@
+package com.griddynamics.benchmarks;
+
+import com.griddynamics.common.PostCreatedEvent;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding one post-created event: the binary envelope, the legacy author-id string
+ * (decode only, as user-service still reads it), and the same four fields as JSON
+ * for comparison. For a post id around a million and a current timestamp, the envelope is 14
+ * bytes against 75 for the JSON. Run with {@code -prof gc} to see bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventCodecBenchmark {
+
+  private PostCreatedEvent event;
+  private byte[] binary;
+  private byte[] legacy;
+  private byte[] json;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    event = PostCreatedEvent.of(1_048_576L, 52_114L, 1, System.currentTimeMillis());
+    binary = event.encode();
+    legacy = String.valueOf(event.authorId()).getBytes(StandardCharsets.US_ASCII);
+    json = encodeJson();
+  }
+
+  @Benchmark
+  public byte[] encodeBinary() {
+    return event.encode();
+  }
+
+  @Benchmark
+  public PostCreatedEvent decodeBinary() {
+    return PostCreatedEvent.decode(binary);
+  }
+
+  @Benchmark
+  public PostCreatedEvent decodeLegacy() {
+    return PostCreatedEvent.decode(legacy);
+  }
+
+  @Benchmark
+  public byte[] encodeJson() {
+    return new JsonObject()
+      .put("postId", event.postId())
+      .put("authorId", event.authorId())
+      .put("postCount", event.postCount())
+      .put("createdAt", event.createdAtMillis())
+      .toBuffer()
+      .getBytes();
+  }
+
+  @Benchmark
+  public long decodeJson() {
+    JsonObject decoded = new JsonObject(Buffer.buffer(json));
+    return decoded.getLong("postId") + decoded.getLong("authorId") + decoded.getInteger("postCount")
+      + decoded.getLong("createdAt");
+  }
+}
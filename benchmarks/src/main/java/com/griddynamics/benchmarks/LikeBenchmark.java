@@ -0,0 +1,89 @@
+package com.griddynamics.benchmarks;
+
+import com.griddynamics.common.MeteredPool;
+import com.griddynamics.post_service.LikeCounter;
+import com.griddynamics.post_service.entities.Post;
+import com.griddynamics.post_service.repositories.OutboxRepository;
+import com.griddynamics.post_service.repositories.PostRepository;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.jdbcclient.JDBCConnectOptions;
+import io.vertx.jdbcclient.JDBCPool;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.PoolOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Likes per second on one hot post, from several threads at once (like event loops).
+ * <p>
+ * {@code like} is the {@link LikeCounter} path the endpoint takes, with its flush running in
+ * the background against H2. {@code updatePerLike} is the naive alternative it replaces: one
+ * {@code UPDATE ... SET likes = likes + 1} per click through the service's 5-connection pool.
+ * It runs on one thread only: with several, the updates queue on the hot row's lock until H2
+ * fails them with lock timeouts, which is the reason the counter exists.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class LikeBenchmark {
+
+  private Vertx vertx;
+  private PostRepository postRepository;
+  private LikeCounter likeCounter;
+  private long postId;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    vertx = Vertx.vertx();
+    Pool pool = JDBCPool.pool(vertx, new JDBCConnectOptions()
+      .setJdbcUrl("jdbc:h2:mem:bench_likes")
+      .setUser("sa")
+      .setPassword(""), new PoolOptions().setMaxSize(5));
+    MeteredPool dbClient = new MeteredPool(pool);
+    postRepository = new PostRepository(dbClient, new OutboxRepository(dbClient));
+
+    Post post = new Post(1L, "The hot post");
+    postRepository.initData()
+      .compose(v -> postRepository.save(post))
+      .await();
+    postId = post.getId();
+
+    likeCounter = new LikeCounter(vertx, postRepository, new CompositeMeterRegistry(), 100);
+    likeCounter.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    vertx.close().await();
+  }
+
+  @Benchmark
+  public void like() {
+    likeCounter.like(postId);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void updatePerLike() {
+    postRepository.addLikes(Map.of(postId, 1L)).await();
+  }
+}
@@ -0,0 +1,73 @@
+package com.griddynamics.benchmarks;
+
+import com.griddynamics.user_service.PasswordHasher;
+import io.vertx.core.Vertx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Login throughput at a given PBKDF2 cost.
+ * <p>
+ * {@code verify} goes through the same bounded executor the /login handler uses, with more
+ * callers than hashing threads, so the score is the logins per second one user-service instance
+ * can sustain. {@code matches} is the raw single-thread cost of one verification.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class LoginBenchmark {
+
+  private static final String PASSWORD = "correct horse battery staple";
+
+  @Param({"100000", "210000", "600000"})
+  int iterations;
+
+  @Param({"4"})
+  int hashThreads;
+
+  private Vertx vertx;
+  private PasswordHasher hasher;
+  private String stored;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    vertx = Vertx.vertx();
+    // Queue large enough that the benchmark threads never get rejected
+    hasher = new PasswordHasher(vertx, iterations, hashThreads, 1024);
+    stored = PasswordHasher.encode(PASSWORD, iterations);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    vertx.close().await();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public boolean verify() throws Exception {
+    return hasher.verify(PASSWORD, stored).toCompletionStage().toCompletableFuture().get();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean matches() {
+    return PasswordHasher.matches(PASSWORD, stored);
+  }
+}
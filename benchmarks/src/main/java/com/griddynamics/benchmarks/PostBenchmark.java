@@ -0,0 +1,63 @@
+package com.griddynamics.benchmarks;
+
+import com.griddynamics.post_service.entities.Post;
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-post cost of GET /posts: {@link Post#toJson()} and building plus encoding the
+ * page body. Sizes beyond one page stand for the streamed {@code ?stream=true} export.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostBenchmark {
+
+  @Param({"1000", "10000", "100000"})
+  int size;
+
+  private List<Post> posts;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    posts = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      Post post = new Post((long) (i % 1000), "Post number " + i + ": a short status update of typical length.");
+      post.setId((long) i + 1);
+      post.setLikes(i % 50);
+      posts.add(post);
+    }
+  }
+
+  @Benchmark
+  public void toJson(Blackhole bh) {
+    for (Post post : posts) {
+      bh.consume(post.toJson());
+    }
+  }
+
+  // What ctx.json(...) writes for GET /posts
+  @Benchmark
+  public Buffer pageResponse() {
+    return Post.toPageJson(posts, posts.get(posts.size() - 1).getId()).toBuffer();
+  }
+}
@@ -0,0 +1,101 @@
+package com.griddynamics.benchmarks;
+
+import com.griddynamics.post_service.repositories.PostSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One page (20 hits) of {@code GET /posts/search} from the in-memory index, without the DB fetch
+ * of the hits. Posts are 8 to 40 words drawn from a 50,000-word vocabulary with Zipf-like
+ * frequencies, like real text: a few words are in a large share of the posts, most are rare. The
+ * query names the rank of its words: {@code rare} matches a few posts, {@code common} matches a
+ * word in about a tenth of them, the others combine several.
+ * <p>
+ * Setup prints the index's own size estimate and the heap it actually grew by, for the memory
+ * side of the question.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+  private static final int VOCABULARY = 50_000;
+
+  @Param({"100000", "1000000"})
+  int size;
+
+  @Param({"rare", "common", "common+rare", "three"})
+  String query;
+
+  private PostSearchIndex index;
+  private String text;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    String[] words = new String[VOCABULARY];
+    double[] cumulative = new double[VOCABULARY];
+    double sum = 0;
+    for (int rank = 0; rank < VOCABULARY; rank++) {
+      words[rank] = "w" + Integer.toString(rank, 36);
+      sum += 1.0 / (rank + 1);
+      cumulative[rank] = sum;
+    }
+
+    long heapBefore = usedHeap();
+    long start = System.nanoTime();
+    index = new PostSearchIndex();
+    Random random = new Random(42);
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      content.setLength(0);
+      int length = 8 + random.nextInt(33);
+      for (int w = 0; w < length; w++) {
+        int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+        content.append(words[rank < 0 ? -rank - 1 : rank]).append(w % 9 == 8 ? ". " : " ");
+      }
+      index.add(i + 1, content.toString());
+    }
+    long buildMs = (System.nanoTime() - start) / 1_000_000;
+    long heapGrowth = usedHeap() - heapBefore;
+
+    System.out.printf("%nIndex: %d posts, %d terms, built in %d ms, estimated %.1f MB, heap grew %.1f MB%n",
+      index.size(), index.terms(), buildMs, index.estimatedBytes() / 1e6, heapGrowth / 1e6);
+
+    text = switch (query) {
+      case "rare" -> words[30_000];
+      case "common" -> words[9];
+      case "common+rare" -> words[9] + " " + words[30_000];
+      default -> words[3] + " " + words[200] + " " + words[5_000];
+    };
+  }
+
+  @Benchmark
+  public PostSearchIndex.Hits search() {
+    return index.search(text, 0, 20);
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,108 @@
+package com.griddynamics.benchmarks;
+
+import com.griddynamics.common.MeteredPool;
+import com.griddynamics.user_service.entities.User;
+import com.griddynamics.user_service.repositories.UserRepository;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.jdbcclient.JDBCConnectOptions;
+import io.vertx.jdbcclient.JDBCPool;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-row cost of GET /users: mapping H2 rows to {@link User}, turning users into JSON and
+ * building plus encoding the whole response body.
+ * <p>
+ * The rows come from a real H2 table created by {@link UserRepository#initData()}, so
+ * {@code fromRow} sees the same column types and row implementation as the service.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBenchmark {
+
+  @Param({"1000", "10000", "100000"})
+  int size;
+
+  private Vertx vertx;
+  private List<Row> rows;
+  private List<User> users;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    vertx = Vertx.vertx();
+    Pool pool = JDBCPool.pool(vertx, new JDBCConnectOptions()
+      .setJdbcUrl("jdbc:h2:mem:bench_users_" + size)
+      .setUser("sa")
+      .setPassword(""), new PoolOptions().setMaxSize(1));
+
+    List<Tuple> batch = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      batch.add(Tuple.of("user" + i, "user" + i + "@example.com", "pbkdf2_sha256$210000$c2FsdA$aGFzaA"));
+    }
+
+    rows = new UserRepository(new MeteredPool(pool)).initData()
+      .compose(v -> pool.preparedQuery("INSERT INTO users (username, email, password) VALUES (?, ?, ?)")
+        .executeBatch(batch))
+      .compose(v -> pool.query("SELECT * FROM users").execute())
+      .map(rowSet -> {
+        List<Row> result = new ArrayList<>(size);
+        rowSet.forEach(result::add);
+        return result;
+      })
+      .await();
+    pool.close().await();
+
+    users = new ArrayList<>(size);
+    rows.forEach(row -> users.add(User.fromRow(row)));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    vertx.close().await();
+  }
+
+  @Benchmark
+  public void fromRow(Blackhole bh) {
+    for (Row row : rows) {
+      bh.consume(User.fromRow(row));
+    }
+  }
+
+  @Benchmark
+  public void toJson(Blackhole bh) {
+    for (User user : users) {
+      bh.consume(user.toJson());
+    }
+  }
+
+  // What ctx.json(...) writes for GET /users
+  @Benchmark
+  public Buffer listResponse() {
+    return User.toJsonArray(users).toBuffer();
+  }
+}
@@ -0,0 +1,50 @@
+package com.griddynamics.common;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cheap validator for a whole table: a counter that moves on every write that can change what
+ * the list endpoints return, so a client that already has the current data gets a 304 without a
+ * query. The database is in memory and owned by this process, so the counter sees every write;
+ * the start time in the tag keeps a restarted service from handing out old tags for new data.
+ * <p>
+ * Writers call {@link #advance()} once their write has completed, whatever the outcome (advancing
+ * too often only costs a full response). Readers take {@link #etag()} before they query, so a
+ * response can be tagged older than its data but never newer.
+ * <p>
+ * A {@link LongAdder}, not an AtomicLong: every like advances the posts version, and a hot post
+ * gets liked from every event loop at once.
+ */
+public class CollectionVersion {
+
+  private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+  private final LongAdder version = new LongAdder();
+
+  public void advance() {
+    version.increment();
+  }
+
+  // Weak: the gateway may compress the body, and all the tag promises is the same data
+  public String etag() {
+    return "W/\"" + epoch + "-" + version.sum() + "\"";
+  }
+
+  // If-None-Match is "*" or a list of tags, compared weakly (RFC 9110 13.1.2)
+  public static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    String opaque = opaque(etag);
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.equals("*") || opaque(candidate).equals(opaque)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String opaque(String tag) {
+    return tag.startsWith("W/") ? tag.substring(2) : tag;
+  }
+}
@@ -0,0 +1,32 @@
+package com.griddynamics.common;
+
+// Small helpers for reading optional settings from environment variables (Docker/Kubernetes)
+public final class Env {
+
+  private Env() {}
+
+  public static String string(String name, String defaultValue) {
+    String value = System.getenv(name);
+    return value == null || value.isEmpty() ? defaultValue : value;
+  }
+
+  public static int integer(String name, int defaultValue) {
+    String value = System.getenv(name);
+    return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+  }
+
+  public static long longValue(String name, long defaultValue) {
+    String value = System.getenv(name);
+    return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value.trim());
+  }
+
+  public static double doubleValue(String name, double defaultValue) {
+    String value = System.getenv(name);
+    return value == null || value.isEmpty() ? defaultValue : Double.parseDouble(value.trim());
+  }
+
+  public static boolean bool(String name, boolean defaultValue) {
+    String value = System.getenv(name);
+    return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value.trim());
+  }
+}
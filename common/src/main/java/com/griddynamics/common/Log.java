@@ -0,0 +1,86 @@
+package com.griddynamics.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A logger for one category ("http", "proxy.request", ...). Calls never write to stdout
+ * themselves: an enabled event is put on {@link LogWriter}'s bounded buffer and written as one
+ * JSON line by a background thread, so an event loop never blocks on the console.
+ * <p>
+ * Levels come from {@code LOG_LEVEL} / {@code LOG_LEVELS}. Categories for per-request or
+ * per-record events are created with a rate limit: past that many events in a second the rest
+ * are only counted, and the next event written carries the count as {@code suppressed}.
+ */
+public final class Log {
+
+  public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+  private final String category;
+  private final Level level;
+  private final int maxPerSecond;
+
+  private final AtomicLong currentSecond = new AtomicLong();
+  private final AtomicInteger inCurrentSecond = new AtomicInteger();
+  private final AtomicLong suppressed = new AtomicLong();
+
+  private Log(String category, Level level, int maxPerSecond) {
+    this.category = category;
+    this.level = level;
+    this.maxPerSecond = maxPerSecond;
+  }
+
+  public static Log get(String category) {
+    return get(category, 0);
+  }
+
+  // maxPerSecond 0 = no limit; LOG_RATE_LIMITS overrides the default given here
+  public static Log get(String category, int maxPerSecond) {
+    return new Log(category, LogWriter.levelFor(category), LogWriter.rateLimitFor(category, maxPerSecond));
+  }
+
+  public boolean isEnabled(Level eventLevel) {
+    return eventLevel.compareTo(level) >= 0;
+  }
+
+  // fields are key/value pairs: "status", 200, "uri", uri
+  public void debug(String message, Object... fields) {
+    log(Level.DEBUG, message, fields);
+  }
+
+  public void info(String message, Object... fields) {
+    log(Level.INFO, message, fields);
+  }
+
+  public void warn(String message, Object... fields) {
+    log(Level.WARN, message, fields);
+  }
+
+  public void error(String message, Object... fields) {
+    log(Level.ERROR, message, fields);
+  }
+
+  private void log(Level eventLevel, String message, Object[] fields) {
+    if (!isEnabled(eventLevel) || !admit()) {
+      return;
+    }
+    LogWriter.instance().offer(new LogWriter.Event(System.currentTimeMillis(), eventLevel, category,
+      Thread.currentThread().getName(), message, fields, maxPerSecond > 0 ? suppressed.getAndSet(0) : 0));
+  }
+
+  private boolean admit() {
+    if (maxPerSecond <= 0) {
+      return true;
+    }
+    long second = System.nanoTime() / 1_000_000_000L;
+    long current = currentSecond.get();
+    if (second != current && currentSecond.compareAndSet(current, second)) {
+      inCurrentSecond.set(0);
+    }
+    if (inCurrentSecond.incrementAndGet() <= maxPerSecond) {
+      return true;
+    }
+    suppressed.incrementAndGet();
+    return false;
+  }
+}
@@ -0,0 +1,186 @@
+package com.griddynamics.common;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.json.JsonObject;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The one background thread that turns {@link Log} events into JSON lines on stdout.
+ * <p>
+ * Events wait in a bounded ring buffer ({@code LOG_BUFFER_SIZE}). When it is full the event is
+ * dropped and counted rather than making the caller wait; the writer reports the number of
+ * dropped events as soon as it catches up. Formatting happens here too, so the caller only pays
+ * for one small allocation and a queue offer. Whatever is buffered at shutdown is still written.
+ */
+public final class LogWriter {
+
+  private static final Log.Level ROOT_LEVEL = Log.Level.valueOf(Env.string("LOG_LEVEL", "INFO").toUpperCase(Locale.ROOT));
+  private static final Map<String, String> LEVELS = parse(Env.string("LOG_LEVELS", ""));
+  private static final Map<String, String> RATE_LIMITS = parse(Env.string("LOG_RATE_LIMITS", ""));
+  private static final int BATCH = 256;
+
+  private static final class Holder {
+    static final LogWriter INSTANCE = new LogWriter(Env.integer("LOG_BUFFER_SIZE", 8192));
+  }
+
+  record Event(long timestamp, Log.Level level, String category, String thread,
+               String message, Object[] fields, long suppressed) {}
+
+  private final ArrayBlockingQueue<Event> buffer;
+  private final LongAdder written = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final Thread thread;
+  private long droppedReported;
+
+  private LogWriter(int capacity) {
+    buffer = new ArrayBlockingQueue<>(capacity);
+    thread = new Thread(this::run, "log-writer");
+    thread.setDaemon(true);
+    thread.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      thread.interrupt();
+      try {
+        thread.join(1000);
+      } catch (InterruptedException ignored) {
+        Thread.currentThread().interrupt();
+      }
+    }, "log-writer-shutdown"));
+  }
+
+  public static LogWriter instance() {
+    return Holder.INSTANCE;
+  }
+
+  void offer(Event event) {
+    if (!buffer.offer(event)) {
+      dropped.increment();
+    }
+  }
+
+  public JsonObject toJson() {
+    return new JsonObject()
+      .put("buffered", buffer.size())
+      .put("capacity", buffer.size() + buffer.remainingCapacity())
+      .put("written", written.sum())
+      .put("dropped", dropped.sum());
+  }
+
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("log.buffer.size", buffer, ArrayBlockingQueue::size)
+      .description("Log events waiting to be written")
+      .register(registry);
+    FunctionCounter.builder("log.events.written", written, LongAdder::sum).register(registry);
+    FunctionCounter.builder("log.events.dropped", dropped, LongAdder::sum)
+      .description("Log events dropped because the buffer was full")
+      .register(registry);
+  }
+
+  // The most specific setting wins: "kafka.consumer.batch", then "kafka.consumer", ..., then LOG_LEVEL
+  static Log.Level levelFor(String category) {
+    String level = lookup(LEVELS, category);
+    return level == null ? ROOT_LEVEL : Log.Level.valueOf(level.toUpperCase(Locale.ROOT));
+  }
+
+  static int rateLimitFor(String category, int defaultLimit) {
+    String limit = lookup(RATE_LIMITS, category);
+    return limit == null ? defaultLimit : Integer.parseInt(limit);
+  }
+
+  private void run() {
+    List<Event> batch = new ArrayList<>(BATCH);
+    StringBuilder out = new StringBuilder(16 * 1024);
+    boolean running = true;
+    while (running) {
+      try {
+        batch.add(buffer.take());
+      } catch (InterruptedException e) {
+        running = false; // Shutting down: write what is left, then stop
+      }
+      buffer.drainTo(batch, running ? BATCH - batch.size() : Integer.MAX_VALUE);
+
+      for (Event event : batch) {
+        out.append(format(event)).append('\n');
+      }
+      written.add(batch.size());
+      batch.clear();
+
+      long droppedNow = dropped.sum();
+      if (droppedNow > droppedReported) {
+        out.append(new JsonObject()
+          .put("ts", Instant.now().toString())
+          .put("level", Log.Level.WARN.name())
+          .put("logger", "log")
+          .put("msg", "Log buffer full, events dropped")
+          .put("dropped", droppedNow - droppedReported)
+          .encode()).append('\n');
+        droppedReported = droppedNow;
+      }
+
+      System.out.print(out);
+      System.out.flush();
+      out.setLength(0);
+    }
+  }
+
+  private static String format(Event event) {
+    JsonObject line = new JsonObject()
+      .put("ts", Instant.ofEpochMilli(event.timestamp()).toString())
+      .put("level", event.level().name())
+      .put("logger", event.category())
+      .put("thread", event.thread())
+      .put("msg", event.message());
+    Object[] fields = event.fields();
+    for (int i = 0; i + 1 < fields.length; i += 2) {
+      line.put(String.valueOf(fields[i]), value(fields[i + 1]));
+    }
+    if (event.suppressed() > 0) {
+      line.put("suppressed", event.suppressed());
+    }
+    return line.encode();
+  }
+
+  private static Object value(Object value) {
+    if (value == null || value instanceof Number || value instanceof Boolean || value instanceof String) {
+      return value;
+    }
+    return value.toString(); // Throwables become "Type: message"
+  }
+
+  private static String lookup(Map<String, String> settings, String category) {
+    String key = category;
+    while (true) {
+      String value = settings.get(key);
+      if (value != null) {
+        return value;
+      }
+      int dot = key.lastIndexOf('.');
+      if (dot < 0) {
+        return null;
+      }
+      key = key.substring(0, dot);
+    }
+  }
+
+  // "http=WARN,kafka.consumer=DEBUG" -> {http: WARN, kafka.consumer: DEBUG}
+  private static Map<String, String> parse(String setting) {
+    Map<String, String> result = new HashMap<>();
+    for (String entry : setting.split(",")) {
+      int eq = entry.indexOf('=');
+      if (eq > 0) {
+        result.put(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim());
+      }
+    }
+    return result;
+  }
+
+}
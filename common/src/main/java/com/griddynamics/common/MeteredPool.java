@@ -0,0 +1,100 @@
+package com.griddynamics.common;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.SqlConnection;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The JDBC pool with the numbers Vert.x does not expose for it: connections in use, callers
+ * waiting for one, how long getting one took and how long it was held. Repositories run every
+ * statement through {@link #withConnection} or {@link #withTransaction}, so nothing bypasses
+ * the counts.
+ */
+public class MeteredPool {
+
+  private final Pool pool;
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final Timer acquireTimer;
+  private final Timer usageTimer;
+
+  // Unmetered, for tests and benchmarks
+  public MeteredPool(Pool pool) {
+    this(pool, 0, new CompositeMeterRegistry(), "default");
+  }
+
+  public MeteredPool(Pool pool, int maxSize, MeterRegistry registry, String name) {
+    this.pool = pool;
+    Gauge.builder("db.pool.active", active, AtomicInteger::get)
+      .description("Connections currently lent out")
+      .tag("pool", name)
+      .register(registry);
+    Gauge.builder("db.pool.waiting", waiting, AtomicInteger::get)
+      .description("Callers waiting for a connection")
+      .tag("pool", name)
+      .register(registry);
+    Gauge.builder("db.pool.max", () -> maxSize)
+      .tag("pool", name)
+      .register(registry);
+    acquireTimer = Timer.builder("db.pool.acquire")
+      .description("Time to get a connection from the pool")
+      .tag("pool", name)
+      .register(registry);
+    usageTimer = Timer.builder("db.pool.usage")
+      .description("Time a connection was held, i.e. the statements run on it")
+      .tag("pool", name)
+      .register(registry);
+  }
+
+  // Callers waiting for a connection right now
+  public int waiting() {
+    return waiting.get();
+  }
+
+  public <T> Future<T> withConnection(Function<SqlConnection, Future<T>> work) {
+    long start = System.nanoTime();
+    waiting.incrementAndGet();
+    return pool.getConnection()
+      .andThen(ar -> waiting.decrementAndGet())
+      .compose(conn -> {
+        long acquired = System.nanoTime();
+        acquireTimer.record(acquired - start, TimeUnit.NANOSECONDS);
+        active.incrementAndGet();
+
+        Future<T> result;
+        try {
+          result = work.apply(conn);
+        } catch (RuntimeException e) {
+          result = Future.failedFuture(e);
+        }
+        return result.eventually(() -> {
+          active.decrementAndGet();
+          usageTimer.record(System.nanoTime() - acquired, TimeUnit.NANOSECONDS);
+          return conn.close();
+        });
+      });
+  }
+
+  // Commits when work succeeds, rolls back when it fails (same contract as Pool.withTransaction)
+  public <T> Future<T> withTransaction(Function<SqlConnection, Future<T>> work) {
+    return withConnection(conn -> conn.begin().compose(tx -> {
+      Future<T> result;
+      try {
+        result = work.apply(conn);
+      } catch (RuntimeException e) {
+        result = Future.failedFuture(e);
+      }
+      return result.compose(
+        value -> tx.commit().map(value),
+        err -> tx.rollback().transform(ar -> Future.<T>failedFuture(err)));
+    }));
+  }
+}
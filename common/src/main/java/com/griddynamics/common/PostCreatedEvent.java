@@ -0,0 +1,106 @@
+package com.griddynamics.common;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The value of a post-created-topic record. Records are keyed by author id, so one author's
+ * events stay in order on one partition.
+ * <p>
+ * Version 1 is binary: one version byte, then postId, authorId, postCount and createdAt (epoch
+ * millis) as unsigned varints (7 bits per byte, low bits first, high bit set while more follow).
+ * A typical event is 10 to 14 bytes, 6 of them the timestamp. New fields are only ever appended and readers skip what they
+ * don't know; the version byte changes only if the layout has to change incompatibly.
+ * <p>
+ * Version 0 is the format from before the envelope: the author id as a decimal string, with the
+ * post count in a header. It is still read, so events already on the topic (or sent by an older
+ * post-service) keep counting. Its first byte is an ASCII digit, which a version byte never is.
+ * <p>
+ * post-service writes these and user-service reads them, both through this one class.
+ */
+public record PostCreatedEvent(int version, long postId, long authorId, int postCount, long createdAtMillis) {
+
+  public static final int LEGACY = 0;
+  public static final int CURRENT = 1;
+
+  public static PostCreatedEvent of(long postId, long authorId, int postCount, long createdAtMillis) {
+    return new PostCreatedEvent(CURRENT, postId, authorId, postCount, createdAtMillis);
+  }
+
+  // Sized exactly up front: one allocation per event
+  public byte[] encode() {
+    byte[] out = new byte[1 + varintSize(postId) + varintSize(authorId) + varintSize(postCount)
+      + varintSize(createdAtMillis)];
+    out[0] = CURRENT;
+    int pos = writeVarint(out, 1, postId);
+    pos = writeVarint(out, pos, authorId);
+    pos = writeVarint(out, pos, postCount);
+    writeVarint(out, pos, createdAtMillis);
+    return out;
+  }
+
+  /**
+   * Reads either format. A legacy event has postId 0, postCount 1 (the caller applies the header)
+   * and createdAt 0. Throws {@link IllegalArgumentException} for anything it can't read.
+   */
+  public static PostCreatedEvent decode(byte[] value) {
+    if (value == null || value.length == 0) {
+      throw new IllegalArgumentException("Empty post-created event");
+    }
+    int version = value[0];
+    if ((version >= '0' && version <= '9') || version == '-') {
+      long authorId = Long.parseLong(new String(value, StandardCharsets.US_ASCII));
+      return new PostCreatedEvent(LEGACY, 0, authorId, 1, 0);
+    }
+    if (version != CURRENT) {
+      throw new IllegalArgumentException("Unsupported post-created event version " + version);
+    }
+    Reader in = new Reader(value);
+    long postId = in.varint();
+    long authorId = in.varint();
+    long postCount = in.varint();
+    long createdAtMillis = in.varint();
+    if (postCount > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Post count out of range: " + postCount);
+    }
+    return new PostCreatedEvent(CURRENT, postId, authorId, (int) postCount, createdAtMillis);
+  }
+
+  static int varintSize(long value) {
+    // 1 byte per started group of 7 significant bits; 0 still takes a byte
+    int bits = 64 - Long.numberOfLeadingZeros(value | 1);
+    return (bits + 6) / 7;
+  }
+
+  private static int writeVarint(byte[] out, int pos, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out[pos++] = (byte) value;
+    return pos;
+  }
+
+  private static final class Reader {
+    private final byte[] in;
+    private int pos = 1; // past the version byte
+
+    Reader(byte[] in) {
+      this.in = in;
+    }
+
+    long varint() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        if (pos >= in.length) {
+          throw new IllegalArgumentException("Truncated post-created event");
+        }
+        byte b = in[pos++];
+        value |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint in post-created event");
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.griddynamics.common;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.Route;
+import io.vertx.ext.web.RoutingContext;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service's Prometheus registry, shared by every HTTP instance, plus the per-route request
+ * timer and the {@code GET /metrics} scrape handler.
+ * <p>
+ * Every timer is published as a Prometheus histogram with the fixed {@link #LATENCY_BUCKETS_MS}
+ * buckets, so percentiles can be aggregated across pods on the Prometheus side. Recording is a
+ * few lock-free adds; the expensive part, rendering the text format, only happens on scrape.
+ */
+public class ServiceMetrics {
+
+  static final long[] LATENCY_BUCKETS_MS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+  private static final double[] LATENCY_BUCKETS_NANOS = Arrays.stream(LATENCY_BUCKETS_MS)
+    .mapToDouble(ms -> (double) Duration.ofMillis(ms).toNanos())
+    .toArray();
+
+  private final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+  // Timer lookup by "METHOD route status", so the hot path skips building Meter.Ids
+  private final ConcurrentHashMap<String, Timer> routeTimers = new ConcurrentHashMap<>();
+
+  public ServiceMetrics(String service) {
+    registry.config()
+      .commonTags("service", service)
+      .meterFilter(new MeterFilter() {
+        @Override
+        public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+          if (id.getType() != Meter.Type.TIMER) {
+            return config;
+          }
+          return DistributionStatisticConfig.builder()
+            .serviceLevelObjectives(LATENCY_BUCKETS_NANOS)
+            .build()
+            .merge(config);
+        }
+      });
+
+    new JvmMemoryMetrics().bindTo(registry);
+    new JvmGcMetrics().bindTo(registry);
+    new JvmThreadMetrics().bindTo(registry);
+    new ProcessorMetrics().bindTo(registry);
+    LogWriter.instance().bindTo(registry);
+  }
+
+  public MeterRegistry registry() {
+    return registry;
+  }
+
+  // Goes first on the router: times every request until its response is fully written
+  public Handler<RoutingContext> routeTimer() {
+    return ctx -> {
+      long start = System.nanoTime();
+      ctx.addEndHandler(v -> recordRequest(ctx, System.nanoTime() - start));
+      ctx.next();
+    };
+  }
+
+  public void scrape(RoutingContext ctx) {
+    ctx.response()
+      .putHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+      .end(registry.scrape());
+  }
+
+  private void recordRequest(RoutingContext ctx, long nanos) {
+    // The route template ("/users/:id"), never the raw path, so IDs can't explode the series count
+    Route route = ctx.currentRoute();
+    String path = route != null && route.getPath() != null ? route.getPath() : "other";
+    String method = ctx.request().method().name();
+    String status = String.valueOf(ctx.response().getStatusCode());
+
+    routeTimers.computeIfAbsent(method + " " + path + " " + status, key -> Timer.builder("http.server.requests")
+        .description("HTTP requests by route and status")
+        .tags("method", method, "route", path, "status", status)
+        .register(registry))
+      .record(nanos, TimeUnit.NANOSECONDS);
+  }
+}
@@ -0,0 +1,34 @@
+package com.griddynamics.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestCollectionVersion {
+
+  @Test
+  void every_write_moves_the_tag() {
+    CollectionVersion version = new CollectionVersion();
+    String before = version.etag();
+    version.advance();
+
+    assertNotEquals(before, version.etag());
+    assertTrue(before.startsWith("W/\""));
+  }
+
+  @Test
+  void if_none_match_is_compared_weakly() {
+    CollectionVersion version = new CollectionVersion();
+    String etag = version.etag();
+    String strong = etag.substring(2);
+
+    assertTrue(CollectionVersion.matches(etag, etag));
+    assertTrue(CollectionVersion.matches(strong, etag));
+    assertTrue(CollectionVersion.matches("\"other\", " + strong, etag));
+    assertTrue(CollectionVersion.matches("*", etag));
+    assertFalse(CollectionVersion.matches("W/\"other\"", etag));
+    assertFalse(CollectionVersion.matches(null, etag));
+  }
+}
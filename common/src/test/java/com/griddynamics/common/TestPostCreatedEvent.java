@@ -0,0 +1,86 @@
+package com.griddynamics.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TestPostCreatedEvent {
+
+  @Test
+  void binary_events_round_trip() {
+    long[] values = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, 1_700_000_000_000L, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+    for (long value : values) {
+      PostCreatedEvent event = PostCreatedEvent.of(value, value, 7, value);
+      byte[] encoded = event.encode();
+
+      assertEquals(PostCreatedEvent.CURRENT, encoded[0]);
+      assertEquals(event, PostCreatedEvent.decode(encoded), "value " + value);
+    }
+    PostCreatedEvent maxCount = PostCreatedEvent.of(1, 2, Integer.MAX_VALUE, 3);
+    assertEquals(maxCount, PostCreatedEvent.decode(maxCount.encode()));
+  }
+
+  @Test
+  void encoded_size_follows_the_varints() {
+    assertEquals(1, PostCreatedEvent.varintSize(0));
+    assertEquals(1, PostCreatedEvent.varintSize(127));
+    assertEquals(2, PostCreatedEvent.varintSize(128));
+    assertEquals(10, PostCreatedEvent.varintSize(-1));
+
+    // A million posts in, a current timestamp: the size the README quotes
+    assertEquals(14, PostCreatedEvent.of(1_048_576L, 52_114L, 1, 1_700_000_000_000L).encode().length);
+    assertEquals(5, PostCreatedEvent.of(1, 1, 1, 0).encode().length);
+  }
+
+  @Test
+  void legacy_author_id_string_is_read_as_one_post() {
+    PostCreatedEvent event = PostCreatedEvent.decode("52114".getBytes(StandardCharsets.US_ASCII));
+
+    assertEquals(new PostCreatedEvent(PostCreatedEvent.LEGACY, 0, 52_114L, 1, 0), event);
+    assertEquals(-3L, PostCreatedEvent.decode("-3".getBytes(StandardCharsets.US_ASCII)).authorId());
+    // Digits are never a version byte, whatever the id
+    assertEquals(PostCreatedEvent.LEGACY, PostCreatedEvent.decode("1".getBytes(StandardCharsets.US_ASCII)).version());
+  }
+
+  @Test
+  void fields_appended_by_a_newer_writer_are_skipped() {
+    byte[] encoded = PostCreatedEvent.of(10, 20, 3, 40).encode();
+    byte[] extended = Arrays.copyOf(encoded, encoded.length + 3);
+    extended[encoded.length] = (byte) 0x81;
+    extended[encoded.length + 1] = 0x01;
+    extended[encoded.length + 2] = 0x05;
+
+    assertEquals(PostCreatedEvent.of(10, 20, 3, 40), PostCreatedEvent.decode(extended));
+  }
+
+  @Test
+  void truncated_events_are_rejected() {
+    byte[] encoded = PostCreatedEvent.of(1_048_576L, 52_114L, 1, 1_700_000_000_000L).encode();
+    for (int length = 1; length < encoded.length; length++) {
+      byte[] truncated = Arrays.copyOf(encoded, length);
+      assertThrows(IllegalArgumentException.class, () -> PostCreatedEvent.decode(truncated), "length " + length);
+    }
+  }
+
+  @Test
+  void unreadable_events_are_rejected() {
+    assertThrows(IllegalArgumentException.class, () -> PostCreatedEvent.decode(null));
+    assertThrows(IllegalArgumentException.class, () -> PostCreatedEvent.decode(new byte[0]));
+    // Unknown version
+    assertThrows(IllegalArgumentException.class, () -> PostCreatedEvent.decode(new byte[] {2, 1, 1, 1, 1}));
+    // Legacy prefix, but not a number
+    assertThrows(IllegalArgumentException.class, () -> PostCreatedEvent.decode("12ab".getBytes(StandardCharsets.US_ASCII)));
+    // A varint that never ends within 64 bits
+    byte[] endless = new byte[12];
+    Arrays.fill(endless, (byte) 0xFF);
+    endless[0] = PostCreatedEvent.CURRENT;
+    assertThrows(IllegalArgumentException.class, () -> PostCreatedEvent.decode(endless));
+    // Post count past int range
+    byte[] bigCount = {PostCreatedEvent.CURRENT, 1, 1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x08, 0};
+    assertThrows(IllegalArgumentException.class, () -> PostCreatedEvent.decode(bigCount));
+  }
+}
@@ -0,0 +1,93 @@
+package com.griddynamics.load_harness;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command-line options, given as {@code --name=value}. Every option has a default, so a bare
+ * run is a short smoke test of the whole path.
+ */
+class HarnessOptions {
+
+  static final String DEFAULT_MIX = "register=5,login=5,create_post=30,list_users=30,list_posts=30";
+
+  double rate = 200;             // requests per second offered, regardless of how fast answers come
+  int durationSeconds = 30;      // measured phase
+  int warmupSeconds = 10;        // same rate, results thrown away (JIT, pools, caches)
+  int seedUsers = 20;            // users registered and logged in before the run
+  Map<Route, Integer> mix = parseMix(DEFAULT_MIX);
+  int maxInFlight = 5000;        // beyond this, requests are counted as "dropped" errors
+  int timeoutMs = 10000;
+  int gatewayPort = 8080;
+  String report = "load-report.json";
+
+  // Regression gate: the harness exits with 1 when a route breaks one of these
+  double maxP99Ms = 0;           // 0 = not checked
+  double maxErrorRate = 0.01;
+
+  static HarnessOptions parse(String[] args) {
+    HarnessOptions options = new HarnessOptions();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException("Expected --name=value, got '" + arg + "'");
+      }
+      String name = arg.substring(2, arg.indexOf('='));
+      String value = arg.substring(arg.indexOf('=') + 1);
+      switch (name) {
+        case "rate" -> options.rate = Double.parseDouble(value);
+        case "duration" -> options.durationSeconds = Integer.parseInt(value);
+        case "warmup" -> options.warmupSeconds = Integer.parseInt(value);
+        case "users" -> options.seedUsers = Integer.parseInt(value);
+        case "mix" -> options.mix = parseMix(value);
+        case "max-in-flight" -> options.maxInFlight = Integer.parseInt(value);
+        case "timeout-ms" -> options.timeoutMs = Integer.parseInt(value);
+        case "gateway-port" -> options.gatewayPort = Integer.parseInt(value);
+        case "report" -> options.report = value;
+        case "max-p99-ms" -> options.maxP99Ms = Double.parseDouble(value);
+        case "max-error-rate" -> options.maxErrorRate = Double.parseDouble(value);
+        default -> throw new IllegalArgumentException("Unknown option --" + name);
+      }
+    }
+    if (options.rate <= 0 || options.durationSeconds <= 0 || options.seedUsers <= 0) {
+      throw new IllegalArgumentException("rate, duration and users must be positive");
+    }
+    return options;
+  }
+
+  // "register=5,list_posts=95" -> relative weights; routes left out are not sent
+  static Map<Route, Integer> parseMix(String value) {
+    Map<Route, Integer> mix = new EnumMap<>(Route.class);
+    for (String part : value.split(",")) {
+      String[] kv = part.trim().split("=");
+      if (kv.length != 2) {
+        throw new IllegalArgumentException("Bad mix entry '" + part + "'");
+      }
+      int weight = Integer.parseInt(kv[1].trim());
+      if (weight > 0) {
+        mix.put(Route.fromKey(kv[0].trim()), weight);
+      }
+    }
+    if (mix.isEmpty()) {
+      throw new IllegalArgumentException("The mix has no routes");
+    }
+    return mix;
+  }
+
+  JsonObject toJson() {
+    Map<String, Object> weights = new LinkedHashMap<>();
+    mix.forEach((route, weight) -> weights.put(route.key, weight));
+    return new JsonObject()
+      .put("rate", rate)
+      .put("durationSeconds", durationSeconds)
+      .put("warmupSeconds", warmupSeconds)
+      .put("seedUsers", seedUsers)
+      .put("mix", new JsonObject(weights))
+      .put("maxInFlight", maxInFlight)
+      .put("timeoutMs", timeoutMs)
+      .put("maxP99Ms", maxP99Ms)
+      .put("maxErrorRate", maxErrorRate);
+  }
+}
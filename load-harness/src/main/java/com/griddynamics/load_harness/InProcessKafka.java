@@ -0,0 +1,166 @@
+package com.griddynamics.load_harness;
+
+import io.vertx.core.json.JsonObject;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A one-partition, in-memory stand-in for the post-created topic: whatever post-service's
+ * producer sends shows up in user-service's consumer, with real offsets and commits, but
+ * without a broker. Built on Kafka's own MockProducer/MockConsumer.
+ * <p>
+ * MockConsumer returns at once when it has nothing, so the consumer's {@code poll} waits for the
+ * next record (up to the poll timeout) to keep the service's poll loop from spinning a core.
+ */
+public class InProcessKafka {
+
+  static final String TOPIC = "post-created-topic";
+
+  private final TopicPartition partition = new TopicPartition(TOPIC, 0);
+  private final Producer producer = new Producer();
+  private final Consumer consumer = new Consumer();
+
+  // Records sent before the consumer got its partition (guarded by this)
+  private final List<ProducerRecord<String, byte[]>> pending = new ArrayList<>();
+  private long nextOffset;
+
+  private final Object signal = new Object();
+  private boolean available;
+
+  private final LongAdder produced = new LongAdder();
+
+  public InProcessKafka() {
+    // What the group coordinator would do on the first poll: assign the partition, start at 0
+    consumer.schedulePollTask(() -> {
+      consumer.rebalance(List.of(partition));
+      consumer.updateBeginningOffsets(Map.of(partition, 0L));
+    });
+  }
+
+  public MockProducer<String, byte[]> producer() {
+    return producer;
+  }
+
+  public MockConsumer<String, byte[]> consumer() {
+    return consumer;
+  }
+
+  public long produced() {
+    return produced.sum();
+  }
+
+  // Offset user-service committed, i.e. events whose post counts are already in its DB
+  public long committed() {
+    OffsetAndMetadata offset = consumer.committed(Set.of(partition)).get(partition);
+    return offset == null ? 0 : offset.offset();
+  }
+
+  public JsonObject toJson() {
+    long sent = produced();
+    long done = committed();
+    return new JsonObject()
+      .put("produced", sent)
+      .put("committed", done)
+      .put("lag", sent - done);
+  }
+
+  private synchronized void deliver(ProducerRecord<String, byte[]> record) {
+    produced.increment();
+    if (!consumer.assignment().contains(partition)) {
+      pending.add(record);
+      return;
+    }
+    addToConsumer(record);
+    wake();
+  }
+
+  private synchronized void deliverPending() {
+    if (pending.isEmpty() || !consumer.assignment().contains(partition)) {
+      return;
+    }
+    pending.forEach(this::addToConsumer);
+    pending.clear();
+    wake();
+  }
+
+  private void addToConsumer(ProducerRecord<String, byte[]> record) {
+    // Headers travel too: legacy-format events carry their post count in one
+    consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, nextOffset++, System.currentTimeMillis(),
+      TimestampType.CREATE_TIME, -1, -1, record.key(), record.value(), record.headers(), Optional.empty()));
+  }
+
+  private void wake() {
+    synchronized (signal) {
+      available = true;
+      signal.notifyAll();
+    }
+  }
+
+  private void await(Duration timeout) {
+    synchronized (signal) {
+      if (!available) {
+        try {
+          signal.wait(Math.max(1, timeout.toMillis()));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      available = false;
+    }
+  }
+
+  private class Producer extends MockProducer<String, byte[]> {
+
+    Producer() {
+      super(true, new StringSerializer(), new ByteArraySerializer());
+    }
+
+    @Override
+    public synchronized Future<RecordMetadata> send(ProducerRecord<String, byte[]> record, Callback callback) {
+      Future<RecordMetadata> result = super.send(record, callback);
+      // MockProducer keeps every record for inspection; a long run must not hold them all
+      clear();
+      deliver(record);
+      return result;
+    }
+  }
+
+  private class Consumer extends MockConsumer<String, byte[]> {
+
+    Consumer() {
+      super(OffsetResetStrategy.EARLIEST);
+    }
+
+    // Not synchronized on purpose: the producer has to be able to add records while we wait
+    @Override
+    public ConsumerRecords<String, byte[]> poll(Duration timeout) {
+      ConsumerRecords<String, byte[]> records = super.poll(Duration.ZERO);
+      deliverPending();
+      if (records.isEmpty()) {
+        await(timeout);
+        records = super.poll(Duration.ZERO);
+      }
+      return records;
+    }
+  }
+}
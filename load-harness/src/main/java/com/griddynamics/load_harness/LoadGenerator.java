@@ -0,0 +1,241 @@
+package com.griddynamics.load_harness;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.PoolOptions;
+import io.vertx.core.http.RequestOptions;
+import io.vertx.core.json.JsonObject;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Open-loop load against the gateway: requests go out on a fixed schedule ({@code rate} per
+ * second) whether or not earlier ones have been answered, the way real users arrive. A closed
+ * loop (send, wait, send) would slow down with the system and hide exactly the queueing we want
+ * to see.
+ * <p>
+ * Everything runs on one event loop of its own Vert.x instance, so the schedule, the counters
+ * and the histograms need no locking and do not compete with the services' event loops.
+ */
+class LoadGenerator {
+
+  private static final String PASSWORD = "load-test-password";
+
+  private final Vertx vertx;
+  private final Context context;
+  private final HttpClient client;
+  private final HarnessOptions options;
+  private final String runId = Long.toString(System.currentTimeMillis(), 36);
+  private final SplittableRandom random = new SplittableRandom(42);
+
+  private final Route[] routes;
+  private final int[] cumulativeWeights;
+
+  private List<Session> sessions = List.of();
+  private long registered;
+  private long postsCreated;
+  private int inFlight;
+
+  LoadGenerator(Vertx vertx, HarnessOptions options) {
+    this.vertx = vertx;
+    this.context = vertx.getOrCreateContext();
+    this.options = options;
+    this.client = vertx.httpClientBuilder()
+      .with(new HttpClientOptions()
+        .setDefaultHost("localhost")
+        .setDefaultPort(options.gatewayPort)
+        .setKeepAlive(true))
+      .with(new PoolOptions()
+        .setHttp1MaxSize(Math.max(50, options.maxInFlight / 10))
+        .setMaxWaitQueueSize(-1))
+      .build();
+
+    routes = options.mix.keySet().toArray(new Route[0]);
+    cumulativeWeights = new int[routes.length];
+    int sum = 0;
+    for (int i = 0; i < routes.length; i++) {
+      sum += options.mix.get(routes[i]);
+      cumulativeWeights[i] = sum;
+    }
+  }
+
+  // Registers and logs in the users the workload acts as. Logins run concurrently but are few.
+  Future<Void> seed() {
+    List<Future<Session>> logins = new ArrayList<>();
+    for (int i = 0; i < options.seedUsers; i++) {
+      String username = "seed-" + runId + "-" + i;
+      logins.add(call(Route.REGISTER, registerBody(username), null)
+        .compose(v -> call(Route.LOGIN, loginBody(username), null))
+        .map(login -> new Session(login.getLong("userId"), login.getString("token"), username)));
+    }
+    return Future.all(logins).map(all -> {
+      List<Session> seeded = new ArrayList<>();
+      for (int i = 0; i < all.size(); i++) {
+        seeded.add(all.resultAt(i));
+      }
+      sessions = List.copyOf(seeded);
+      return null;
+    });
+  }
+
+  /**
+   * Offers {@code rate * seconds} requests on schedule, then waits (up to the request timeout)
+   * for the stragglers. Completes with the stats of this phase only.
+   */
+  Future<Map<Route, RouteStats>> runPhase(int seconds) {
+    Promise<Map<Route, RouteStats>> promise = Promise.promise();
+    context.runOnContext(v -> {
+      Map<Route, RouteStats> stats = new EnumMap<>(Route.class);
+      for (Route route : routes) {
+        stats.put(route, new RouteStats());
+      }
+
+      long total = (long) (options.rate * seconds);
+      double intervalNanos = 1e9 / options.rate;
+      long start = System.nanoTime();
+      long[] issued = {0};
+
+      // A 1 ms tick sends every request whose slot has come; each keeps its slot as start time
+      vertx.setPeriodic(1, timerId -> {
+        long due = Math.min(total, (long) ((System.nanoTime() - start) / intervalNanos) + 1);
+        while (issued[0] < due) {
+          long intendedStart = start + (long) (issued[0] * intervalNanos);
+          send(pickRoute(), intendedStart, stats);
+          issued[0]++;
+        }
+        if (issued[0] >= total) {
+          vertx.cancelTimer(timerId);
+          long deadline = System.nanoTime() + options.timeoutMs * 1_000_000L;
+          awaitInFlight(deadline, () -> promise.complete(stats));
+        }
+      });
+    });
+    return promise.future();
+  }
+
+  private void awaitInFlight(long deadline, Runnable done) {
+    if (inFlight == 0 || System.nanoTime() > deadline) {
+      done.run();
+    } else {
+      vertx.setTimer(10, id -> awaitInFlight(deadline, done));
+    }
+  }
+
+  private Route pickRoute() {
+    int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+    for (int i = 0; i < cumulativeWeights.length; i++) {
+      if (roll < cumulativeWeights[i]) {
+        return routes[i];
+      }
+    }
+    return routes[routes.length - 1];
+  }
+
+  private void send(Route route, long intendedStart, Map<Route, RouteStats> stats) {
+    RouteStats routeStats = stats.get(route);
+    routeStats.sent();
+    if (inFlight >= options.maxInFlight) {
+      routeStats.failed("dropped");
+      return;
+    }
+    inFlight++;
+
+    Session session = sessions.get(random.nextInt(sessions.size()));
+    Buffer body = switch (route) {
+      case REGISTER -> registerBody("load-" + runId + "-" + registered++);
+      case LOGIN -> loginBody(session.username());
+      case CREATE_POST -> new JsonObject()
+        .put("authorId", session.userId())
+        .put("content", "Load test post " + postsCreated++)
+        .toBuffer();
+      case LIST_USERS, LIST_POSTS -> null;
+    };
+    String token = route == Route.REGISTER || route == Route.LOGIN ? null : session.token();
+
+    exchange(route, body, token)
+      .onComplete(ar -> {
+        inFlight--;
+        long latency = System.nanoTime() - intendedStart;
+        if (ar.failed()) {
+          routeStats.failed(reason(ar.cause()));
+        } else if (ar.result() == route.expectedStatus) {
+          routeStats.succeeded(latency);
+        } else {
+          routeStats.failed(String.valueOf(ar.result()));
+        }
+      });
+  }
+
+  // Sends one request and reads the whole response; completes with the status code
+  private Future<Integer> exchange(Route route, Buffer body, String token) {
+    return open(route, body, token)
+      .compose(response -> response.body().map(ignored -> response.statusCode()));
+  }
+
+  // Same as exchange, but fails unless the route's expected status comes back; used for seeding
+  private Future<JsonObject> call(Route route, Buffer body, String token) {
+    return open(route, body, token)
+      .compose(response -> response.body().compose(buffer -> response.statusCode() == route.expectedStatus
+        ? Future.succeededFuture(buffer.toJsonObject())
+        : Future.failedFuture(route.key + " returned " + response.statusCode() + ": " + buffer)));
+  }
+
+  private Future<HttpClientResponse> open(Route route, Buffer body, String token) {
+    return client.request(new RequestOptions()
+        .setMethod(route.method)
+        .setURI(route.uri)
+        .setIdleTimeout(options.timeoutMs))
+      .compose(request -> {
+        if (body != null) {
+          request.putHeader("Content-Type", "application/json");
+        }
+        if (token != null) {
+          request.putHeader("Authorization", "Bearer " + token);
+        }
+        return body == null ? request.send() : request.send(body);
+      });
+  }
+
+  private static Buffer registerBody(String username) {
+    return new JsonObject()
+      .put("username", username)
+      .put("email", username + "@load.test")
+      .put("password", PASSWORD)
+      .toBuffer();
+  }
+
+  private static Buffer loginBody(String username) {
+    return new JsonObject()
+      .put("username", username)
+      .put("password", PASSWORD)
+      .toBuffer();
+  }
+
+  private static String reason(Throwable err) {
+    if (err instanceof TimeoutException || String.valueOf(err.getMessage()).toLowerCase().contains("timeout")) {
+      return "timeout";
+    }
+    if (err instanceof ConnectException) {
+      return "connection";
+    }
+    return err.getClass().getSimpleName();
+  }
+
+  Future<Void> close() {
+    return client.close();
+  }
+
+  record Session(long userId, String token, String username) {}
+}
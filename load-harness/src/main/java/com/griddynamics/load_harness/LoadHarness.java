@@ -0,0 +1,165 @@
+package com.griddynamics.load_harness;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.kafka.client.consumer.KafkaConsumer;
+import io.vertx.kafka.client.producer.KafkaProducer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Runs api-gateway, user-service and post-service in this JVM, wired together through
+ * {@link InProcessKafka}, and drives the gateway with an open-loop workload mix.
+ * <p>
+ * Prints a per-route table (throughput, error rate, p50/p90/p99/p99.9/max latency), writes the
+ * same data as JSON, and exits with 1 if a route breaks {@code --max-p99-ms} or
+ * {@code --max-error-rate}, so it can gate a build. Needs nothing but the box it runs on: no
+ * broker, no database server, no network. Services take their usual environment variables.
+ */
+public class LoadHarness {
+
+  public static void main(String[] args) {
+    HarnessOptions options;
+    try {
+      options = HarnessOptions.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.err.println("❌ " + e.getMessage());
+      System.exit(2);
+      return;
+    }
+
+    Vertx services = Vertx.vertx();
+    Vertx load = Vertx.vertx();
+    InProcessKafka kafka = new InProcessKafka();
+    int exitCode;
+    try {
+      exitCode = run(options, services, load, kafka);
+    } catch (Exception e) {
+      System.err.println("❌ Load harness failed: " + e.getMessage());
+      exitCode = 2;
+    }
+    load.close().await();
+    services.close().await();
+    System.exit(exitCode);
+  }
+
+  private static int run(HarnessOptions options, Vertx services, Vertx load, InProcessKafka kafka) throws Exception {
+    // 1. Services, in dependency order, with the Kafka stand-in instead of a broker
+    services.deployVerticle(new com.griddynamics.user_service.MainVerticle(
+      KafkaConsumer.create(services, kafka.consumer()))).await();
+    services.deployVerticle(new com.griddynamics.post_service.MainVerticle(
+      KafkaProducer.create(services, kafka.producer()))).await();
+    services.deployVerticle(new com.griddynamics.api_gateway.MainVerticle()).await();
+
+    // 2. Users to act as
+    LoadGenerator generator = new LoadGenerator(load, options);
+    System.out.println(">>> Seeding " + options.seedUsers + " users");
+    generator.seed().await();
+
+    // 3. Warm-up, then the measured phase at the same rate
+    if (options.warmupSeconds > 0) {
+      System.out.println(">>> Warm-up: " + options.warmupSeconds + " s at " + options.rate + " req/s");
+      generator.runPhase(options.warmupSeconds).await();
+    }
+    System.out.println(">>> Measuring: " + options.durationSeconds + " s at " + options.rate + " req/s");
+    Map<Route, RouteStats> results = generator.runPhase(options.durationSeconds).await();
+
+    // 4. Let the post-created events catch up, then collect everything
+    long drainStart = System.nanoTime();
+    while (kafka.produced() > kafka.committed() && System.nanoTime() - drainStart < 10_000_000_000L) {
+      Thread.sleep(100);
+    }
+    JsonObject report = report(options, results, kafka, (System.nanoTime() - drainStart) / 1_000_000);
+    report.put("serviceStats", serviceStats(load, options).await());
+    generator.close().await();
+
+    Files.writeString(Path.of(options.report), report.encodePrettily());
+    printTable(options, results);
+    System.out.println("Kafka: " + report.getJsonObject("kafka").encode());
+    System.out.println("Report written to " + Path.of(options.report).toAbsolutePath());
+
+    JsonArray violations = report.getJsonObject("gate").getJsonArray("violations");
+    if (!violations.isEmpty()) {
+      violations.forEach(v -> System.err.println("❌ Gate: " + v));
+      return 1;
+    }
+    System.out.println("✅ Gate passed");
+    return 0;
+  }
+
+  private static JsonObject report(HarnessOptions options, Map<Route, RouteStats> results,
+                                   InProcessKafka kafka, long drainMs) {
+    double seconds = options.durationSeconds;
+    JsonObject routes = new JsonObject();
+    RouteStats total = new RouteStats();
+    JsonArray violations = new JsonArray();
+
+    results.forEach((route, stats) -> {
+      routes.put(route.key, stats.toJson(seconds));
+      stats.addTo(total);
+      if (stats.completed() == 0) {
+        return;
+      }
+      if (stats.errorRate() > options.maxErrorRate) {
+        violations.add(String.format("%s error rate %.4f > %.4f", route.key, stats.errorRate(), options.maxErrorRate));
+      }
+      if (options.maxP99Ms > 0 && stats.percentileMs(99) > options.maxP99Ms) {
+        violations.add(String.format("%s p99 %.1f ms > %.1f ms", route.key, stats.percentileMs(99), options.maxP99Ms));
+      }
+    });
+
+    return new JsonObject()
+      .put("options", options.toJson())
+      .put("routes", routes)
+      .put("total", total.toJson(seconds))
+      .put("kafka", kafka.toJson().put("drainMs", drainMs))
+      .put("gate", new JsonObject()
+        .put("passed", violations.isEmpty())
+        .put("violations", violations));
+  }
+
+  // The services' own counters (pools, caches, consumer batches) at the end of the run
+  private static Future<JsonObject> serviceStats(Vertx vertx, HarnessOptions options) {
+    HttpClient client = vertx.createHttpClient();
+    Future<JsonObject> gateway = getJson(client, options.gatewayPort, "/stats");
+    Future<JsonObject> users = getJson(client, 8888, "/stats");
+    return Future.join(gateway, users)
+      .transform(ar -> Future.succeededFuture(new JsonObject()
+        .put("api-gateway", gateway.succeeded() ? gateway.result() : null)
+        .put("user-service", users.succeeded() ? users.result() : null)))
+      .eventually(client::close);
+  }
+
+  private static Future<JsonObject> getJson(HttpClient client, int port, String uri) {
+    return client.request(HttpMethod.GET, port, "localhost", uri)
+      .compose(request -> request.send())
+      .compose(response -> response.body())
+      .map(buffer -> buffer.toJsonObject());
+  }
+
+  private static void printTable(HarnessOptions options, Map<Route, RouteStats> results) {
+    System.out.println();
+    System.out.printf("%-12s %8s %8s %8s %9s %9s %9s %9s %9s %9s%n",
+      "route", "sent", "errors", "err %", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+    RouteStats total = new RouteStats();
+    results.forEach((route, stats) -> {
+      printRow(route.key, stats, options.durationSeconds);
+      stats.addTo(total);
+    });
+    printRow("TOTAL", total, options.durationSeconds);
+    System.out.println();
+  }
+
+  private static void printRow(String name, RouteStats stats, double seconds) {
+    System.out.printf("%-12s %8d %8d %8.2f %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+      name, stats.sentCount(), stats.errors(), stats.errorRate() * 100, stats.completed() / seconds,
+      stats.percentileMs(50), stats.percentileMs(90), stats.percentileMs(99), stats.percentileMs(99.9),
+      stats.percentileMs(100));
+  }
+}
@@ -0,0 +1,33 @@
+package com.griddynamics.load_harness;
+
+import io.vertx.core.http.HttpMethod;
+
+/** The gateway routes a workload mix is made of, with the status each one should answer. */
+public enum Route {
+  REGISTER("register", HttpMethod.POST, "/register", 201),
+  LOGIN("login", HttpMethod.POST, "/login", 200),
+  CREATE_POST("create_post", HttpMethod.POST, "/posts", 201),
+  LIST_USERS("list_users", HttpMethod.GET, "/users", 200),
+  LIST_POSTS("list_posts", HttpMethod.GET, "/posts?limit=50", 200);
+
+  final String key;
+  final HttpMethod method;
+  final String uri;
+  final int expectedStatus;
+
+  Route(String key, HttpMethod method, String uri, int expectedStatus) {
+    this.key = key;
+    this.method = method;
+    this.uri = uri;
+    this.expectedStatus = expectedStatus;
+  }
+
+  static Route fromKey(String key) {
+    for (Route route : values()) {
+      if (route.key.equalsIgnoreCase(key)) {
+        return route;
+      }
+    }
+    throw new IllegalArgumentException("Unknown route '" + key + "', expected one of register, login, create_post, list_users, list_posts");
+  }
+}
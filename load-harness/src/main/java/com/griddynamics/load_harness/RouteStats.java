@@ -0,0 +1,85 @@
+package com.griddynamics.load_harness;
+
+import io.vertx.core.json.JsonObject;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results for one route in one phase. Latency is measured from the moment the request was
+ * <em>scheduled</em> to go out, not from when it actually did, so a stalled system shows up as
+ * latency instead of silently lowering the offered rate (no coordinated omission).
+ * <p>
+ * Only touched from the load generator's event loop, so it needs no locking.
+ */
+class RouteStats {
+
+  private static final long MAX_TRACKED_MICROS = TimeUnit.MINUTES.toMicros(2);
+
+  private final Histogram latencyMicros = new Histogram(MAX_TRACKED_MICROS, 3);
+  private final Map<String, Long> statuses = new TreeMap<>();
+  private long sent;
+  private long errors;
+
+  void sent() {
+    sent++;
+  }
+
+  void succeeded(long latencyNanos) {
+    latencyMicros.recordValue(Math.min(MAX_TRACKED_MICROS, Math.max(1, latencyNanos / 1000)));
+    statuses.merge("2xx", 1L, Long::sum);
+  }
+
+  // status is the HTTP code, or a short reason ("timeout", "connection", "dropped")
+  void failed(String status) {
+    errors++;
+    statuses.merge(status, 1L, Long::sum);
+  }
+
+  long sentCount() {
+    return sent;
+  }
+
+  long completed() {
+    return latencyMicros.getTotalCount() + errors;
+  }
+
+  long errors() {
+    return errors;
+  }
+
+  double errorRate() {
+    long done = completed();
+    return done == 0 ? 0.0 : (double) errors / done;
+  }
+
+  double percentileMs(double percentile) {
+    return latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+  }
+
+  void addTo(RouteStats total) {
+    total.latencyMicros.add(latencyMicros);
+    total.sent += sent;
+    total.errors += errors;
+    statuses.forEach((status, count) -> total.statuses.merge(status, count, Long::sum));
+  }
+
+  JsonObject toJson(double seconds) {
+    return new JsonObject()
+      .put("sent", sent)
+      .put("completed", completed())
+      .put("errors", errors)
+      .put("errorRate", errorRate())
+      .put("throughput", completed() / seconds)
+      .put("statuses", new JsonObject(new TreeMap<>(statuses)))
+      .put("latencyMs", new JsonObject()
+        .put("p50", percentileMs(50))
+        .put("p90", percentileMs(90))
+        .put("p99", percentileMs(99))
+        .put("p999", percentileMs(99.9))
+        .put("max", latencyMicros.getMaxValue() / 1000.0)
+        .put("mean", latencyMicros.getMean() / 1000.0));
+  }
+}
@@ -0,0 +1,318 @@
+package com.griddynamics.post_service;
+
+import com.griddynamics.common.CollectionVersion;
+import com.griddynamics.common.Log;
+import com.griddynamics.common.ServiceMetrics;
+import com.griddynamics.post_service.entities.Post;
+import com.griddynamics.post_service.repositories.PostRepository;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.BodyHandler;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The HTTP side of post-service. {@link MainVerticle} deploys several instances of it, each on
+ * its own event loop, all listening on port 8889 and sharing one repository and outbox relay.
+ */
+public class HttpServerVerticle extends AbstractVerticle {
+
+  private static final int DEFAULT_PAGE_SIZE = 50;
+  private static final int MAX_PAGE_SIZE = 500;
+  private static final int STREAM_CHUNK_SIZE = 500;
+  private static final int BATCH_CHUNK_SIZE = 500;
+  // Ranking keeps offset + limit hits in memory; nobody pages that deep into search results
+  private static final int MAX_SEARCH_OFFSET = 1000;
+  private static final Log LOG = Log.get("http", 50);
+
+  private final PostRepository postRepository;
+  private final OutboxRelay outboxRelay;
+  private final LikeCounter likeCounter;
+  private final PostSearch postSearch;
+  private final ServiceMetrics metrics;
+
+  public HttpServerVerticle(PostRepository postRepository, OutboxRelay outboxRelay, LikeCounter likeCounter,
+                            PostSearch postSearch, ServiceMetrics metrics) {
+    this.postRepository = postRepository;
+    this.outboxRelay = outboxRelay;
+    this.likeCounter = likeCounter;
+    this.postSearch = postSearch;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void start(Promise<Void> startPromise) {
+    Router router = Router.router(vertx);
+    router.route().handler(metrics.routeTimer());
+    // Ahead of the BodyHandler: bulk imports are parsed as they stream in, never held in memory
+    router.post("/posts/batch").handler(this::createPostsBatch);
+    router.route().handler(BodyHandler.create());
+
+    router.get("/health").handler(ctx -> ctx.json(new JsonObject().put("status", "UP")));
+    router.get("/metrics").handler(metrics::scrape);
+
+    // API Routes
+    router.post("/posts").handler(this::createPost);
+    router.get("/posts").handler(this::getAllPosts);
+    router.get("/posts/search").handler(this::searchPosts);
+    router.get("/users/:id/posts").handler(this::getPostsByAuthor);
+    router.post("/posts/:id/like").handler(this::likePost);
+
+    vertx.createHttpServer()
+      .requestHandler(router)
+      .listen(8889) // Port 8889
+      .<Void>mapEmpty()
+      .onComplete(startPromise);
+  }
+
+  // --- Handlers ---
+
+  private void createPost(RoutingContext ctx) {
+    JsonObject body = ctx.body().asJsonObject();
+
+    // Validation
+    if (body == null || !body.containsKey("authorId") || !body.containsKey("content")) {
+      ctx.response().setStatusCode(400).end("authorId and content are required");
+      return;
+    }
+
+    Post newPost = new Post(
+      body.getLong("authorId"),
+      body.getString("content")
+    );
+
+    postRepository.save(newPost)
+      .onSuccess(v -> {
+        // The event is already in the outbox; nudge the relay so it goes out right away
+        outboxRelay.wakeUp();
+        ctx.response().setStatusCode(201).end(new JsonObject()
+          .put("message", "Post Created")
+          .put("id", newPost.getId())
+          .encode());
+      })
+      .onFailure(err -> {
+          LOG.warn("DB save failed", "error", err);
+          ctx.response().setStatusCode(500).end(err.getMessage());
+        }
+      );
+  }
+
+  // Counted in memory and written in batches (see LikeCounter): 202, the count shows up in reads right away
+  private void likePost(RoutingContext ctx) {
+    long postId;
+    try {
+      postId = Long.parseLong(ctx.pathParam("id"));
+    } catch (NumberFormatException e) {
+      ctx.response().setStatusCode(400).end("Invalid post id");
+      return;
+    }
+    if (!postRepository.mayExist(postId)) {
+      ctx.response().setStatusCode(404).end("Post Not Found");
+      return;
+    }
+    likeCounter.like(postId);
+    ctx.response().setStatusCode(202).end(new JsonObject()
+      .put("message", "Like Accepted")
+      .put("id", postId)
+      .encode());
+  }
+
+  private void createPostsBatch(RoutingContext ctx) {
+    new PostBatchImport(postRepository, outboxRelay, ctx.request(), ctx.response(), BATCH_CHUNK_SIZE).start();
+  }
+
+  private void getAllPosts(RoutingContext ctx) {
+    // Every list answer depends on the whole table, so they all share the table's version
+    String etag = postRepository.version().etag();
+
+    // ?stream=true -> send every post as one chunked JSON array
+    if ("true".equalsIgnoreCase(ctx.request().getParam("stream"))) {
+      if (!isNotModified(ctx, etag)) {
+        tagged(ctx, etag);
+        streamAllPosts(ctx);
+      }
+      return;
+    }
+
+    long after;
+    long limit;
+    try {
+      after = parseLongParam(ctx.request().getParam("after"), 0L);
+      limit = parseLongParam(ctx.request().getParam("limit"), DEFAULT_PAGE_SIZE);
+    } catch (NumberFormatException e) {
+      ctx.response().setStatusCode(400).end("Invalid pagination parameters");
+      return;
+    }
+    if (after < 0 || limit < 1) {
+      ctx.response().setStatusCode(400).end("Invalid pagination parameters");
+      return;
+    }
+    int pageSize = (int) Math.min(limit, MAX_PAGE_SIZE);
+    if (isNotModified(ctx, etag)) {
+      return;
+    }
+
+    // Fetch one extra row so we know whether another page exists
+    postRepository.findPage(after, pageSize + 1)
+      .map(likeCounter::withPending)
+      .onSuccess(posts -> {
+        boolean hasMore = posts.size() > pageSize;
+        List<Post> page = hasMore ? posts.subList(0, pageSize) : posts;
+        tagged(ctx, etag).json(Post.toPageJson(page, hasMore ? page.get(page.size() - 1).getId() : null));
+      })
+      .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+  }
+
+  // Newest first; ?before=<nextCursor of the previous page> continues further back
+  private void getPostsByAuthor(RoutingContext ctx) {
+    long authorId;
+    long before;
+    long limit;
+    try {
+      authorId = Long.parseLong(ctx.pathParam("id"));
+      before = parseLongParam(ctx.request().getParam("before"), Long.MAX_VALUE);
+      limit = parseLongParam(ctx.request().getParam("limit"), DEFAULT_PAGE_SIZE);
+    } catch (NumberFormatException e) {
+      ctx.response().setStatusCode(400).end("Invalid author id or pagination parameters");
+      return;
+    }
+    if (before < 1 || limit < 1) {
+      ctx.response().setStatusCode(400).end("Invalid pagination parameters");
+      return;
+    }
+    int pageSize = (int) Math.min(limit, MAX_PAGE_SIZE);
+    String etag = postRepository.version().etag();
+    if (isNotModified(ctx, etag)) {
+      return;
+    }
+
+    postRepository.findByAuthor(authorId, before, pageSize + 1)
+      .map(likeCounter::withPending)
+      .onSuccess(posts -> {
+        boolean hasMore = posts.size() > pageSize;
+        List<Post> page = hasMore ? posts.subList(0, pageSize) : posts;
+        tagged(ctx, etag).json(Post.toPageJson(page, hasMore ? page.get(page.size() - 1).getId() : null));
+      })
+      .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+  }
+
+  // Best match first (see PostSearchIndex); ?offset=<nextCursor of the previous page> continues
+  private void searchPosts(RoutingContext ctx) {
+    String query = ctx.request().getParam("q");
+    if (query == null || query.isBlank()) {
+      ctx.response().setStatusCode(400).end("q is required");
+      return;
+    }
+    long offset;
+    long limit;
+    try {
+      offset = parseLongParam(ctx.request().getParam("offset"), 0L);
+      limit = parseLongParam(ctx.request().getParam("limit"), DEFAULT_PAGE_SIZE);
+    } catch (NumberFormatException e) {
+      ctx.response().setStatusCode(400).end("Invalid pagination parameters");
+      return;
+    }
+    if (offset < 0 || offset > MAX_SEARCH_OFFSET || limit < 1) {
+      ctx.response().setStatusCode(400).end("Invalid pagination parameters");
+      return;
+    }
+    int pageSize = (int) Math.min(limit, MAX_PAGE_SIZE);
+    String etag = postRepository.version().etag();
+    if (isNotModified(ctx, etag)) {
+      return;
+    }
+
+    long next = offset + pageSize;
+    postSearch.search(query, (int) offset, pageSize)
+      .compose(hits -> postRepository.findByIds(hits.postIds())
+        .map(likeCounter::withPending)
+        .map(posts -> Post.toPageJson(posts, next < hits.total() && next <= MAX_SEARCH_OFFSET ? next : null)
+          .put("total", hits.total())))
+      .onSuccess(page -> tagged(ctx, etag).json(page))
+      .onFailure(err -> {
+        if (err instanceof RejectedExecutionException) {
+          // Search pool is saturated: tell the client to back off instead of queueing forever
+          ctx.response().setStatusCode(503).putHeader("Retry-After", "1").end("Server busy, try again");
+        } else {
+          ctx.response().setStatusCode(500).end(err.getMessage());
+        }
+      });
+  }
+
+  private void streamAllPosts(RoutingContext ctx) {
+    HttpServerResponse response = ctx.response()
+      .setChunked(true)
+      .putHeader("Content-Type", "application/json");
+    response.write("[");
+    streamChunk(response, 0L, true);
+  }
+
+  // Reads the table one keyset chunk at a time, so memory stays bounded by STREAM_CHUNK_SIZE
+  private void streamChunk(HttpServerResponse response, long afterId, boolean first) {
+    postRepository.findPage(afterId, STREAM_CHUNK_SIZE)
+      .map(likeCounter::withPending)
+      .onSuccess(posts -> {
+        if (response.closed()) {
+          return; // Client went away, stop reading
+        }
+
+        Buffer chunk = Buffer.buffer();
+        boolean firstRow = first;
+        for (Post p : posts) {
+          if (!firstRow) {
+            chunk.appendString(",");
+          }
+          chunk.appendString(p.toJson().encode());
+          firstRow = false;
+        }
+
+        if (posts.size() < STREAM_CHUNK_SIZE) {
+          response.end(chunk.appendString("]"));
+          return;
+        }
+
+        response.write(chunk);
+        long nextAfter = posts.get(posts.size() - 1).getId();
+        boolean nextFirst = firstRow;
+        // Respect backpressure: only read the next chunk once the socket can take it
+        if (response.writeQueueFull()) {
+          response.drainHandler(v -> streamChunk(response, nextAfter, nextFirst));
+        } else {
+          streamChunk(response, nextAfter, nextFirst);
+        }
+      })
+      .onFailure(err -> {
+        // Headers are already sent, so the only honest signal left is to abort the connection
+        LOG.warn("Streaming posts failed", "error", err);
+        response.reset();
+      });
+  }
+
+  // Conditional GET: the client's copy is still current, so answer 304 without a query
+  private static boolean isNotModified(RoutingContext ctx, String etag) {
+    if (!CollectionVersion.matches(ctx.request().getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+      return false;
+    }
+    tagged(ctx, etag).response().setStatusCode(304).end();
+    return true;
+  }
+
+  // no-cache: clients may keep the list, but must revalidate it before each use
+  private static RoutingContext tagged(RoutingContext ctx, String etag) {
+    ctx.response()
+      .putHeader(HttpHeaders.ETAG, etag)
+      .putHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+    return ctx;
+  }
+
+  private static long parseLongParam(String value, long defaultValue) {
+    return value == null || value.isEmpty() ? defaultValue : Long.parseLong(value);
+  }
+}
@@ -1,16 +1,65 @@
 package com.griddynamics.post_service;
 
+import com.griddynamics.common.Env;
+import com.griddynamics.common.Log;
+import com.griddynamics.common.PostCreatedEvent;
+import com.griddynamics.post_service.entities.OutboxEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.kafka.KafkaClientMetrics;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.kafka.client.producer.KafkaProducer;
 import io.vertx.kafka.client.producer.KafkaProducerRecord;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class KafkaProducerService {
 
-  private KafkaProducer<String, String> producer;
+  private static final String TOPIC = "post-created-topic";
+  // Legacy (string) format only: set when one event stands for several posts (bulk import); absent means 1
+  static final String POST_COUNT_HEADER = "post-count";
+  private static final Log LOG = Log.get("kafka.producer");
 
-  public KafkaProducerService(Vertx vertx) {
+  private final KafkaProducer<String, byte[]> producer;
+  // false writes the legacy string format, for as long as some user-service still can't read v1
+  private final boolean binaryEvents;
+  private final Counter recordsCounter;
+  private final Timer sendTimer;
+  private final Timer failedSendTimer;
+
+  public KafkaProducerService(Vertx vertx, MeterRegistry registry) {
+    this(createProducer(vertx), registry);
+  }
+
+  // Lets tests and the load harness plug in an in-process producer instead of a broker
+  public KafkaProducerService(KafkaProducer<String, byte[]> producer, MeterRegistry registry) {
+    this(producer, registry, !"string".equalsIgnoreCase(Env.string("KAFKA_EVENT_FORMAT", "binary")));
+  }
+
+  public KafkaProducerService(KafkaProducer<String, byte[]> producer, MeterRegistry registry, boolean binaryEvents) {
+    this.producer = producer;
+    this.binaryEvents = binaryEvents;
+    recordsCounter = Counter.builder("kafka.producer.records")
+      .description("Post-created events acknowledged by Kafka")
+      .register(registry);
+    sendTimer = Timer.builder("kafka.producer.batch.send")
+      .description("Time from handing a batch to the producer until every record is acknowledged")
+      .tag("outcome", "success")
+      .register(registry);
+    failedSendTimer = Timer.builder("kafka.producer.batch.send")
+      .tag("outcome", "failure")
+      .register(registry);
+    // Request latency, batch size, compression ratio... straight from the Kafka client
+    new KafkaClientMetrics(producer.unwrap()).bindTo(registry);
+  }
+
+  private static KafkaProducer<String, byte[]> createProducer(Vertx vertx) {
     Map<String, String> config = new HashMap<>();
 
     String kafkaBroker = System.getenv("KAFKA_BROKER");
@@ -19,33 +68,59 @@ public class KafkaProducerService {
       kafkaBroker = "localhost:9092";
     }
 
-    System.out.println(">>> KAFKA CONFIG: Connecting to " + kafkaBroker);
+    LOG.info("Kafka producer configured", "bootstrapServers", kafkaBroker);
 
     // Connection Config
     config.put("bootstrap.servers", kafkaBroker);
     config.put("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
-    config.put("value.serializer", "org.apache.kafka.common.serialization.StringSerializer");
-    config.put("acks", "1");
+    config.put("value.serializer", "org.apache.kafka.common.serialization.ByteArraySerializer");
 
-    this.producer = KafkaProducer.create(vertx, config);
+    // Idempotent producer: broker-side retries can't duplicate or reorder records
+    config.put("enable.idempotence", "true");
+    config.put("acks", "all");
+    config.put("max.in.flight.requests.per.connection", "5");
+
+    // Batching: the outbox relay hands over hundreds of records at once, let them share requests
+    config.put("linger.ms", Env.string("KAFKA_LINGER_MS", "20"));
+    config.put("batch.size", Env.string("KAFKA_BATCH_SIZE", "65536"));
+    config.put("compression.type", Env.string("KAFKA_COMPRESSION_TYPE", "lz4"));
+
+    return KafkaProducer.create(vertx, config);
   }
 
-  public void sendPostCreatedEvent(Long authorId) {
-    // DEBUG LOG: Before sending
-    System.out.println(">>> Attempting to send Kafka event for Author ID: " + authorId);
-
-    KafkaProducerRecord<String, String> record =
-      KafkaProducerRecord.create("post-created-topic", String.valueOf(authorId));
-
-    producer.send(record)
-      .onSuccess(v -> {
-        // DEBUG LOG: Success
-        System.out.println(">>> SUCCESS: Kafka Event sent!");
-      })
-      .onFailure(err -> {
-        // DEBUG LOG: Failure
-        System.err.println(">>> ERROR: Kafka send failed: " + err.getMessage());
-        err.printStackTrace();
+  // Sends a whole outbox batch; completes when every record has been acknowledged
+  public Future<Void> sendPostCreatedEvents(List<OutboxEvent> events) {
+    List<Future<?>> sends = new ArrayList<>(events.size());
+    for (OutboxEvent event : events) {
+      sends.add(producer.send(toRecord(event)));
+    }
+    long start = System.nanoTime();
+    return Future.all(sends)
+      .<Void>mapEmpty()
+      .andThen(ar -> {
+        long took = System.nanoTime() - start;
+        if (ar.succeeded()) {
+          sendTimer.record(took, TimeUnit.NANOSECONDS);
+          recordsCounter.increment(events.size());
+        } else {
+          failedSendTimer.record(took, TimeUnit.NANOSECONDS);
+        }
       });
   }
+
+  // Keyed by author: all of one author's events land on one partition, in order
+  private KafkaProducerRecord<String, byte[]> toRecord(OutboxEvent event) {
+    String key = String.valueOf(event.getAuthorId());
+    if (binaryEvents) {
+      PostCreatedEvent value = PostCreatedEvent.of(event.getPostId(), event.getAuthorId(), event.getPostCount(),
+        event.getCreatedAtMillis());
+      return KafkaProducerRecord.create(TOPIC, key, value.encode());
+    }
+    KafkaProducerRecord<String, byte[]> record =
+      KafkaProducerRecord.create(TOPIC, key, key.getBytes(StandardCharsets.US_ASCII));
+    if (event.getPostCount() > 1) {
+      record.addHeader(POST_COUNT_HEADER, String.valueOf(event.getPostCount()));
+    }
+    return record;
+  }
 }
@@ -0,0 +1,160 @@
+package com.griddynamics.post_service;
+
+import com.griddynamics.common.Env;
+import com.griddynamics.common.Log;
+import com.griddynamics.post_service.entities.Post;
+import com.griddynamics.post_service.repositories.PostRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Likes, counted in memory and written to {@code posts.likes} in batches.
+ * <p>
+ * Every post that gets liked has its own {@link LongAdder}. Clicks on a hot post from many event
+ * loops land in different cells of the adder, so they neither block each other nor take a
+ * database connection. Every {@code LIKES_FLUSH_INTERVAL_MS} the flush context moves whatever
+ * has built up into one batched {@code UPDATE ... SET likes = likes + ?}. A post with a million
+ * clicks in that time costs one row update. Reads add the likes not yet written
+ * ({@link #withPending}). A read that overlaps a flush can be off by that flush's batch for one
+ * response. It carries an older ETag, so the client's next poll gets the right count.
+ * <p>
+ * Durability: a like is only in memory until the next flush. A crash loses at most the last
+ * {@code LIKES_FLUSH_INTERVAL_MS} of likes, plus a batch whose write was in flight. A failed
+ * write puts its batch back for the next flush. Undeploying the service flushes once more.
+ * (The table itself is in memory today, so this window only matters once it isn't.)
+ * <p>
+ * Counters are kept for the life of the process, about 100 bytes per liked post. Dropping idle
+ * ones safely would need a lock on the click path.
+ */
+public class LikeCounter {
+
+  private static final Log LOG = Log.get("likes");
+
+  private final Vertx vertx;
+  private final Context context;
+  private final PostRepository postRepository;
+  private final long flushIntervalMs;
+  private final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+
+  private final LongAdder accepted = new LongAdder();
+  private final LongAdder flushed = new LongAdder();
+
+  // Only touched on the flush context
+  private boolean flushing;
+
+  public LikeCounter(Vertx vertx, PostRepository postRepository, MeterRegistry registry) {
+    this(vertx, postRepository, registry, Env.longValue("LIKES_FLUSH_INTERVAL_MS", 1000));
+  }
+
+  public LikeCounter(Vertx vertx, PostRepository postRepository, MeterRegistry registry, long flushIntervalMs) {
+    this.vertx = vertx;
+    this.context = vertx.getOrCreateContext();
+    this.postRepository = postRepository;
+    this.flushIntervalMs = flushIntervalMs;
+
+    FunctionCounter.builder("post.likes.accepted", accepted, LongAdder::sum)
+      .description("Likes accepted by the like endpoint")
+      .register(registry);
+    FunctionCounter.builder("post.likes.flushed", flushed, LongAdder::sum)
+      .description("Likes written to the posts table")
+      .register(registry);
+    Gauge.builder("post.likes.pending", this, counter -> counter.accepted.sum() - counter.flushed.sum())
+      .description("Likes accepted but not written yet")
+      .register(registry);
+  }
+
+  public void start() {
+    context.runOnContext(v -> vertx.setPeriodic(flushIntervalMs, id -> flush()));
+  }
+
+  // Safe from any thread; the caller has already checked that the post exists
+  public void like(long postId) {
+    Pending counter = pending.get(postId);
+    if (counter == null) {
+      counter = pending.computeIfAbsent(postId, id -> new Pending());
+    }
+    counter.likes.increment();
+    accepted.increment();
+    // After the increment: a reader that sees the new version also sees the like
+    postRepository.version().advance();
+  }
+
+  // Adds the likes not written yet to posts just read from the table
+  public List<Post> withPending(List<Post> posts) {
+    if (pending.isEmpty()) {
+      return posts;
+    }
+    for (Post post : posts) {
+      Pending counter = pending.get(post.getId());
+      if (counter != null) {
+        post.setLikes((int) (post.getLikes() + counter.likes.sum() + counter.inFlight));
+      }
+    }
+    return posts;
+  }
+
+  /**
+   * Writes the likes built up since the last flush in one batch. Runs on the flush context, one
+   * batch at a time; a call while a batch is in flight does nothing. Completes with the number of
+   * likes written.
+   */
+  public Future<Long> flush() {
+    if (flushing) {
+      return Future.succeededFuture(0L);
+    }
+    Map<Long, Long> batch = new HashMap<>();
+    pending.forEach((postId, counter) -> {
+      // In flight before it leaves the adder: a read in between counts it twice, not zero times
+      long delta = counter.likes.sum();
+      if (delta != 0) {
+        counter.inFlight += delta;
+        counter.likes.add(-delta);
+        batch.put(postId, delta);
+      }
+    });
+    if (batch.isEmpty()) {
+      return Future.succeededFuture(0L);
+    }
+    flushing = true;
+
+    return postRepository.addLikes(batch)
+      .map(v -> {
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : batch.entrySet()) {
+          pending.get(entry.getKey()).inFlight -= entry.getValue();
+          total += entry.getValue();
+        }
+        flushed.add(total);
+        return total;
+      })
+      .onFailure(err -> {
+        LOG.warn("Flushing likes failed, will retry", "posts", batch.size(), "error", err);
+        batch.forEach((postId, delta) -> {
+          Pending counter = pending.get(postId);
+          counter.likes.add(delta);
+          counter.inFlight -= delta;
+        });
+      })
+      .onComplete(ar -> {
+        flushing = false;
+        // Reads that overlapped the write may have counted the batch twice or not at all
+        postRepository.version().advance();
+      });
+  }
+
+  private static final class Pending {
+    final LongAdder likes = new LongAdder();
+    // Taken out of likes and being written; only changed on the flush context
+    volatile long inFlight;
+  }
+}
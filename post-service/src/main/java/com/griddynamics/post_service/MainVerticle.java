@@ -1,14 +1,17 @@
 package com.griddynamics.post_service;
 
-import com.griddynamics.post_service.entities.Post;
+import com.griddynamics.common.Env;
+import com.griddynamics.common.Log;
+import com.griddynamics.common.MeteredPool;
+import com.griddynamics.common.ServiceMetrics;
+import com.griddynamics.post_service.repositories.OutboxRepository;
 import com.griddynamics.post_service.repositories.PostRepository;
+import com.griddynamics.post_service.repositories.PostSearchIndex;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
-import io.vertx.core.json.JsonArray;
-import io.vertx.core.json.JsonObject;
-import io.vertx.ext.web.Router;
-import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.handler.BodyHandler;
+import io.vertx.kafka.client.producer.KafkaProducer;
 import io.vertx.jdbcclient.JDBCConnectOptions;
 import io.vertx.jdbcclient.JDBCPool;
 import io.vertx.sqlclient.Pool;
@@ -16,8 +19,26 @@ import io.vertx.sqlclient.PoolOptions;
 
 public class MainVerticle extends AbstractVerticle {
 
+  private static final int DB_POOL_SIZE = 5;
+  private static final Log LOG = Log.get("startup");
+
   private PostRepository postRepository;
-  private KafkaProducerService kafkaProducer;
+  private OutboxRelay outboxRelay;
+  private LikeCounter likeCounter;
+  private PostSearch postSearch;
+  private ServiceMetrics metrics;
+
+  // null = connect to the broker in KAFKA_BROKER
+  private final KafkaProducer<String, byte[]> kafkaProducerClient;
+
+  public MainVerticle() {
+    this(null);
+  }
+
+  // Lets the load harness run the service against an in-process Kafka stand-in
+  public MainVerticle(KafkaProducer<String, byte[]> kafkaProducerClient) {
+    this.kafkaProducerClient = kafkaProducerClient;
+  }
 
   public static void main(String[] args) {
     io.vertx.core.Vertx vertx = io.vertx.core.Vertx.vertx();
@@ -26,8 +47,8 @@ public class MainVerticle extends AbstractVerticle {
 
   @Override
   public void start(Promise<Void> startPromise) throws Exception {
+    metrics = new ServiceMetrics("post-service");
 
-    kafkaProducer = new KafkaProducerService(vertx);
     // 1. Database Setup (H2)
     // Note: This is a separate DB instance in memory (jdbc:h2:mem:post_db)
     JDBCConnectOptions dbConfig = new JDBCConnectOptions()
@@ -35,69 +56,55 @@ public class MainVerticle extends AbstractVerticle {
       .setUser("sa")
       .setPassword("");
 
-    Pool dbClient = JDBCPool.pool(vertx, dbConfig, new PoolOptions().setMaxSize(5));
-    postRepository = new PostRepository(dbClient);
-
-    // 2. Router Setup
-    Router router = Router.router(vertx);
-    router.route().handler(BodyHandler.create());
-
-    router.get("/health").handler(ctx -> ctx.json(new JsonObject().put("status", "UP")));
-
-    // API Routes
-    router.post("/posts").handler(this::createPost);
-    router.get("/posts").handler(this::getAllPosts);
-
-    // 3. Initialize DB -> Start Server
+    Pool pool = JDBCPool.pool(vertx, dbConfig, new PoolOptions().setMaxSize(DB_POOL_SIZE));
+    MeteredPool dbClient = new MeteredPool(pool, DB_POOL_SIZE, metrics.registry(), "posts");
+    OutboxRepository outboxRepository = new OutboxRepository(dbClient);
+    PostSearchIndex searchIndex = new PostSearchIndex();
+    searchIndex.bindTo(metrics.registry());
+    postRepository = new PostRepository(dbClient, outboxRepository, searchIndex);
+    postSearch = PostSearch.fromEnv(vertx, searchIndex, metrics.registry());
+    // 2. Kafka producer + relay: created once, so there is a single producer and a single drain loop
+    KafkaProducerService kafkaProducer = kafkaProducerClient == null
+      ? new KafkaProducerService(vertx, metrics.registry())
+      : new KafkaProducerService(kafkaProducerClient, metrics.registry());
+    outboxRelay = new OutboxRelay(vertx, outboxRepository, kafkaProducer);
+    // 3. Like counter: shared by every HTTP instance, flushed from this context
+    likeCounter = new LikeCounter(vertx, postRepository, metrics.registry());
+
+    // 4. Initialize DB (and fill the search index from it) -> Start HTTP instances
     postRepository.initData()
+      .compose(v -> deployHttpServers())
       .onFailure(startPromise::fail)
-      .onSuccess(v -> {
-        vertx.createHttpServer()
-          .requestHandler(router)
-          .listen(8889) // Port 8889
-          .onSuccess(server -> {
-            System.out.println("Post Service started on port 8889");
-            startPromise.complete();
-          })
-          .onFailure(startPromise::fail);
+      .onSuccess(instances -> {
+        outboxRelay.start();
+        likeCounter.start();
+        LOG.info("Post Service started", "port", 8889, "httpInstances", instances,
+          "indexedPosts", postRepository.searchIndex().size());
+        startPromise.complete();
       });
   }
 
-  // --- Handlers ---
-
-  private void createPost(RoutingContext ctx) {
-    JsonObject body = ctx.body().asJsonObject();
-
-    // Validation
-    if (body == null || !body.containsKey("authorId") || !body.containsKey("content")) {
-      ctx.response().setStatusCode(400).end("authorId and content are required");
+  // Likes not written yet would be lost with the process; write them while the pool is still open
+  @Override
+  public void stop(Promise<Void> stopPromise) {
+    if (likeCounter == null) {
+      stopPromise.complete();
       return;
     }
-
-    Post newPost = new Post(
-      body.getLong("authorId"),
-      body.getString("content")
-    );
-
-    postRepository.save(newPost)
-      .onSuccess(v -> {
-        kafkaProducer.sendPostCreatedEvent(newPost.getAuthorId());
-        ctx.response().setStatusCode(201).end(new JsonObject().put("message", "Post Created").encode());
-      })
-      .onFailure(err -> {
-          System.err.println("DB Save Failed: " + err.getMessage());
-          ctx.response().setStatusCode(500).end(err.getMessage());
-        }
-      );
+    likeCounter.flush()
+      .onFailure(err -> LOG.warn("Final likes flush failed", "error", err))
+      .<Void>mapEmpty()
+      .otherwiseEmpty()
+      .onComplete(stopPromise);
   }
 
-  private void getAllPosts(RoutingContext ctx) {
-    postRepository.findAll()
-      .onSuccess(posts -> {
-        JsonArray response = new JsonArray();
-        posts.forEach(p -> response.add(p.toJson()));
-        ctx.json(response);
-      })
-      .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+  // One HTTP verticle per core by default; they all share port 8889 and the state built above
+  private Future<Integer> deployHttpServers() {
+    int instances = Env.integer("HTTP_INSTANCES", Runtime.getRuntime().availableProcessors());
+
+    return vertx.deployVerticle(
+        () -> new HttpServerVerticle(postRepository, outboxRelay, likeCounter, postSearch, metrics),
+        new DeploymentOptions().setInstances(instances))
+      .map(id -> instances);
   }
 }
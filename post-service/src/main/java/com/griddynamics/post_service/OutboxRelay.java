@@ -0,0 +1,95 @@
+package com.griddynamics.post_service;
+
+import com.griddynamics.common.Env;
+import com.griddynamics.common.Log;
+import com.griddynamics.post_service.repositories.OutboxRepository;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+/**
+ * Moves post-created events from the outbox table to Kafka in large batches.
+ * <p>
+ * Delivery is at-least-once: rows are deleted only after Kafka has acknowledged every
+ * record of the batch, so a failed or interrupted batch is sent again on the next drain.
+ * All draining happens on the context the relay was created on, one batch at a time.
+ */
+public class OutboxRelay {
+
+  private static final Log LOG = Log.get("outbox.relay");
+  // One line per drained batch; capped, since under load the relay drains many times a second
+  private static final Log SENT = Log.get("outbox.relay.sent", 10);
+
+  private final Vertx vertx;
+  private final Context context;
+  private final OutboxRepository outboxRepository;
+  private final KafkaProducerService kafkaProducer;
+  private final int batchSize;
+  private final long intervalMs;
+
+  private boolean draining;
+  private boolean drainRequested;
+
+  public OutboxRelay(Vertx vertx, OutboxRepository outboxRepository, KafkaProducerService kafkaProducer) {
+    this(vertx, outboxRepository, kafkaProducer,
+      Env.integer("OUTBOX_BATCH_SIZE", 500),
+      Env.longValue("OUTBOX_POLL_INTERVAL_MS", 500));
+  }
+
+  public OutboxRelay(Vertx vertx, OutboxRepository outboxRepository, KafkaProducerService kafkaProducer,
+                     int batchSize, long intervalMs) {
+    this.vertx = vertx;
+    this.context = vertx.getOrCreateContext();
+    this.outboxRepository = outboxRepository;
+    this.kafkaProducer = kafkaProducer;
+    this.batchSize = batchSize;
+    this.intervalMs = intervalMs;
+  }
+
+  // The timer picks up anything a wake-up missed (e.g. rows left behind by a failed send)
+  public void start() {
+    context.runOnContext(v -> vertx.setPeriodic(intervalMs, id -> drain()));
+  }
+
+  // Called after a post is saved, so events normally leave within one producer linger
+  public void wakeUp() {
+    context.runOnContext(v -> drain());
+  }
+
+  /**
+   * Sends one batch. If a batch is already in flight the call only schedules another
+   * drain after it. Completes with the number of events relayed.
+   */
+  public Future<Integer> drain() {
+    if (draining) {
+      drainRequested = true;
+      return Future.succeededFuture(0);
+    }
+    draining = true;
+    drainRequested = false;
+
+    return outboxRepository.findBatch(batchSize)
+      .compose(events -> {
+        if (events.isEmpty()) {
+          return Future.succeededFuture(0);
+        }
+        return kafkaProducer.sendPostCreatedEvents(events)
+          .compose(v -> outboxRepository.deleteAll(events))
+          .map(v -> events.size());
+      })
+      .onComplete(ar -> {
+        draining = false;
+        if (ar.failed()) {
+          LOG.warn("Outbox relay failed, will retry", "error", ar.cause());
+          return;
+        }
+        if (ar.result() > 0) {
+          SENT.info("Outbox relay sent events", "events", ar.result());
+        }
+        // A full batch means there is probably more waiting
+        if (ar.result() == batchSize || drainRequested) {
+          drain();
+        }
+      });
+  }
+}
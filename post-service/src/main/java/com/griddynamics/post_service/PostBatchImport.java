@@ -0,0 +1,223 @@
+package com.griddynamics.post_service;
+
+import com.griddynamics.common.Log;
+import com.griddynamics.post_service.entities.Post;
+import com.griddynamics.post_service.repositories.PostRepository;
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.JsonEvent;
+import io.vertx.core.parsetools.JsonEventType;
+import io.vertx.core.parsetools.JsonParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One {@code POST /posts/batch} request. The body (a JSON array of posts, or NDJSON: one post
+ * object per line) is parsed as it arrives; every {@code chunkSize} items the parser is paused
+ * while the valid posts of that chunk are written in one transaction, so memory stays bounded by
+ * the chunk however big the import is.
+ * <p>
+ * The response is a JSON object streamed alongside: one result per item in input order
+ * ({@code 201} with the new id, {@code 400} for invalid items, {@code 500} if the item's chunk
+ * could not be written), then the totals. Items in committed chunks stay committed even if a
+ * later chunk fails or the body turns out to be malformed halfway through.
+ */
+class PostBatchImport {
+
+  private static final Log LOG = Log.get("http.batch");
+  private static final int MAX_CONTENT_LENGTH = 1000; // posts.content is VARCHAR(1000)
+
+  private final PostRepository postRepository;
+  private final OutboxRelay outboxRelay;
+  private final HttpServerRequest request;
+  private final HttpServerResponse response;
+  private final JsonParser parser;
+  private final int chunkSize;
+
+  // Items of the current chunk: a Post to insert, or the JsonObject result of a rejected item
+  private List<Object> chunk = new ArrayList<>();
+  private int nextIndex;
+  private int firstIndexOfChunk;
+  private int inserted;
+  private int failed;
+  private boolean writing;
+  private boolean ended;
+  private boolean finished;
+  private boolean firstResult = true;
+  private String parseError;
+
+  PostBatchImport(PostRepository postRepository, OutboxRelay outboxRelay,
+                  HttpServerRequest request, HttpServerResponse response, int chunkSize) {
+    this.postRepository = postRepository;
+    this.outboxRelay = outboxRelay;
+    this.request = request;
+    this.response = response;
+    this.chunkSize = chunkSize;
+    this.parser = JsonParser.newParser(request).objectValueMode();
+  }
+
+  void start() {
+    parser.handler(this::onJsonEvent);
+    parser.exceptionHandler(err -> {
+      if (parseError == null && !ended) {
+        // Jackson appends a multi-line source location; the first line says what went wrong
+        parseError = "Malformed JSON after " + nextIndex + " items: " + err.getMessage().split("\n", 2)[0];
+        onEnd();
+      }
+    });
+    parser.endHandler(v -> onEnd());
+    request.resume();
+  }
+
+  private void onJsonEvent(JsonEvent event) {
+    if (ended) {
+      return;
+    }
+    // Array brackets are framing; every value inside (or every NDJSON line) is one item
+    if (event.type() == JsonEventType.START_ARRAY || event.type() == JsonEventType.END_ARRAY) {
+      return;
+    }
+    int index = nextIndex++;
+    Object value = event.value();
+    String error = value instanceof JsonObject item ? validate(item) : "Expected a JSON object";
+    chunk.add(error == null ? toPost((JsonObject) value) : result(index, 400).put("error", error));
+
+    if (chunk.size() >= chunkSize) {
+      parser.pause();
+      writeChunk();
+    }
+  }
+
+  private void onEnd() {
+    ended = true;
+    if (!writing) {
+      writeChunk();
+    }
+  }
+
+  // Inserts the current chunk, streams its results, then resumes reading (or finishes)
+  private void writeChunk() {
+    List<Object> items = chunk;
+    int firstIndex = firstIndexOfChunk;
+    chunk = new ArrayList<>();
+    firstIndexOfChunk = nextIndex;
+
+    if (items.isEmpty()) {
+      finishIfDone();
+      return;
+    }
+
+    List<Post> posts = new ArrayList<>(items.size());
+    for (Object item : items) {
+      if (item instanceof Post post) {
+        posts.add(post);
+      }
+    }
+
+    writing = true;
+    Future<Void> write = posts.isEmpty() ? Future.succeededFuture() : postRepository.saveAll(posts);
+    write.onComplete(ar -> {
+      writing = false;
+      if (ar.succeeded() && !posts.isEmpty()) {
+        outboxRelay.wakeUp();
+      }
+      if (ar.failed()) {
+        LOG.warn("Batch chunk failed", "firstIndex", firstIndex, "posts", posts.size(), "error", ar.cause());
+      }
+      writeResults(items, firstIndex, ar.failed() ? ar.cause().getMessage() : null);
+
+      if (ended) {
+        // The body ended (or broke) while this chunk was being written: flush what is left
+        writeChunk();
+      } else if (response.writeQueueFull()) {
+        response.drainHandler(v -> parser.resume());
+      } else {
+        parser.resume();
+      }
+    });
+  }
+
+  private void writeResults(List<Object> items, int firstIndex, String chunkError) {
+    if (response.closed()) {
+      return;
+    }
+    if (!response.headWritten()) {
+      response.setChunked(true).putHeader("Content-Type", "application/json").write("{\"results\":[");
+    }
+    StringBuilder out = new StringBuilder(items.size() * 40);
+    for (int i = 0; i < items.size(); i++) {
+      JsonObject result;
+      if (items.get(i) instanceof Post post) {
+        result = chunkError == null
+          ? result(firstIndex + i, 201).put("id", post.getId())
+          : result(firstIndex + i, 500).put("error", chunkError);
+      } else {
+        result = (JsonObject) items.get(i);
+      }
+      if (result.getInteger("status") == 201) {
+        inserted++;
+      } else {
+        failed++;
+      }
+      out.append(firstResult ? "" : ",").append(result.encode());
+      firstResult = false;
+    }
+    response.write(out.toString());
+  }
+
+  private void finishIfDone() {
+    if (finished || writing || !ended) {
+      return;
+    }
+    finished = true;
+    LOG.info("Batch import finished", "items", nextIndex, "inserted", inserted, "failed", failed,
+      "parseError", parseError);
+    if (response.closed()) {
+      return;
+    }
+    if (!response.headWritten()) {
+      // Nothing was parsed at all: a plain client error is more useful than an empty report
+      if (parseError != null || nextIndex == 0) {
+        response.setStatusCode(400).end(parseError != null ? parseError : "Expected a JSON array or NDJSON of posts");
+        return;
+      }
+      response.setChunked(true).putHeader("Content-Type", "application/json").write("{\"results\":[");
+    }
+    JsonObject summary = new JsonObject()
+      .put("inserted", inserted)
+      .put("failed", failed);
+    if (parseError != null) {
+      summary.put("error", parseError);
+    }
+    // Splice the totals into the object opened with "results"
+    String totals = summary.encode();
+    response.end("]," + totals.substring(1));
+  }
+
+  private static String validate(JsonObject item) {
+    Object authorId = item.getValue("authorId");
+    if (!(authorId instanceof Integer || authorId instanceof Long) || ((Number) authorId).longValue() < 1) {
+      return "authorId must be a positive integer";
+    }
+    if (!(item.getValue("content") instanceof String content) || content.isBlank()) {
+      return "content is required";
+    }
+    if (content.length() > MAX_CONTENT_LENGTH) {
+      return "content is longer than " + MAX_CONTENT_LENGTH + " characters";
+    }
+    return null;
+  }
+
+  private static Post toPost(JsonObject item) {
+    return new Post(((Number) item.getValue("authorId")).longValue(), item.getString("content"));
+  }
+
+  private static JsonObject result(int index, int status) {
+    return new JsonObject()
+      .put("index", index)
+      .put("status", status);
+  }
+}
@@ -0,0 +1,63 @@
+package com.griddynamics.post_service;
+
+import com.griddynamics.common.Env;
+import com.griddynamics.post_service.repositories.PostSearchIndex;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs {@link PostSearchIndex} queries on a dedicated worker pool.
+ * <p>
+ * A query for a common word walks every post containing it. At a million posts that takes a few
+ * milliseconds, too long to hold an event loop. The pool is not the one the JDBC client uses, so
+ * searches can't delay database calls either. At most {@code threads} searches run at once and at
+ * most {@code queueSize} more may wait. Anything beyond that fails fast with a
+ * {@link RejectedExecutionException}, which the HTTP layer turns into a 503.
+ */
+public class PostSearch {
+
+  private final PostSearchIndex index;
+  private final WorkerExecutor executor;
+  private final int maxPending;
+
+  private final AtomicInteger pending = new AtomicInteger();
+  private final LongAdder rejected = new LongAdder();
+
+  public PostSearch(Vertx vertx, PostSearchIndex index, MeterRegistry registry, int threads, int queueSize) {
+    this.index = index;
+    this.executor = vertx.createSharedWorkerExecutor("post-search", threads);
+    this.maxPending = threads + queueSize;
+
+    Gauge.builder("post.search.pending", pending, AtomicInteger::get)
+      .description("Searches running or waiting for a search thread")
+      .register(registry);
+    FunctionCounter.builder("post.search.rejected", rejected, LongAdder::sum)
+      .description("Searches turned away because the search pool was full")
+      .register(registry);
+  }
+
+  public static PostSearch fromEnv(Vertx vertx, PostSearchIndex index, MeterRegistry registry) {
+    int cores = Runtime.getRuntime().availableProcessors();
+    return new PostSearch(vertx, index, registry,
+      Env.integer("SEARCH_THREADS", Math.max(1, cores / 2)),
+      Env.integer("SEARCH_QUEUE", 64));
+  }
+
+  public Future<PostSearchIndex.Hits> search(String query, int offset, int limit) {
+    if (pending.incrementAndGet() > maxPending) {
+      pending.decrementAndGet();
+      rejected.increment();
+      return Future.failedFuture(new RejectedExecutionException("Search queue is full"));
+    }
+    return executor.executeBlocking(() -> index.search(query, offset, limit), false)
+      .onComplete(ar -> pending.decrementAndGet());
+  }
+}
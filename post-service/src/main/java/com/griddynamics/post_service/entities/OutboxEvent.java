@@ -0,0 +1,57 @@
+package com.griddynamics.post_service.entities;
+
+import io.vertx.sqlclient.Row;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// A post-created event waiting in the outbox table to be relayed to Kafka. A bulk import writes
+// one event per author with postCount > 1 (postId is then the author's newest post).
+public class OutboxEvent {
+  private Long id;
+  private Long postId;
+  private Long authorId;
+  private int postCount = 1;
+  // When the event was written to the outbox, epoch millis; 0 when unknown
+  private long createdAtMillis;
+
+  public OutboxEvent() {}
+
+  public OutboxEvent(Long postId, Long authorId) {
+    this(postId, authorId, 1);
+  }
+
+  public OutboxEvent(Long postId, Long authorId, int postCount) {
+    this.postId = postId;
+    this.authorId = authorId;
+    this.postCount = postCount;
+  }
+
+  public Long getId() { return id; }
+  public void setId(Long id) { this.id = id; }
+
+  public Long getPostId() { return postId; }
+  public void setPostId(Long postId) { this.postId = postId; }
+
+  public Long getAuthorId() { return authorId; }
+  public void setAuthorId(Long authorId) { this.authorId = authorId; }
+
+  public int getPostCount() { return postCount; }
+  public void setPostCount(int postCount) { this.postCount = postCount; }
+
+  public long getCreatedAtMillis() { return createdAtMillis; }
+  public void setCreatedAtMillis(long createdAtMillis) { this.createdAtMillis = createdAtMillis; }
+
+  public static OutboxEvent fromRow(Row row) {
+    OutboxEvent event = new OutboxEvent();
+    event.setId(row.getLong("ID"));
+    event.setPostId(row.getLong("POST_ID"));
+    event.setAuthorId(row.getLong("AUTHOR_ID"));
+    event.setPostCount(row.getInteger("POST_COUNT"));
+    LocalDateTime createdAt = row.getLocalDateTime("CREATED_AT");
+    if (createdAt != null) {
+      event.setCreatedAtMillis(createdAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+    return event;
+  }
+}
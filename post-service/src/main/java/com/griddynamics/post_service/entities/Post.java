@@ -1,6 +1,11 @@
 package com.griddynamics.post_service.entities;
 
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class Post {
   private Long id;
@@ -29,6 +34,18 @@ public class Post {
   public int getLikes() { return likes; }
   public void setLikes(int likes) { this.likes = likes; }
 
+  public static Post fromRow(Row row) {
+    Post post = new Post();
+    post.setId(row.getLong("ID"));
+    post.setAuthorId(row.getLong("AUTHOR_ID"));
+    post.setContent(row.getString("CONTENT"));
+
+    Integer likes = row.getInteger("LIKES");
+    post.setLikes(likes != null ? likes : 0);
+
+    return post;
+  }
+
   public JsonObject toJson() {
     return new JsonObject()
       .put("id", id)
@@ -36,4 +53,15 @@ public class Post {
       .put("content", content)
       .put("likes", likes);
   }
+
+  // Body of GET /posts: one page plus the cursor for the next one (null on the last page)
+  public static JsonObject toPageJson(List<Post> page, Long nextCursor) {
+    JsonArray items = new JsonArray(new ArrayList<>(page.size()));
+    for (Post post : page) {
+      items.add(post.toJson());
+    }
+    return new JsonObject()
+      .put("posts", items)
+      .put("nextCursor", nextCursor);
+  }
 }
@@ -0,0 +1,72 @@
+package com.griddynamics.post_service.repositories;
+
+import com.griddynamics.common.MeteredPool;
+import com.griddynamics.post_service.entities.OutboxEvent;
+import io.vertx.core.Future;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.SqlConnection;
+import io.vertx.sqlclient.Tuple;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OutboxRepository {
+
+  private final MeteredPool dbClient;
+
+  public OutboxRepository(MeteredPool dbClient) {
+    this.dbClient = dbClient;
+  }
+
+  // 1. Initialize Schema
+  public Future<Void> initData() {
+    String schema = "CREATE TABLE IF NOT EXISTS post_outbox (" +
+      "id IDENTITY PRIMARY KEY, " +
+      "post_id BIGINT NOT NULL, " +
+      "author_id BIGINT NOT NULL, " +
+      "post_count INT DEFAULT 1 NOT NULL, " +
+      "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP )";
+    return dbClient.withConnection(conn -> conn.query(schema).execute()).mapEmpty();
+  }
+
+  // 2. Append an event. Takes the caller's connection so it joins the caller's transaction.
+  public Future<Void> append(SqlConnection conn, OutboxEvent event) {
+    String sql = "INSERT INTO post_outbox (post_id, author_id, post_count) VALUES (?, ?, ?)";
+    return conn.preparedQuery(sql)
+      .execute(Tuple.of(event.getPostId(), event.getAuthorId(), event.getPostCount()))
+      .mapEmpty();
+  }
+
+  // Same for many events, as one JDBC batch
+  public Future<Void> appendAll(SqlConnection conn, List<OutboxEvent> events) {
+    String sql = "INSERT INTO post_outbox (post_id, author_id, post_count) VALUES (?, ?, ?)";
+    List<Tuple> batch = new ArrayList<>(events.size());
+    events.forEach(e -> batch.add(Tuple.of(e.getPostId(), e.getAuthorId(), e.getPostCount())));
+    return conn.preparedQuery(sql)
+      .executeBatch(batch)
+      .mapEmpty();
+  }
+
+  // 3. Oldest pending events first
+  public Future<List<OutboxEvent>> findBatch(int limit) {
+    String sql = "SELECT id, post_id, author_id, post_count, created_at FROM post_outbox ORDER BY id LIMIT ?";
+    return dbClient.withConnection(conn -> conn.preparedQuery(sql)
+        .execute(Tuple.of(limit)))
+      .map(rows -> {
+        List<OutboxEvent> events = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+          events.add(OutboxEvent.fromRow(row));
+        }
+        return events;
+      });
+  }
+
+  // 4. Delete by id (not "id <= max"): a slower transaction may still commit a lower id later
+  public Future<Void> deleteAll(List<OutboxEvent> events) {
+    String sql = "DELETE FROM post_outbox WHERE id = ?";
+    List<Tuple> batch = new ArrayList<>(events.size());
+    events.forEach(e -> batch.add(Tuple.of(e.getId())));
+    return dbClient.withConnection(conn -> conn.preparedQuery(sql)
+        .executeBatch(batch))
+      .mapEmpty();
+  }
+}
@@ -1,19 +1,41 @@
 package com.griddynamics.post_service.repositories;
 
+import com.griddynamics.common.CollectionVersion;
+import com.griddynamics.common.MeteredPool;
+import com.griddynamics.post_service.entities.OutboxEvent;
 import com.griddynamics.post_service.entities.Post;
 import io.vertx.core.Future;
-import io.vertx.sqlclient.Pool;
+import io.vertx.jdbcclient.JDBCPool;
 import io.vertx.sqlclient.Tuple;
 import io.vertx.sqlclient.Row;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PostRepository {
 
-  private final Pool dbClient;
+  private static final int INDEX_PAGE_SIZE = 10_000;
 
-  public PostRepository(Pool dbClient) {
+  private final MeteredPool dbClient;
+  private final OutboxRepository outboxRepository;
+  // Moves on every write that changes what the post lists return
+  private final CollectionVersion version = new CollectionVersion();
+  // Posts are never deleted, so every id up to this one was handed out
+  private final AtomicLong highestId = new AtomicLong();
+  // Filled from the table by initData, then kept current by save and saveAll
+  private final PostSearchIndex searchIndex;
+
+  public PostRepository(MeteredPool dbClient, OutboxRepository outboxRepository) {
+    this(dbClient, outboxRepository, new PostSearchIndex());
+  }
+
+  public PostRepository(MeteredPool dbClient, OutboxRepository outboxRepository, PostSearchIndex searchIndex) {
     this.dbClient = dbClient;
+    this.outboxRepository = outboxRepository;
+    this.searchIndex = searchIndex;
   }
 
   // 1. Initialize Schema
@@ -23,32 +45,179 @@ public class PostRepository {
       "author_id BIGINT NOT NULL, " +
       "content VARCHAR(1000), " +
       "likes INT DEFAULT 0 )";
-    return dbClient.query(schema).execute().mapEmpty();
+    // Serves the author timeline: one index range scan, already in id order, no table scan or sort
+    String authorIndex = "CREATE INDEX IF NOT EXISTS idx_posts_author_id ON posts (author_id, id DESC)";
+    return dbClient.withConnection(conn -> conn.query(schema).execute()
+        .compose(v -> conn.query(authorIndex).execute())
+        .compose(v -> conn.query("SELECT COALESCE(MAX(id), 0) FROM posts").execute()))
+      .compose(rows -> {
+        highestId.set(rows.iterator().next().getLong(0));
+        return outboxRepository.initData();
+      })
+      .compose(v -> indexFrom(0L));
   }
 
-  // 2. Create Post
+  // Feeds every post already in the table to the search index, one keyset page at a time
+  private Future<Void> indexFrom(long afterId) {
+    return findPage(afterId, INDEX_PAGE_SIZE).compose(posts -> {
+      for (Post post : posts) {
+        searchIndex.add(post.getId(), post.getContent());
+      }
+      return posts.size() < INDEX_PAGE_SIZE
+        ? Future.succeededFuture()
+        : indexFrom(posts.get(posts.size() - 1).getId());
+    });
+  }
+
+  // 2. Create Post. The post row and its outbox event commit (or roll back) together,
+  // so an event can never be lost between the insert and the Kafka send.
   public Future<Void> save(Post post) {
     String sql = "INSERT INTO posts (author_id, content, likes) VALUES (?, ?, ?)";
-    return dbClient.preparedQuery(sql)
+    return dbClient.withTransaction(conn -> conn.preparedQuery(sql)
       .execute(Tuple.of(post.getAuthorId(), post.getContent(), post.getLikes()))
-      .mapEmpty();
+      .compose(rows -> {
+        post.setId(rows.property(JDBCPool.GENERATED_KEYS).getLong(0));
+        highestId.accumulateAndGet(post.getId(), Math::max);
+        return outboxRepository.append(conn, new OutboxEvent(post.getId(), post.getAuthorId()));
+      }))
+      // Only once committed: a search must never return a post the table doesn't have
+      .onSuccess(v -> searchIndex.add(post.getId(), post.getContent()))
+      .onComplete(ar -> version.advance());
   }
 
   // 3. Find All Posts
   public Future<List<Post>> findAll() {
-    return dbClient.query("SELECT * FROM posts")
-      .execute()
+    return dbClient.withConnection(conn -> conn.query("SELECT * FROM posts").execute())
       .map(rows -> {
         List<Post> posts = new ArrayList<>();
         for (Row row : rows) {
-          Post p = new Post();
-          p.setId(row.getLong("ID"));
-          p.setAuthorId(row.getLong("AUTHOR_ID"));
-          p.setContent(row.getString("CONTENT"));
-          p.setLikes(row.getInteger("LIKES"));
-          posts.add(p);
+          posts.add(Post.fromRow(row));
+        }
+        return posts;
+      });
+  }
+
+  // 4. Find one page of posts after a cursor (keyset pagination on the IDENTITY column)
+  public Future<List<Post>> findPage(long afterId, int limit) {
+    String sql = "SELECT id, author_id, content, likes FROM posts WHERE id > ? ORDER BY id LIMIT ?";
+    return dbClient.withConnection(conn -> conn.preparedQuery(sql)
+        .execute(Tuple.of(afterId, limit)))
+      .map(rows -> {
+        List<Post> posts = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+          posts.add(Post.fromRow(row));
         }
         return posts;
       });
   }
+
+  // 5. Insert many posts in one transaction: a single multi-row INSERT, and one outbox event per
+  // author (carrying the number of posts) instead of one per post. Sets the generated ids.
+  public Future<Void> saveAll(List<Post> posts) {
+    // FINAL TABLE hands back every generated id; executeBatch would only report the first one
+    StringBuilder sql = new StringBuilder("SELECT id FROM FINAL TABLE (INSERT INTO posts (author_id, content, likes) VALUES ");
+    List<Object> params = new ArrayList<>(posts.size() * 3);
+    for (int i = 0; i < posts.size(); i++) {
+      Post post = posts.get(i);
+      sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+      params.add(post.getAuthorId());
+      params.add(post.getContent());
+      params.add(post.getLikes());
+    }
+    sql.append(") ORDER BY id"); // ids grow in VALUES order
+
+    return dbClient.withTransaction(conn -> conn.preparedQuery(sql.toString())
+      .execute(Tuple.wrap(params))
+      .compose(rows -> {
+        int i = 0;
+        for (Row row : rows) {
+          posts.get(i++).setId(row.getLong("ID"));
+        }
+        highestId.accumulateAndGet(posts.get(posts.size() - 1).getId(), Math::max);
+        return outboxRepository.appendAll(conn, eventsPerAuthor(posts));
+      }))
+      .onSuccess(v -> {
+        for (Post post : posts) {
+          searchIndex.add(post.getId(), post.getContent());
+        }
+      })
+      .onComplete(ar -> version.advance());
+  }
+
+  // 6. One page of an author's posts, newest first, older than the cursor (keyset on idx_posts_author_id)
+  public Future<List<Post>> findByAuthor(long authorId, long beforeId, int limit) {
+    // author_id is fixed, but H2 only skips the sort when ORDER BY spells out the index columns
+    String sql = "SELECT id, author_id, content, likes FROM posts " +
+      "WHERE author_id = ? AND id < ? ORDER BY author_id, id DESC LIMIT ?";
+    return dbClient.withConnection(conn -> conn.preparedQuery(sql)
+        .execute(Tuple.of(authorId, beforeId, limit)))
+      .map(rows -> {
+        List<Post> posts = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+          posts.add(Post.fromRow(row));
+        }
+        return posts;
+      });
+  }
+
+  // 7. Add likes to many posts at once: one batched statement, each row touched once.
+  // All or nothing, since a failed batch is retried as a whole
+  public Future<Void> addLikes(Map<Long, Long> likesByPost) {
+    String sql = "UPDATE posts SET likes = likes + ? WHERE id = ?";
+    List<Tuple> batch = new ArrayList<>(likesByPost.size());
+    likesByPost.forEach((postId, likes) -> batch.add(Tuple.of(likes, postId)));
+    return dbClient.withTransaction(conn -> conn.preparedQuery(sql).executeBatch(batch)).mapEmpty();
+  }
+
+  // Ids can have gaps (a rolled-back insert still uses one up); updating a gap touches no row
+  public boolean mayExist(long postId) {
+    return postId >= 1 && postId <= highestId.get();
+  }
+
+  // 8. Posts by id, in the order given (e.g. search rank); ids not in the table are skipped
+  public Future<List<Post>> findByIds(List<Long> ids) {
+    if (ids.isEmpty()) {
+      return Future.succeededFuture(new ArrayList<>());
+    }
+    String sql = "SELECT id, author_id, content, likes FROM posts WHERE id IN (" + "?, ".repeat(ids.size() - 1) + "?)";
+    return dbClient.withConnection(conn -> conn.preparedQuery(sql)
+        .execute(Tuple.wrap(new ArrayList<Object>(ids))))
+      .map(rows -> {
+        Map<Long, Post> found = new HashMap<>();
+        for (Row row : rows) {
+          Post post = Post.fromRow(row);
+          found.put(post.getId(), post);
+        }
+        List<Post> posts = new ArrayList<>(found.size());
+        for (Long id : ids) {
+          Post post = found.get(id);
+          if (post != null) {
+            posts.add(post);
+          }
+        }
+        return posts;
+      });
+  }
+
+  public PostSearchIndex searchIndex() {
+    return searchIndex;
+  }
+
+  public CollectionVersion version() {
+    return version;
+  }
+
+  private static List<OutboxEvent> eventsPerAuthor(List<Post> posts) {
+    Map<Long, OutboxEvent> events = new LinkedHashMap<>();
+    for (Post post : posts) {
+      OutboxEvent event = events.get(post.getAuthorId());
+      if (event == null) {
+        events.put(post.getAuthorId(), new OutboxEvent(post.getId(), post.getAuthorId()));
+      } else {
+        event.setPostId(Math.max(event.getPostId(), post.getId()));
+        event.setPostCount(event.getPostCount() + 1);
+      }
+    }
+    return new ArrayList<>(events.values());
+  }
 }
@@ -0,0 +1,301 @@
+package com.griddynamics.post_service.repositories;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Full-text search over post content: an inverted index kept in memory next to the posts table.
+ * <p>
+ * Content is split into lower-case runs of letters and digits. Every indexed post takes the next
+ * document number, so a term's posting list only ever grows at its end. That lets it be stored as
+ * varints: the gap to the previous document, then how often the term occurs in this one, about 2
+ * to 3 bytes per posting.
+ * <p>
+ * A query matches the posts that contain any of its terms, ranked by BM25: more of the terms,
+ * rarer terms and shorter posts rank higher, and newer posts win ties. The posting lists are
+ * merged in document order, and a heap keeps only the best {@code offset + limit}. A query
+ * therefore allocates nothing per matching post.
+ * <p>
+ * Adds are synchronized and take microseconds; searches take no lock. A writer fills in a document
+ * and its postings before it publishes the new document count. A search ignores documents past the
+ * count it read first, so it only ever sees whole posts. Posts are never edited or deleted, so
+ * nothing is ever removed.
+ */
+public class PostSearchIndex {
+
+  public record Hits(List<Long> postIds, int total) {}
+
+  private static final float K1 = 1.2f;
+  private static final float B = 0.75f;
+  private static final int MAX_TERM_LENGTH = 40;
+  private static final int MAX_QUERY_TERMS = 16;
+  // Rough JVM cost of a term that isn't in its posting bytes: map node, String, Postings
+  private static final int TERM_OVERHEAD_BYTES = 120;
+
+  private final ConcurrentHashMap<String, Postings> postings = new ConcurrentHashMap<>();
+
+  // By document number. Grown (replaced) only by the writer, always before docCount moves
+  private long[] postIds = new long[1024];
+  private short[] lengths = new short[1024];
+  private volatile long totalLength;
+  private volatile long bytes = (8 + 2) * 1024;
+  private volatile int docCount;
+
+  public synchronized void add(long postId, String content) {
+    Map<String, Integer> termFrequencies = new HashMap<>();
+    List<String> terms = terms(content);
+    for (String term : terms) {
+      termFrequencies.merge(term, 1, Integer::sum);
+    }
+
+    int doc = docCount;
+    if (doc == postIds.length) {
+      int capacity = doc + (doc >> 1);
+      bytes += (long) (capacity - doc) * (8 + 2);
+      postIds = Arrays.copyOf(postIds, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+    }
+    postIds[doc] = postId;
+    lengths[doc] = (short) Math.min(terms.size(), Short.MAX_VALUE);
+
+    long added = 0;
+    for (Map.Entry<String, Integer> entry : termFrequencies.entrySet()) {
+      Postings list = postings.get(entry.getKey());
+      if (list == null) {
+        list = new Postings();
+        postings.put(entry.getKey(), list);
+        added += TERM_OVERHEAD_BYTES + 2L * entry.getKey().length();
+      }
+      added += list.append(doc, entry.getValue());
+    }
+    bytes += added;
+    totalLength += terms.size();
+    docCount = doc + 1;
+  }
+
+  /**
+   * The ids of the best matches from {@code offset} on, best first, and how many posts matched
+   * in total. A query without any indexable term matches nothing.
+   */
+  public Hits search(String query, int offset, int limit) {
+    int documents = docCount;
+    if (documents == 0) {
+      return new Hits(List.of(), 0);
+    }
+    // Read after docCount: at least as new as every document below it
+    long[] ids = postIds;
+    short[] docLengths = lengths;
+    float averageLength = Math.max(1f, (float) totalLength / documents);
+    // BM25's length normalisation, K1 * (1 - B + B * length / averageLength), as base + scale * length
+    float normBase = K1 * (1 - B);
+    float normScale = K1 * B / averageLength;
+
+    Set<String> queryTerms = new LinkedHashSet<>(terms(query));
+    List<Cursor> found = new ArrayList<>(queryTerms.size());
+    for (String term : queryTerms) {
+      Postings list = postings.get(term);
+      if (list != null && found.size() < MAX_QUERY_TERMS) {
+        int df = list.docs;
+        float idf = (float) Math.log(1 + (documents - df + 0.5) / (df + 0.5));
+        found.add(new Cursor(list, idf * (K1 + 1), documents));
+      }
+    }
+    if (found.isEmpty()) {
+      return new Hits(List.of(), 0);
+    }
+    Cursor[] cursors = found.toArray(new Cursor[0]);
+
+    int wanted = offset + limit;
+    // The best `wanted` so far, worst on top
+    PriorityQueue<Hit> best = new PriorityQueue<>(Math.max(1, Math.min(wanted, 1024)));
+    int total = 0;
+    while (true) {
+      int doc = Integer.MAX_VALUE;
+      for (Cursor cursor : cursors) {
+        doc = Math.min(doc, cursor.doc);
+      }
+      if (doc == Integer.MAX_VALUE) {
+        break;
+      }
+      float norm = normBase + normScale * docLengths[doc];
+      float score = 0;
+      for (Cursor cursor : cursors) {
+        if (cursor.doc == doc) {
+          score += cursor.weight * cursor.tf / (cursor.tf + norm);
+          cursor.next();
+        }
+      }
+      total++;
+
+      long postId = ids[doc];
+      if (best.size() < wanted) {
+        best.add(new Hit(score, postId));
+      } else if (wanted > 0 && best.peek().isWorseThan(score, postId)) {
+        best.poll();
+        best.add(new Hit(score, postId));
+      }
+    }
+
+    Hit[] ranked = new Hit[best.size()];
+    for (int i = ranked.length - 1; i >= 0; i--) {
+      ranked[i] = best.poll();
+    }
+    List<Long> page = new ArrayList<>(Math.max(0, ranked.length - offset));
+    for (int i = offset; i < ranked.length; i++) {
+      page.add(ranked[i].postId);
+    }
+    return new Hits(page, total);
+  }
+
+  public int size() {
+    return docCount;
+  }
+
+  public int terms() {
+    return postings.size();
+  }
+
+  // Estimate: the arrays this index allocated plus a fixed cost per term
+  public long estimatedBytes() {
+    return bytes;
+  }
+
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("post.search.index.posts", this, PostSearchIndex::size)
+      .description("Posts in the search index")
+      .register(registry);
+    Gauge.builder("post.search.index.terms", this, PostSearchIndex::terms)
+      .description("Distinct terms in the search index")
+      .register(registry);
+    Gauge.builder("post.search.index.bytes", this, PostSearchIndex::estimatedBytes)
+      .description("Estimated heap held by the search index")
+      .baseUnit("bytes")
+      .register(registry);
+  }
+
+  // Lower-cased runs of letters and digits; absurdly long runs (base64, URLs) are left out
+  static List<String> terms(String text) {
+    List<String> terms = new ArrayList<>();
+    if (text == null) {
+      return terms;
+    }
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean inWord = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (inWord && start < 0) {
+        start = i;
+      } else if (!inWord && start >= 0) {
+        if (i - start <= MAX_TERM_LENGTH) {
+          terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        }
+        start = -1;
+      }
+    }
+    return terms;
+  }
+
+  private static final class Postings {
+    // Only the writer touches data and lastDoc; readers read size first, then the first size bytes
+    private byte[] data = new byte[4];
+    private int lastDoc;
+    private volatile int size;
+    private volatile int docs;
+
+    // Returns the bytes newly allocated
+    long append(int doc, int tf) {
+      int position = size;
+      long grown = 0;
+      if (position + 10 > data.length) {
+        int capacity = Math.max(position + 10, data.length + (data.length >> 1));
+        grown = capacity - data.length;
+        data = Arrays.copyOf(data, capacity);
+      }
+      position = writeVarint(data, position, doc - lastDoc);
+      position = writeVarint(data, position, tf);
+      lastDoc = doc;
+      docs++;
+      size = position;
+      return grown;
+    }
+
+    private static int writeVarint(byte[] out, int position, int value) {
+      while ((value & ~0x7F) != 0) {
+        out[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      out[position++] = (byte) value;
+      return position;
+    }
+  }
+
+  // Walks one posting list in document order; doc is Integer.MAX_VALUE once it is used up
+  private static final class Cursor {
+    // The term's idf times (K1 + 1): all of its score that doesn't depend on the document
+    final float weight;
+    private final byte[] data;
+    private final int end;
+    private final int documents;
+    private int position;
+    int doc;
+    int tf;
+
+    Cursor(Postings list, float weight, int documents) {
+      this.weight = weight;
+      this.end = list.size;
+      this.data = list.data;
+      this.documents = documents;
+      next();
+    }
+
+    void next() {
+      if (position >= end) {
+        doc = Integer.MAX_VALUE;
+        return;
+      }
+      int gap = readVarint();
+      tf = readVarint();
+      // Gaps start from document 0, which is also where doc starts
+      doc += gap;
+      if (doc >= documents) {
+        // Added after this search started
+        doc = Integer.MAX_VALUE;
+      }
+    }
+
+    private int readVarint() {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = data[position++];
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+  }
+
+  private record Hit(float score, long postId) implements Comparable<Hit> {
+
+    boolean isWorseThan(float otherScore, long otherPostId) {
+      return score < otherScore || (score == otherScore && postId < otherPostId);
+    }
+
+    // Worst first: lower score, then older post
+    @Override
+    public int compareTo(Hit other) {
+      int byScore = Float.compare(score, other.score);
+      return byScore != 0 ? byScore : Long.compare(postId, other.postId);
+    }
+  }
+}
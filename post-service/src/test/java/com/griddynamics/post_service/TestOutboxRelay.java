@@ -0,0 +1,148 @@
+package com.griddynamics.post_service;
+
+import com.griddynamics.common.MeteredPool;
+import com.griddynamics.common.PostCreatedEvent;
+import com.griddynamics.post_service.entities.Post;
+import com.griddynamics.post_service.repositories.OutboxRepository;
+import com.griddynamics.post_service.repositories.PostRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.jdbcclient.JDBCConnectOptions;
+import io.vertx.jdbcclient.JDBCPool;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.kafka.client.producer.KafkaProducer;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.PoolOptions;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs the outbox relay against Kafka's in-process MockProducer instead of a broker
+@ExtendWith(VertxExtension.class)
+public class TestOutboxRelay {
+
+  private OutboxRepository outboxRepository;
+  private PostRepository postRepository;
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    Pool pool = JDBCPool.pool(vertx, new JDBCConnectOptions()
+      .setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1")
+      .setUser("sa")
+      .setPassword(""), new PoolOptions().setMaxSize(2));
+    MeteredPool dbClient = new MeteredPool(pool);
+    outboxRepository = new OutboxRepository(dbClient);
+    postRepository = new PostRepository(dbClient, outboxRepository);
+    postRepository.initData()
+      .compose(v -> postRepository.save(new Post(7L, "first")))
+      .compose(v -> postRepository.save(new Post(8L, "second")))
+      .compose(v -> postRepository.save(new Post(7L, "third")))
+      .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  void relays_batch_and_deletes_sent_rows(Vertx vertx, VertxTestContext testContext) {
+    MockProducer<String, byte[]> mock = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+    OutboxRelay relay = newRelay(vertx, mock);
+
+    relay.drain()
+      .compose(sent -> outboxRepository.findBatch(10).map(left -> {
+        assertEquals(3, sent);
+        assertEquals(0, left.size());
+        return null;
+      }))
+      .onComplete(testContext.succeeding(v -> testContext.verify(() -> {
+        assertEquals(3, mock.history().size());
+        assertEquals("7", mock.history().get(0).key());
+        PostCreatedEvent first = PostCreatedEvent.decode(mock.history().get(0).value());
+        assertEquals(PostCreatedEvent.CURRENT, first.version());
+        assertEquals(7L, first.authorId());
+        assertEquals(1, first.postCount());
+        assertTrue(first.postId() > 0 && first.createdAtMillis() > 0);
+        assertEquals(8L, PostCreatedEvent.decode(mock.history().get(1).value()).authorId());
+        testContext.completeNow();
+      })));
+  }
+
+  @Test
+  void bulk_insert_sends_one_event_per_author(Vertx vertx, VertxTestContext testContext) {
+    MockProducer<String, byte[]> mock = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+    OutboxRelay relay = newRelay(vertx, mock);
+    List<Post> posts = List.of(new Post(7L, "a"), new Post(9L, "b"), new Post(7L, "c"), new Post(7L, "d"));
+
+    relay.drain()
+      .compose(v -> postRepository.saveAll(posts))
+      .compose(v -> relay.drain())
+      .onComplete(testContext.succeeding(sent -> testContext.verify(() -> {
+        assertEquals(2, sent);
+        assertTrue(posts.get(0).getId() < posts.get(1).getId() && posts.get(2).getId() < posts.get(3).getId());
+        ProducerRecord<String, byte[]> author7 = mock.history().get(3);
+        ProducerRecord<String, byte[]> author9 = mock.history().get(4);
+        assertEquals("7", author7.key());
+        PostCreatedEvent event7 = PostCreatedEvent.decode(author7.value());
+        assertEquals(3, event7.postCount());
+        assertEquals(posts.get(3).getId().longValue(), event7.postId());
+        assertEquals(1, PostCreatedEvent.decode(author9.value()).postCount());
+        assertNull(author9.headers().lastHeader(KafkaProducerService.POST_COUNT_HEADER));
+        testContext.completeNow();
+      })));
+  }
+
+  @Test
+  void keeps_rows_when_send_fails(Vertx vertx, VertxTestContext testContext) {
+    MockProducer<String, byte[]> mock = new MockProducer<>(false, new StringSerializer(), new ByteArraySerializer());
+    OutboxRelay relay = newRelay(vertx, mock);
+
+    relay.drain()
+      .onComplete(ar -> outboxRepository.findBatch(10)
+        .onComplete(testContext.succeeding(left -> testContext.verify(() -> {
+          assertEquals(true, ar.failed());
+          assertEquals(3, left.size());
+          testContext.completeNow();
+        }))));
+
+    // Fail the sends once the relay has handed them to the producer
+    vertx.setPeriodic(10, id -> {
+      if (mock.history().size() == 3) {
+        vertx.cancelTimer(id);
+        while (mock.errorNext(new RuntimeException("broker down"))) {
+          // fail every pending send
+        }
+      }
+    });
+  }
+
+  @Test
+  void legacy_format_still_sends_author_id_string(Vertx vertx, VertxTestContext testContext) {
+    MockProducer<String, byte[]> mock = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+    KafkaProducerService producer =
+      new KafkaProducerService(KafkaProducer.create(vertx, mock), new SimpleMeterRegistry(), false);
+    OutboxRelay relay = new OutboxRelay(vertx, outboxRepository, producer, 100, 60_000);
+
+    relay.drain()
+      .onComplete(testContext.succeeding(sent -> testContext.verify(() -> {
+        assertEquals("7", new String(mock.history().get(0).value()));
+        PostCreatedEvent legacy = PostCreatedEvent.decode(mock.history().get(0).value());
+        assertEquals(PostCreatedEvent.LEGACY, legacy.version());
+        assertEquals(7L, legacy.authorId());
+        testContext.completeNow();
+      })));
+  }
+
+  private OutboxRelay newRelay(Vertx vertx, MockProducer<String, byte[]> mock) {
+    KafkaProducerService producer = new KafkaProducerService(KafkaProducer.create(vertx, mock), new SimpleMeterRegistry());
+    return new OutboxRelay(vertx, outboxRepository, producer, 100, 60_000);
+  }
+}
@@ -0,0 +1,177 @@
+package com.griddynamics.post_service.repositories;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestPostSearchIndex {
+
+  @Test
+  void terms_are_lower_cased_runs_of_letters_and_digits() {
+    assertEquals(List.of("hello", "world", "hello", "world", "42x", "grüße"),
+      PostSearchIndex.terms("Hello, World! hello-WORLD  42x\tGRÜßE"));
+    assertEquals(List.of(), PostSearchIndex.terms(null));
+    assertEquals(List.of(), PostSearchIndex.terms(" ,.!? "));
+  }
+
+  @Test
+  void terms_longer_than_40_characters_are_left_out() {
+    String forty = "a".repeat(40);
+    String fortyOne = "b".repeat(41);
+    assertEquals(List.of(forty, "x"), PostSearchIndex.terms(forty + " " + fortyOne + " x"));
+
+    PostSearchIndex index = new PostSearchIndex();
+    index.add(1, forty + " " + fortyOne);
+    assertEquals(List.of(1L), index.search(forty, 0, 10).postIds());
+    assertEquals(0, index.search(fortyOne, 0, 10).total());
+  }
+
+  @Test
+  void query_without_known_terms_matches_nothing() {
+    PostSearchIndex index = new PostSearchIndex();
+    assertEquals(0, index.search("anything", 0, 10).total());
+    index.add(1, "hello world");
+    assertEquals(0, index.search("", 0, 10).total());
+    assertEquals(0, index.search("?!", 0, 10).total());
+    assertEquals(0, index.search("goodbye", 0, 10).total());
+  }
+
+  @Test
+  void more_of_the_terms_rank_higher() {
+    PostSearchIndex index = new PostSearchIndex();
+    index.add(1, "apple banana cherry");
+    index.add(2, "apple other words");
+    index.add(3, "banana other words");
+    index.add(4, "nothing to see");
+
+    PostSearchIndex.Hits hits = index.search("apple banana", 0, 10);
+    assertEquals(3, hits.total());
+    assertEquals(1L, hits.postIds().get(0).longValue());
+  }
+
+  @Test
+  void rarer_terms_rank_higher() {
+    PostSearchIndex index = new PostSearchIndex();
+    // "common" is in every post, "rare" in one
+    index.add(1, "common rare");
+    index.add(2, "common common");
+    index.add(3, "common filler");
+    index.add(4, "common filler");
+
+    assertEquals(List.of(1L, 2L, 4L, 3L), index.search("common rare", 0, 10).postIds());
+    assertEquals(List.of(1L), index.search("RARE", 0, 10).postIds());
+  }
+
+  @Test
+  void shorter_posts_rank_higher() {
+    PostSearchIndex index = new PostSearchIndex();
+    index.add(1, "needle in a very long haystack of many other words");
+    index.add(2, "needle alone");
+
+    assertEquals(List.of(2L, 1L), index.search("needle", 0, 10).postIds());
+  }
+
+  @Test
+  void equal_scores_put_newer_posts_first() {
+    PostSearchIndex index = new PostSearchIndex();
+    for (long id = 1; id <= 5; id++) {
+      index.add(id, "same words");
+    }
+    assertEquals(List.of(5L, 4L, 3L, 2L, 1L), index.search("same", 0, 10).postIds());
+  }
+
+  @Test
+  void pages_follow_the_ranking_and_total_counts_every_match() {
+    PostSearchIndex index = new PostSearchIndex();
+    for (long id = 1; id <= 30; id++) {
+      index.add(id, "match");
+      index.add(100 + id, "no hit here");
+    }
+
+    PostSearchIndex.Hits first = index.search("match", 0, 10);
+    assertEquals(30, first.total());
+    assertEquals(descending(30, 21), first.postIds());
+
+    PostSearchIndex.Hits middle = index.search("match", 10, 5);
+    assertEquals(30, middle.total());
+    assertEquals(descending(20, 16), middle.postIds());
+
+    PostSearchIndex.Hits last = index.search("match", 25, 10);
+    assertEquals(30, last.total());
+    assertEquals(descending(5, 1), last.postIds());
+
+    PostSearchIndex.Hits past = index.search("match", 30, 10);
+    assertEquals(30, past.total());
+    assertEquals(List.of(), past.postIds());
+
+    assertEquals(30, index.search("match", 0, 0).total());
+    assertEquals(List.of(), index.search("match", 0, 0).postIds());
+  }
+
+  @Test
+  void counts_and_size_estimate_grow_with_the_index() {
+    PostSearchIndex index = new PostSearchIndex();
+    long empty = index.estimatedBytes();
+    for (long id = 1; id <= 2000; id++) {
+      index.add(id, "post number " + id);
+    }
+    assertEquals(2000, index.size());
+    assertEquals(2002, index.terms());
+    assertTrue(index.estimatedBytes() > empty);
+  }
+
+  // Every post is the same, so a search sees posts 1..total, newest first, unless it saw one of
+  // them only in part (a missing term or length would change its score) or one past its snapshot
+  @Test
+  void search_running_during_adds_sees_only_whole_posts() throws Exception {
+    PostSearchIndex index = new PostSearchIndex();
+    int posts = 50_000;
+    CountDownLatch started = new CountDownLatch(1);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    Thread writer = new Thread(() -> {
+      started.countDown();
+      for (long id = 1; id <= posts; id++) {
+        index.add(id, "alpha beta gamma alpha");
+      }
+    });
+    writer.start();
+    started.await();
+
+    int lastTotal = 0;
+    int searches = 0;
+    while (writer.isAlive() || searches == 0) {
+      int before = index.size();
+      PostSearchIndex.Hits hits = index.search("alpha gamma", 0, 20);
+      int after = index.size();
+      try {
+        assertTrue(hits.total() >= before && hits.total() <= after, "total outside the adds around it");
+        assertTrue(hits.total() >= lastTotal, "total went back");
+        assertEquals(descending(hits.total(), Math.max(1, hits.total() - 19)), hits.postIds());
+      } catch (Throwable e) {
+        failure.compareAndSet(null, e);
+        break;
+      }
+      lastTotal = hits.total();
+      searches++;
+    }
+    writer.join();
+
+    assertNull(failure.get());
+    assertEquals(posts, index.search("beta", 0, 1).total());
+  }
+
+  private static List<Long> descending(long from, long to) {
+    List<Long> ids = new ArrayList<>();
+    LongStream.rangeClosed(to, from).map(i -> from + to - i).forEach(ids::add);
+    return ids;
+  }
+}
@@ -9,25 +9,12 @@ const Home = () => {
 
   const fetchPosts = async () => {
     try {
-      const res = await axios.get('http://localhost:8080/posts');
-      const allPosts = await Promise.all(res.data.map(async (post) => {
-        const authorName = await fetchAuthorName(post.authorId);
-        return { ...post, authorName };
-      }));
-      setPosts(allPosts);
+      // The gateway attaches each post's author, so there is no lookup per post here
+      const res = await axios.get('http://localhost:8080/feed');
+      setPosts(res.data.posts);
     } catch (err) { console.error("Error fetching posts:", err); }
   };
 
-  const fetchAuthorName = async (id) => {
-    try {
-      const res = await axios.get(`http://localhost:8080/users/${id}`);
-      return res.data.username;
-    } catch (err) {
-      console.error("Error fetching username:", err);
-      return "Unknown";
-    }
-  }
-
   const createPost = async (e) => {
     e.preventDefault();
     if (!content) return;
@@ -76,7 +63,7 @@ const Home = () => {
                   <div className="w-8 h-8 bg-blue-100 rounded-full flex items-center justify-center text-blue-600 font-bold mr-3">
                     {post.authorId}
                   </div>
-                  <span className="font-semibold text-gray-700">{post.authorName}</span>
+                  <span className="font-semibold text-gray-700">{post.author?.username ?? "Unknown"}</span>
                 </div>
                 <p className="text-gray-800 leading-relaxed">{post.content}</p>
               </div>
@@ -0,0 +1,292 @@
+package com.griddynamics.user_service;
+
+import com.griddynamics.common.CollectionVersion;
+import com.griddynamics.common.Log;
+import com.griddynamics.common.LogWriter;
+import com.griddynamics.common.ServiceMetrics;
+import com.griddynamics.user_service.entities.User;
+import com.griddynamics.user_service.repositories.UserRepository;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.JWTOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.BodyHandler;
+import io.vertx.ext.web.handler.CorsHandler;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The HTTP side of user-service. {@link MainVerticle} deploys several instances of it, each on
+ * its own event loop, all listening on port 8888 and sharing the repository, hasher and JWT setup.
+ */
+public class HttpServerVerticle extends AbstractVerticle {
+
+  private static final Log LOG = Log.get("http");
+  // Keeps the IN list (and the statement H2 has to parse) bounded
+  private static final int MAX_IDS_PER_LOOKUP = 500;
+
+  private final UserRepository userRepository;
+  private final KafkaConsumerService kafkaConsumer;
+  private final JWTAuth jwtAuth;
+  private final PasswordHasher passwordHasher;
+  private final ServiceMetrics metrics;
+
+  public HttpServerVerticle(UserRepository userRepository, KafkaConsumerService kafkaConsumer,
+                            JWTAuth jwtAuth, PasswordHasher passwordHasher, ServiceMetrics metrics) {
+    this.userRepository = userRepository;
+    this.kafkaConsumer = kafkaConsumer;
+    this.jwtAuth = jwtAuth;
+    this.passwordHasher = passwordHasher;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void start(Promise<Void> startPromise) {
+    startHttpServer().onComplete(startPromise);
+  }
+
+  private Future<Void> startHttpServer() {
+    Router router = Router.router(vertx);
+
+    // Times every request, including CORS preflights and errors
+    router.route().handler(metrics.routeTimer());
+
+    // ---------------------------------------------------------
+    // 1. ADD CORS HANDLER (Must be first!)
+    // ---------------------------------------------------------
+    Set<String> allowedHeaders = new HashSet<>();
+    allowedHeaders.add("x-requested-with");
+    allowedHeaders.add("Access-Control-Allow-Origin");
+    allowedHeaders.add("origin");
+    allowedHeaders.add("Content-Type");
+    allowedHeaders.add("accept");
+    allowedHeaders.add("Authorization");
+
+    Set<HttpMethod> allowedMethods = new HashSet<>();
+    allowedMethods.add(HttpMethod.GET);
+    allowedMethods.add(HttpMethod.POST);
+    allowedMethods.add(HttpMethod.OPTIONS);
+    allowedMethods.add(HttpMethod.PUT);
+
+    // Allow requests from your Frontend URL (or "*" for all)
+    router.route().handler(CorsHandler.create()
+      .addOrigin("http://localhost:5173")
+      .allowedHeaders(allowedHeaders)
+      .allowedMethods(allowedMethods));
+    // ---------------------------------------------------------
+
+    router.route().handler(BodyHandler.create());
+
+    // Routes
+    router.get("/health").handler(ctx -> ctx.json(new JsonObject().put("status", "UP")));
+    router.post("/register").handler(this::registerUser);
+    router.post("/login").handler(this::loginUser);
+    router.get("/users").handler(this::getAllUsers);
+    router.get("/users/:id").handler(this::getUserById);
+    router.get("/stats").handler(this::getStats);
+    router.get("/metrics").handler(metrics::scrape);
+
+    return vertx.createHttpServer()
+      .requestHandler(router)
+      .listen(8888)
+      .mapEmpty(); // Converts Future<HttpServer> to Future<Void>
+  }
+
+  // --- Handlers ---
+
+  private void registerUser(RoutingContext ctx) {
+    JsonObject body = ctx.body().asJsonObject();
+
+    if (body == null || body.getString("username") == null) {
+      ctx.response().setStatusCode(400).end("Username is required");
+      return;
+    }
+    if (body.getString("password") == null) {
+      ctx.response().setStatusCode(400).end("Password is required");
+      return;
+    }
+
+    // Hash off the event loop, then store only the hash
+    passwordHasher.hash(body.getString("password"))
+      .compose(hash -> userRepository.save(new User(
+        body.getString("username"),
+        body.getString("email"),
+        hash
+      )))
+      .onSuccess(v -> ctx.response().setStatusCode(201).end(new JsonObject().put("message", "User Registered").encode()))
+      .onFailure(err -> failRequest(ctx, err));
+  }
+
+  private void loginUser(RoutingContext ctx) {
+    JsonObject body = ctx.body().asJsonObject();
+    if (body == null) {
+      ctx.response().setStatusCode(400).end("Username and password are required");
+      return;
+    }
+    String username = body.getString("username");
+    String password = body.getString("password");
+
+    userRepository.findByUsername(username)
+      .compose(user -> {
+        if (user == null) {
+          return Future.succeededFuture((User) null);
+        }
+        return passwordHasher.verify(password, user.getPassword())
+          .map(matches -> matches ? user : null);
+      })
+      .onSuccess(user -> {
+        if (user == null) {
+          ctx.response().setStatusCode(401).end(new JsonObject().put("message", "Invalid Credentials").encode());
+        } else {
+          // Plain-text (or outdated) row: upgrade it now that we know the password
+          if (passwordHasher.needsRehash(user.getPassword())) {
+            migratePassword(user, password);
+          }
+
+          // ✨ Generate JWT Token ✨
+          String token = jwtAuth.generateToken(
+            new JsonObject()
+              .put("sub", user.getUsername())  // Subject (Username)
+              .put("userId", user.getId()),    // Custom Claim (User ID)
+            new JWTOptions().setExpiresInSeconds(3600) // Expires in 1 hour
+          );
+
+          // Return Token to Client
+          ctx.json(new JsonObject()
+            .put("message", "Login Success")
+            .put("token", token)
+            .put("userId", user.getId())
+            .put("username", user.getUsername())
+          );
+        }
+      })
+      .onFailure(err -> failRequest(ctx, err));
+  }
+
+  private void migratePassword(User user, String password) {
+    passwordHasher.hash(password)
+      .compose(hash -> userRepository.updatePassword(user.getId(), hash))
+      .onSuccess(v -> LOG.info("Migrated password hash", "userId", user.getId()))
+      .onFailure(err -> LOG.warn("Password migration failed", "userId", user.getId(), "error", err));
+  }
+
+  private void failRequest(RoutingContext ctx, Throwable err) {
+    if (err instanceof RejectedExecutionException) {
+      // Hashing pool is saturated: tell the client to back off instead of queueing forever
+      ctx.response().setStatusCode(503).putHeader("Retry-After", "1").end("Server busy, try again");
+    } else {
+      ctx.response().setStatusCode(500).end(err.getMessage());
+    }
+  }
+
+  private void getAllUsers(RoutingContext ctx) {
+    // ?ids=1,2,3 -> just those users, in one query (used by the gateway's /feed)
+    String idsParam = ctx.request().getParam("ids");
+    if (idsParam != null) {
+      getUsersByIds(ctx, idsParam);
+      return;
+    }
+
+    String etag = userRepository.version().etag();
+    if (isNotModified(ctx, etag)) {
+      return;
+    }
+    userRepository.findAll()
+      .onSuccess(users -> tagged(ctx, etag).json(User.toJsonArray(users)))
+      .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+  }
+
+  private void getUsersByIds(RoutingContext ctx, String idsParam) {
+    Set<Long> ids = new LinkedHashSet<>();
+    try {
+      for (String id : idsParam.split(",")) {
+        if (!id.isBlank()) {
+          ids.add(Long.parseLong(id.trim()));
+        }
+      }
+    } catch (NumberFormatException e) {
+      ctx.response().setStatusCode(400).end("Invalid User ID");
+      return;
+    }
+    if (ids.size() > MAX_IDS_PER_LOOKUP) {
+      ctx.response().setStatusCode(400).end("At most " + MAX_IDS_PER_LOOKUP + " ids per request");
+      return;
+    }
+    if (ids.isEmpty()) {
+      ctx.json(new JsonArray());
+      return;
+    }
+
+    String etag = userRepository.version().etag();
+    if (isNotModified(ctx, etag)) {
+      return;
+    }
+    userRepository.findByIds(ids)
+      .onSuccess(users -> tagged(ctx, etag).json(User.toJsonArray(users)))
+      .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+  }
+
+  // Conditional GET: the client's copy is still current, so answer 304 without a query
+  private static boolean isNotModified(RoutingContext ctx, String etag) {
+    if (!CollectionVersion.matches(ctx.request().getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+      return false;
+    }
+    tagged(ctx, etag).response().setStatusCode(304).end();
+    return true;
+  }
+
+  // no-cache: clients may keep the list, but must revalidate it before each use
+  private static RoutingContext tagged(RoutingContext ctx, String etag) {
+    ctx.response()
+      .putHeader(HttpHeaders.ETAG, etag)
+      .putHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+    return ctx;
+  }
+
+  private void getStats(RoutingContext ctx) {
+    JsonObject stats = new JsonObject()
+      .put("kafkaConsumer", kafkaConsumer.stats())
+      .put("passwordHasher", passwordHasher.toJson())
+      .put("log", LogWriter.instance().toJson());
+    if (userRepository.cache() != null) {
+      stats.put("userCache", userRepository.cache().toJson());
+    }
+    ctx.json(stats);
+  }
+
+  private void getUserById(RoutingContext ctx) {
+    String idParam = ctx.pathParam("id");
+    Long userId;
+    try {
+      userId = Long.parseLong(idParam);
+    } catch (NumberFormatException e) {
+      ctx.response().setStatusCode(400).end("Invalid User ID");
+      return;
+    }
+
+    userRepository.findById(userId)
+      .onSuccess(user -> {
+        if (user == null) {
+          ctx.response().setStatusCode(404).end("User Not Found");
+        } else {
+          JsonObject cleanUser = new JsonObject()
+            .put("id", user.getId())
+            .put("username", user.getUsername())
+            .put("email", user.getEmail()); // Add other safe fields
+
+          ctx.json(cleanUser);
+        }
+      })
+      .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+  }
+}
@@ -1,20 +1,138 @@
 package com.griddynamics.user_service;
 
+import com.griddynamics.common.Env;
+import com.griddynamics.common.Log;
+import com.griddynamics.common.PostCreatedEvent;
 import com.griddynamics.user_service.repositories.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.kafka.KafkaClientMetrics;
+import io.vertx.core.Future;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.kafka.client.common.TopicPartition;
 import io.vertx.kafka.client.consumer.KafkaConsumer;
+import io.vertx.kafka.client.consumer.KafkaConsumerRecord;
+import io.vertx.kafka.client.consumer.KafkaConsumerRecords;
+import io.vertx.kafka.client.consumer.OffsetAndMetadata;
+import io.vertx.kafka.client.producer.KafkaHeader;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Applies post-created events to the authors' post counts.
+ * <p>
+ * Every partition is a lane. A lane writes its records in offset order, one batched update at a
+ * time, and commits its offset after each write. Each write also stores the partition's offset in
+ * the DB, in the same transaction as the counts. Events are keyed by author, so one user's events
+ * are applied in order. Records that arrive while the lane is writing are summed into its next
+ * write. Lanes write concurrently, up to {@code KAFKA_MAX_CONCURRENT_WRITES}. Beyond the first
+ * write, a new one also waits while requests are queued for a DB connection, so a backlog can't
+ * crowd out the HTTP traffic.
+ * <p>
+ * Polling never stops, because the group drops a consumer that stops polling. Once
+ * {@code KAFKA_MAX_IN_FLIGHT_RECORDS} records are fetched but not committed, every assigned
+ * partition is paused: polls keep the membership alive without fetching more. Fetching resumes
+ * once half of those records are done. A failed write is retried on its own lane after a pause
+ * while the other lanes carry on.
+ * <p>
+ * Kafka delivers at least once: a write can land without its offset commit (a crash in between,
+ * or the partition revoked mid-write), and the next owner then gets those records again. Its
+ * write overlaps the DB's offset, so it changes nothing; the lane drops what it holds and seeks
+ * the partition back to the DB's offset. Post counts are therefore applied exactly once, also
+ * when a partition briefly has two lanes (an old one still writing after a rebalance).
+ */
 public class KafkaConsumerService {
 
-  private KafkaConsumer<String, String> consumer;
-  private UserRepository userRepository;
+  private static final String TOPIC = "post-created-topic";
+  private static final long RETRY_BACKOFF_MS = 1000;
+  // Legacy (string) events only: set when one event stands for several posts of the author (bulk import)
+  private static final String POST_COUNT_HEADER = "post-count";
 
-  public KafkaConsumerService(Vertx vertx, UserRepository userRepository) {
+  private static final Log LOG = Log.get("kafka.consumer");
+  // Per-batch and per-record lines; capped so a burst of events can't flood the log
+  private static final Log BATCHES = Log.get("kafka.consumer.batch", 10);
+  private static final Log RECORDS = Log.get("kafka.consumer.record", 10);
+
+  private final Vertx vertx;
+  private final KafkaConsumer<String, byte[]> consumer;
+  private final UserRepository userRepository;
+  private final Duration pollTimeout;
+  private final int maxInFlightRecords;
+  private final int maxConcurrentWrites;
+
+  // Lanes and the flow control below: only changed on the consumer's context (volatile for /stats)
+  private final Map<TopicPartition, Lane> lanes = new HashMap<>();
+  // Lanes with records waiting and nothing being written, oldest first
+  private final ArrayDeque<Lane> ready = new ArrayDeque<>();
+  private volatile int inFlightRecords;
+  private volatile int activeWrites;
+  private volatile boolean paused;
+
+  // Batch stats: written on the consumer's context, read by /stats from any HTTP event loop (guarded by this)
+  private long batches;
+  private long records;
+  private long lastBatchSize;
+  private long maxBatchSize;
+  private long lastFlushMs;
+  private long maxFlushMs;
+  private long totalFlushMs;
+  private long failedFlushes;
+  private long pauses;
+
+  // Prometheus side of the same numbers; lag comes from the Kafka client's own metrics
+  private final Counter recordsCounter;
+  private final DistributionSummary batchSizes;
+  private final Timer flushTimer;
+  private final Timer failedFlushTimer;
+  private final Counter pausesCounter;
+
+  public KafkaConsumerService(Vertx vertx, UserRepository userRepository, MeterRegistry registry) {
+    this(vertx, userRepository, createConsumer(vertx), registry);
+  }
+
+  // Lets tests and the load harness plug in an in-process consumer instead of a broker
+  public KafkaConsumerService(Vertx vertx, UserRepository userRepository, KafkaConsumer<String, byte[]> consumer,
+                              MeterRegistry registry) {
+    this.vertx = vertx;
     this.userRepository = userRepository;
+    this.consumer = consumer;
+    this.pollTimeout = Duration.ofMillis(Env.longValue("KAFKA_POLL_TIMEOUT_MS", 100));
+    this.maxInFlightRecords = Env.integer("KAFKA_MAX_IN_FLIGHT_RECORDS", 5000);
+    this.maxConcurrentWrites = Env.integer("KAFKA_MAX_CONCURRENT_WRITES", 2);
 
-    // 1. Configure Consumer
+    recordsCounter = Counter.builder("kafka.consumer.records")
+      .description("Post-created events applied to post counts")
+      .register(registry);
+    batchSizes = DistributionSummary.builder("kafka.consumer.batch.size")
+      .description("Events per batched update")
+      .register(registry);
+    flushTimer = Timer.builder("kafka.consumer.batch.processing")
+      .description("Time to write one batch of increments to the DB")
+      .tag("outcome", "success")
+      .register(registry);
+    failedFlushTimer = Timer.builder("kafka.consumer.batch.processing")
+      .tag("outcome", "failure")
+      .register(registry);
+    Gauge.builder("kafka.consumer.in.flight", this, service -> service.inFlightRecords)
+      .description("Events fetched but not committed yet")
+      .register(registry);
+    pausesCounter = Counter.builder("kafka.consumer.pauses")
+      .description("Times fetching was paused because too many events were in flight")
+      .register(registry);
+    // records-lag-max, fetch latency, commit rate... straight from the Kafka client
+    new KafkaClientMetrics(consumer.unwrap()).bindTo(registry);
+  }
+
+  // 1. Configure Consumer
+  private static KafkaConsumer<String, byte[]> createConsumer(Vertx vertx) {
     Map<String, String> config = new HashMap<>();
 
     String kafkaBroker = System.getenv("KAFKA_BROKER");
@@ -23,36 +141,309 @@ public class KafkaConsumerService {
       kafkaBroker = "localhost:9092";
     }
 
-    System.out.println(">>> KAFKA CONFIG: Connecting to " + kafkaBroker);
+    LOG.info("Kafka consumer configured", "bootstrapServers", kafkaBroker);
     config.put("bootstrap.servers", kafkaBroker);
     config.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
-    config.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+    // Raw bytes: PostCreatedEvent tells the binary envelope and the legacy string apart
+    config.put("value.deserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer");
     config.put("group.id", "user-service-group"); // Important for tracking offsets
     config.put("auto.offset.reset", "earliest");
+    // Offsets are committed by hand, per partition, only once its records are in the DB
+    config.put("enable.auto.commit", "false");
+    config.put("max.poll.records", Env.string("KAFKA_MAX_POLL_RECORDS", "500"));
 
-    this.consumer = KafkaConsumer.create(vertx, config);
-    this.consumer.subscribe("post-created-topic");
-    // 2. Register Handler
-    consumer.handler(record -> {
-      System.out.println(">>> Kafka Message Received. User ID: " + record.value());
+    return KafkaConsumer.create(vertx, config);
+  }
 
-      try {
-        Long userId = Long.parseLong(record.value());
+  // 2. Subscribe to Topic and start the poll loop
+  public void start() {
+    consumer.partitionsRevokedHandler(this::revoke);
+    consumer.subscribe(TOPIC)
+      .onSuccess(v -> {
+        LOG.info("Subscribed to Kafka topic", "topic", TOPIC, "maxInFlightRecords", maxInFlightRecords,
+          "maxConcurrentWrites", maxConcurrentWrites);
+        poll();
+      })
+      .onFailure(err -> LOG.error("Kafka subscribe failed", "topic", TOPIC, "error", err));
+  }
 
-        // 3. Update DB
-        userRepository.incrementPostCount(userId)
-          .onSuccess(v -> System.out.println(">>> User " + userId + " post_count updated!"))
-          .onFailure(err -> System.err.println(">>> DB Update failed: " + err.getMessage()));
+  public synchronized JsonObject stats() {
+    return new JsonObject()
+      .put("batches", batches)
+      .put("records", records)
+      .put("lastBatchSize", lastBatchSize)
+      .put("maxBatchSize", maxBatchSize)
+      .put("avgBatchSize", batches == 0 ? 0 : records / batches)
+      .put("lastFlushMs", lastFlushMs)
+      .put("maxFlushMs", maxFlushMs)
+      .put("avgFlushMs", batches == 0 ? 0 : totalFlushMs / batches)
+      .put("failedFlushes", failedFlushes)
+      .put("inFlightRecords", inFlightRecords)
+      .put("activeWrites", activeWrites)
+      .put("paused", paused)
+      .put("pauses", pauses);
+  }
 
-      } catch (NumberFormatException e) {
-        System.err.println("Invalid User ID in message: " + record.value());
+  // 3. Poll -> hand records to their lanes -> start writes -> pause or resume -> poll again.
+  // The pause is queued on the consumer before the next poll, so that poll already honours it.
+  private void poll() {
+    consumer.poll(pollTimeout)
+      .onSuccess(batch -> {
+        enqueue(batch);
+        dispatch();
+        applyBackpressure()
+          .onFailure(err -> LOG.warn("Kafka pause/resume failed", "error", err))
+          .onComplete(ar -> poll());
+      })
+      .onFailure(err -> {
+        LOG.warn("Kafka poll failed", "error", err);
+        vertx.setTimer(RETRY_BACKOFF_MS, id -> poll());
+      });
+  }
+
+  private void enqueue(KafkaConsumerRecords<String, byte[]> batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      KafkaConsumerRecord<String, byte[]> record = batch.recordAt(i);
+      TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+      Lane lane = lanes.computeIfAbsent(partition, Lane::new);
+      // Already in the DB, or fetched again after a seek back
+      if (record.offset() < lane.nextOffset) {
+        continue;
+      }
+      lane.nextOffset = record.offset() + 1;
+      if (lane.waiting == null) {
+        lane.waiting = new Chunk();
       }
+      lane.waiting.add(record);
+      inFlightRecords++;
+      markReady(lane);
+    }
+  }
+
+  private void markReady(Lane lane) {
+    if (!lane.queued && !lane.busy && lane.waiting != null) {
+      lane.queued = true;
+      ready.add(lane);
+    }
+  }
+
+  // Starts writes, oldest ready lane first, as far as the write limit and the DB pool allow
+  private void dispatch() {
+    while (!ready.isEmpty() && activeWrites < maxConcurrentWrites
+      && (activeWrites == 0 || userRepository.connectionsWaiting() == 0)) {
+      Lane lane = ready.poll();
+      lane.queued = false;
+      if (lane.revoked || lane.busy || lane.waiting == null) {
+        continue;
+      }
+      Chunk chunk = lane.waiting;
+      lane.waiting = null;
+      write(lane, chunk);
+    }
+  }
+
+  private void write(Lane lane, Chunk chunk) {
+    lane.busy = true;
+    activeWrites++;
+    long start = System.nanoTime();
+    Future<Boolean> write = userRepository.applyPostCounts(lane.partition.getTopic(),
+      lane.partition.getPartition(), chunk.firstOffset, chunk.lastOffset + 1, chunk.increments);
+
+    write.onComplete(ar -> {
+      activeWrites--;
+      long flushNanos = System.nanoTime() - start;
+      if (ar.succeeded() && !ar.result()) {
+        inFlightRecords -= chunk.records;
+        resync(lane);
+      } else if (ar.succeeded()) {
+        inFlightRecords -= chunk.records;
+        lane.busy = false;
+        long flushMs = flushNanos / 1_000_000;
+        recordBatch(chunk.records, flushMs);
+        flushTimer.record(flushNanos, TimeUnit.NANOSECONDS);
+        recordsCounter.increment(chunk.records);
+        batchSizes.record(chunk.records);
+        BATCHES.info("Applied post-created events", "partition", lane.partition.getPartition(),
+          "events", chunk.records, "users", chunk.increments.size(), "flushMs", flushMs);
+        if (!lane.revoked) {
+          commit(lane, chunk.lastOffset + 1);
+          markReady(lane);
+        }
+      } else {
+        recordFailedFlush();
+        failedFlushTimer.record(flushNanos, TimeUnit.NANOSECONDS);
+        LOG.warn("DB batch update failed, will retry", "partition", lane.partition.getPartition(),
+          "events", chunk.records, "error", ar.cause());
+        retryLater(lane, chunk);
+      }
+      dispatch();
     });
   }
 
-  // 3. Subscribe to Topic
-  public void start() {
-    consumer.subscribe("post-created-topic")
-      .onSuccess(v -> System.out.println(">>> Subscribed to Kafka topic: post-created-topic"));
+  // The failed chunk goes back in front of whatever arrived since; the lane stays busy meanwhile
+  private void retryLater(Lane lane, Chunk failed) {
+    if (lane.waiting != null) {
+      failed.merge(lane.waiting);
+    }
+    lane.waiting = failed;
+    if (lane.revoked) {
+      inFlightRecords -= failed.records;
+      lane.waiting = null;
+      lane.busy = false;
+      return;
+    }
+    vertx.setTimer(RETRY_BACKOFF_MS, id -> {
+      lane.busy = false;
+      markReady(lane);
+      dispatch();
+    });
+  }
+
+  // Some of the lane's records were already in the DB: drop everything it holds and read the
+  // partition again from the DB's offset. The lane takes no records until the seek is done.
+  private void resync(Lane lane) {
+    lane.busy = true;
+    lane.nextOffset = Long.MAX_VALUE;
+    dropWaiting(lane);
+    if (lane.revoked) {
+      return;
+    }
+    userRepository.appliedOffset(lane.partition.getTopic(), lane.partition.getPartition())
+      .compose(offset -> consumer.seek(lane.partition, offset).map(offset))
+      .onSuccess(offset -> {
+        LOG.info("Post-created events replayed, skipped them", "partition", lane.partition.getPartition(),
+          "resumeAt", offset);
+        // Records polled before the seek went through are fetched again after it
+        dropWaiting(lane);
+        lane.nextOffset = offset;
+        lane.busy = false;
+        if (!lane.revoked) {
+          commit(lane, offset);
+        }
+      })
+      .onFailure(err -> {
+        LOG.warn("Could not seek back to the applied offset, will retry", "partition", lane.partition.getPartition(),
+          "error", err);
+        vertx.setTimer(RETRY_BACKOFF_MS, id -> resync(lane));
+      });
+  }
+
+  private void dropWaiting(Lane lane) {
+    if (lane.waiting != null) {
+      inFlightRecords -= lane.waiting.records;
+      lane.waiting = null;
+    }
+  }
+
+  private void commit(Lane lane, long nextOffset) {
+    consumer.commit(Map.of(lane.partition, new OffsetAndMetadata(nextOffset, null)))
+      .onFailure(err -> LOG.warn("Offset commit failed, will be retried with the next batch",
+        "partition", lane.partition.getPartition(), "error", err));
+  }
+
+  // Another consumer reads these partitions from their last commit now; drop what was queued for them
+  private void revoke(Set<TopicPartition> partitions) {
+    for (TopicPartition partition : partitions) {
+      Lane lane = lanes.remove(partition);
+      if (lane == null) {
+        continue;
+      }
+      lane.revoked = true;
+      dropWaiting(lane);
+    }
+  }
+
+  // Pausing covers every assigned partition, newly assigned ones included, for as long as it lasts
+  private Future<Void> applyBackpressure() {
+    if (inFlightRecords >= maxInFlightRecords) {
+      if (!paused) {
+        paused = true;
+        recordPause();
+        pausesCounter.increment();
+        LOG.info("Pausing Kafka fetches", "inFlightRecords", inFlightRecords);
+      }
+      return consumer.assignment().compose(consumer::pause);
+    }
+    if (paused && inFlightRecords <= maxInFlightRecords / 2) {
+      paused = false;
+      LOG.info("Resuming Kafka fetches", "inFlightRecords", inFlightRecords);
+      return consumer.paused().compose(consumer::resume);
+    }
+    return Future.succeededFuture();
+  }
+
+  private static int postCount(KafkaConsumerRecord<String, byte[]> record) {
+    for (KafkaHeader header : record.headers()) {
+      if (POST_COUNT_HEADER.equals(header.key())) {
+        return Integer.parseInt(header.value().toString());
+      }
+    }
+    return 1;
+  }
+
+  private synchronized void recordBatch(int size, long flushMs) {
+    batches++;
+    records += size;
+    lastBatchSize = size;
+    maxBatchSize = Math.max(maxBatchSize, size);
+    lastFlushMs = flushMs;
+    maxFlushMs = Math.max(maxFlushMs, flushMs);
+    totalFlushMs += flushMs;
+  }
+
+  private synchronized void recordFailedFlush() {
+    failedFlushes++;
+  }
+
+  private synchronized void recordPause() {
+    pauses++;
+  }
+
+  // One partition's records on their way to the DB
+  private static final class Lane {
+    final TopicPartition partition;
+    // Fetched, not being written yet
+    Chunk waiting;
+    // A write (or the pause before retrying one) is under way
+    boolean busy;
+    boolean queued;
+    boolean revoked;
+    // Records below this offset are dropped: already taken, or (after a seek) already in the DB
+    long nextOffset = -1;
+
+    Lane(TopicPartition partition) {
+      this.partition = partition;
+    }
+  }
+
+  // Consecutive records of one partition, summed per user: N events for one user become one row update
+  private static final class Chunk {
+    final Map<Long, Integer> increments = new HashMap<>();
+    int records;
+    long firstOffset = -1;
+    long lastOffset = -1;
+
+    void add(KafkaConsumerRecord<String, byte[]> record) {
+      records++;
+      if (firstOffset < 0) {
+        firstOffset = record.offset();
+      }
+      lastOffset = record.offset();
+      try {
+        PostCreatedEvent event = PostCreatedEvent.decode(record.value());
+        int posts = event.version() == PostCreatedEvent.LEGACY ? postCount(record) : event.postCount();
+        increments.merge(event.authorId(), posts, Integer::sum);
+      } catch (IllegalArgumentException e) {
+        RECORDS.warn("Invalid post-created event", "key", record.key(), "offset", record.offset(),
+          "error", e.getMessage());
+      }
+    }
+
+    // next holds the records right after these ones
+    void merge(Chunk next) {
+      next.increments.forEach((userId, posts) -> increments.merge(userId, posts, Integer::sum));
+      records += next.records;
+      lastOffset = Math.max(lastOffset, next.lastOffset);
+    }
   }
 }
@@ -1,34 +1,46 @@
 package com.griddynamics.user_service;
 
-import com.griddynamics.user_service.entities.User;
+import com.griddynamics.common.Env;
+import com.griddynamics.common.Log;
+import com.griddynamics.common.MeteredPool;
+import com.griddynamics.common.ServiceMetrics;
+import com.griddynamics.user_service.repositories.UserCache;
 import com.griddynamics.user_service.repositories.UserRepository;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
-import io.vertx.core.http.HttpMethod;
-import io.vertx.core.json.JsonArray;
-import io.vertx.core.json.JsonObject;
-import io.vertx.ext.auth.JWTOptions;
 import io.vertx.ext.auth.PubSecKeyOptions;
 import io.vertx.ext.auth.jwt.JWTAuth;
 import io.vertx.ext.auth.jwt.JWTAuthOptions;
-import io.vertx.ext.web.Router;
-import io.vertx.ext.web.RoutingContext;
-import io.vertx.ext.web.handler.BodyHandler;
-import io.vertx.ext.web.handler.CorsHandler;
+import io.vertx.kafka.client.consumer.KafkaConsumer;
 import io.vertx.jdbcclient.JDBCConnectOptions;
 import io.vertx.jdbcclient.JDBCPool;
 import io.vertx.sqlclient.Pool;
 import io.vertx.sqlclient.PoolOptions;
 
-import java.util.HashSet;
-import java.util.Set;
-
 public class MainVerticle extends AbstractVerticle {
 
+  private static final int DB_POOL_SIZE = 5;
+  private static final Log LOG = Log.get("startup");
+
   private UserRepository userRepository;
   private KafkaConsumerService kafkaConsumer;
   private JWTAuth jwtAuth;
+  private PasswordHasher passwordHasher;
+  private ServiceMetrics metrics;
+
+  // null = connect to the broker in KAFKA_BROKER
+  private final KafkaConsumer<String, byte[]> kafkaConsumerClient;
+
+  public MainVerticle() {
+    this(null);
+  }
+
+  // Lets the load harness run the service against an in-process Kafka stand-in
+  public MainVerticle(KafkaConsumer<String, byte[]> kafkaConsumerClient) {
+    this.kafkaConsumerClient = kafkaConsumerClient;
+  }
 
   public static void main(String[] args) {
     io.vertx.core.Vertx vertx = io.vertx.core.Vertx.vertx();
@@ -38,164 +50,58 @@ public class MainVerticle extends AbstractVerticle {
   @Override
   public void start(Promise<Void> startPromise) throws Exception {
 
+    // One-time setup, shared by every HTTP instance
+    metrics = new ServiceMetrics("user-service");
+
     jwtAuth = JWTAuth.create(vertx, new JWTAuthOptions()
       .addPubSecKey(new PubSecKeyOptions()
         .setAlgorithm("HS256")
-        .setBuffer("my-secret-password-key-1234567890")));
+        .setBuffer(Env.string("JWT_SECRET", "my-secret-password-key-1234567890"))));
+
+    passwordHasher = PasswordHasher.fromEnv(vertx);
 
     JDBCConnectOptions dbConfig = new JDBCConnectOptions()
       .setJdbcUrl("jdbc:h2:mem:test;DB_CLOSE_DELAY=-1")
       .setUser("sa")
       .setPassword("");
 
-    Pool dbClient = JDBCPool.pool(vertx, dbConfig, new PoolOptions().setMaxSize(5));
-    userRepository = new UserRepository(dbClient);
+    Pool dbClient = JDBCPool.pool(vertx, dbConfig, new PoolOptions().setMaxSize(DB_POOL_SIZE));
+    // USER_CACHE_SIZE=0 turns the entity cache off
+    int userCacheSize = Env.integer("USER_CACHE_SIZE", 10000);
+    UserCache userCache = null;
+    if (userCacheSize > 0) {
+      userCache = new UserCache(userCacheSize);
+      userCache.bindTo(metrics.registry());
+    }
+    userRepository = new UserRepository(new MeteredPool(dbClient, DB_POOL_SIZE, metrics.registry(), "users"), userCache);
 
     userRepository.initData()
       .compose(v -> {
         // Init Kafka Consumer (It starts listening immediately)
-        kafkaConsumer = new KafkaConsumerService(vertx, userRepository);
+        kafkaConsumer = kafkaConsumerClient == null
+          ? new KafkaConsumerService(vertx, userRepository, metrics.registry())
+          : new KafkaConsumerService(vertx, userRepository, kafkaConsumerClient, metrics.registry());
         kafkaConsumer.start();
 
-        return startHttpServer();
+        return deployHttpServers();
       })
-      .onSuccess(v -> {
-        System.out.println("✅ User Service Ready (DB + Kafka + HTTP)");
+      .onSuccess(instances -> {
+        LOG.info("User Service ready", "port", 8888, "httpInstances", instances);
         startPromise.complete();
       })
       .onFailure(err -> {
-        System.err.println("❌ Startup Failed: " + err.getMessage());
+        LOG.error("Startup failed", "error", err);
         startPromise.fail(err);
       });
   }
 
-  private Future<Void> startHttpServer() {
-    Router router = Router.router(vertx);
-
-    // ---------------------------------------------------------
-    // 1. ADD CORS HANDLER (Must be first!)
-    // ---------------------------------------------------------
-    Set<String> allowedHeaders = new HashSet<>();
-    allowedHeaders.add("x-requested-with");
-    allowedHeaders.add("Access-Control-Allow-Origin");
-    allowedHeaders.add("origin");
-    allowedHeaders.add("Content-Type");
-    allowedHeaders.add("accept");
-    allowedHeaders.add("Authorization");
-
-    Set<HttpMethod> allowedMethods = new HashSet<>();
-    allowedMethods.add(HttpMethod.GET);
-    allowedMethods.add(HttpMethod.POST);
-    allowedMethods.add(HttpMethod.OPTIONS);
-    allowedMethods.add(HttpMethod.PUT);
-
-    // Allow requests from your Frontend URL (or "*" for all)
-    router.route().handler(CorsHandler.create()
-      .addOrigin("http://localhost:5173")
-      .allowedHeaders(allowedHeaders)
-      .allowedMethods(allowedMethods));
-    // ---------------------------------------------------------
-
-    router.route().handler(BodyHandler.create());
-
-    // Routes
-    router.get("/health").handler(ctx -> ctx.json(new JsonObject().put("status", "UP")));
-    router.post("/register").handler(this::registerUser);
-    router.post("/login").handler(this::loginUser);
-    router.get("/users").handler(this::getAllUsers);
-    router.get("/users/:id").handler(this::getUserById);
-
-    return vertx.createHttpServer()
-      .requestHandler(router)
-      .listen(8888)
-      .mapEmpty(); // Converts Future<HttpServer> to Future<Void>
-  }
+  // One HTTP verticle per core by default; they all share port 8888 and the state built above
+  private Future<Integer> deployHttpServers() {
+    int instances = Env.integer("HTTP_INSTANCES", Runtime.getRuntime().availableProcessors());
 
-  // --- Handlers ---
-
-  private void registerUser(RoutingContext ctx) {
-    JsonObject body = ctx.body().asJsonObject();
-
-    if (body == null || body.getString("username") == null) {
-      ctx.response().setStatusCode(400).end("Username is required");
-      return;
-    }
-
-    User newUser = new User(
-      body.getString("username"),
-      body.getString("email"),
-      body.getString("password")
-    );
-
-    userRepository.save(newUser)
-      .onSuccess(v -> ctx.response().setStatusCode(201).end(new JsonObject().put("message", "User Registered").encode()))
-      .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
-  }
-
-  private void loginUser(RoutingContext ctx) {
-    JsonObject body = ctx.body().asJsonObject();
-    String username = body.getString("username");
-    String password = body.getString("password");
-
-    userRepository.findByUsername(username)
-      .onSuccess(user -> {
-        if (user == null || !user.getPassword().equals(password)) {
-          ctx.response().setStatusCode(401).end(new JsonObject().put("message", "Invalid Credentials").encode());
-        } else {
-
-          // ✨ Generate JWT Token ✨
-          String token = jwtAuth.generateToken(
-            new JsonObject()
-              .put("sub", user.getUsername())  // Subject (Username)
-              .put("userId", user.getId()),    // Custom Claim (User ID)
-            new JWTOptions().setExpiresInSeconds(3600) // Expires in 1 hour
-          );
-
-          // Return Token to Client
-          ctx.json(new JsonObject()
-            .put("message", "Login Success")
-            .put("token", token)
-            .put("userId", user.getId())
-            .put("username", user.getUsername())
-          );
-        }
-      })
-      .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
-  }
-
-  private void getAllUsers(RoutingContext ctx) {
-    userRepository.findAll()
-      .onSuccess(users -> {
-        JsonArray response = new JsonArray();
-        users.forEach(u -> response.add(u.toJson()));
-        ctx.json(response);
-      })
-      .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
-  }
-
-  private void getUserById(RoutingContext ctx) {
-    String idParam = ctx.pathParam("id");
-    Long userId;
-    try {
-      userId = Long.parseLong(idParam);
-    } catch (NumberFormatException e) {
-      ctx.response().setStatusCode(400).end("Invalid User ID");
-      return;
-    }
-
-    userRepository.findById(userId)
-      .onSuccess(user -> {
-        if (user == null) {
-          ctx.response().setStatusCode(404).end("User Not Found");
-        } else {
-          JsonObject cleanUser = new JsonObject()
-            .put("id", user.getId())
-            .put("username", user.getUsername())
-            .put("email", user.getEmail()); // Add other safe fields
-
-          ctx.json(cleanUser);
-        }
-      })
-      .onFailure(err -> ctx.response().setStatusCode(500).end(err.getMessage()));
+    return vertx.deployVerticle(
+        () -> new HttpServerVerticle(userRepository, kafkaConsumer, jwtAuth, passwordHasher, metrics),
+        new DeploymentOptions().setInstances(instances))
+      .map(id -> instances);
   }
 }
@@ -0,0 +1,149 @@
+package com.griddynamics.user_service;
+
+import com.griddynamics.common.Env;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PBKDF2-HMAC-SHA256 password hashing on a dedicated worker pool.
+ * <p>
+ * Hashing is deliberately slow, so it runs neither on the event loop nor on the shared worker
+ * pool the JDBC client uses. At most {@code threads} hashes run at once and at most
+ * {@code queueSize} more may wait; anything beyond that fails fast with a
+ * {@link RejectedExecutionException}, which the HTTP layer turns into a 503.
+ * <p>
+ * Stored format: {@code pbkdf2_sha256$<iterations>$<salt b64>$<hash b64>}. Anything else is a
+ * legacy plain-text password, which {@link #needsRehash} reports so login can migrate it.
+ */
+public class PasswordHasher {
+
+  private static final String PREFIX = "pbkdf2_sha256";
+  private static final int SALT_BYTES = 16;
+  private static final int KEY_BITS = 256;
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private final WorkerExecutor executor;
+  private final int iterations;
+  private final int maxPending;
+
+  private final AtomicInteger pending = new AtomicInteger();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  public PasswordHasher(Vertx vertx, int iterations, int threads, int queueSize) {
+    this.executor = vertx.createSharedWorkerExecutor("password-hasher", threads);
+    this.iterations = iterations;
+    this.maxPending = threads + queueSize;
+  }
+
+  public static PasswordHasher fromEnv(Vertx vertx) {
+    int cores = Runtime.getRuntime().availableProcessors();
+    return new PasswordHasher(vertx,
+      Env.integer("PASSWORD_HASH_ITERATIONS", 210000),
+      Env.integer("PASSWORD_HASH_THREADS", Math.max(1, cores / 2)),
+      Env.integer("PASSWORD_HASH_QUEUE", 64));
+  }
+
+  public Future<String> hash(String password) {
+    return submit(() -> encode(password, iterations));
+  }
+
+  public Future<Boolean> verify(String password, String stored) {
+    if (password == null || stored == null) {
+      return Future.succeededFuture(false);
+    }
+    if (!isHashed(stored)) {
+      // Legacy plain-text row: cheap to check, no need to queue it
+      return Future.succeededFuture(MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8)));
+    }
+    return submit(() -> matches(password, stored));
+  }
+
+  // True for plain-text rows and for hashes made with a different cost than the current one
+  public boolean needsRehash(String stored) {
+    return !isHashed(stored) || !stored.startsWith(PREFIX + "$" + iterations + "$");
+  }
+
+  private <T> Future<T> submit(java.util.concurrent.Callable<T> task) {
+    if (pending.incrementAndGet() > maxPending) {
+      pending.decrementAndGet();
+      rejected.increment();
+      return Future.failedFuture(new RejectedExecutionException("Password hashing queue is full"));
+    }
+    return executor.<T>executeBlocking(() -> {
+      long start = System.nanoTime();
+      try {
+        return task.call();
+      } finally {
+        long took = System.nanoTime() - start;
+        totalNanos.add(took);
+        maxNanos.accumulateAndGet(took, Math::max);
+        completed.increment();
+      }
+    }, false).onComplete(ar -> pending.decrementAndGet());
+  }
+
+  public JsonObject toJson() {
+    long done = completed.sum();
+    return new JsonObject()
+      .put("iterations", iterations)
+      .put("pending", pending.get())
+      .put("maxPending", maxPending)
+      .put("completed", done)
+      .put("rejected", rejected.sum())
+      .put("avgHashMs", done == 0 ? 0.0 : totalNanos.sum() / 1e6 / done)
+      .put("maxHashMs", maxNanos.get() / 1e6);
+  }
+
+  // --- Pure hashing functions (blocking, CPU-bound) ---
+
+  public static String encode(String password, int iterations) {
+    byte[] salt = new byte[SALT_BYTES];
+    RANDOM.nextBytes(salt);
+    byte[] hash = pbkdf2(password, salt, iterations);
+    Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+    return PREFIX + "$" + iterations + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hash);
+  }
+
+  public static boolean matches(String password, String stored) {
+    String[] parts = stored.split("\\$");
+    if (parts.length != 4 || !parts[0].equals(PREFIX)) {
+      return false;
+    }
+    Base64.Decoder b64 = Base64.getDecoder();
+    byte[] expected = b64.decode(parts[3]);
+    byte[] actual = pbkdf2(password, b64.decode(parts[2]), Integer.parseInt(parts[1]));
+    return MessageDigest.isEqual(expected, actual);
+  }
+
+  public static boolean isHashed(String stored) {
+    return stored != null && stored.startsWith(PREFIX + "$");
+  }
+
+  private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+    PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+    try {
+      return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("PBKDF2WithHmacSHA256 is not available", e);
+    } finally {
+      spec.clearPassword();
+    }
+  }
+}
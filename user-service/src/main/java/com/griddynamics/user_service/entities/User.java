@@ -1,8 +1,12 @@
 package com.griddynamics.user_service.entities;
 
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.sqlclient.Row;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class User {
   private Long id;
   private String username;
@@ -77,4 +81,13 @@ public class User {
       .put("email", email)
       .put("postCount", postCount);
   }
+
+  // Body of GET /users
+  public static JsonArray toJsonArray(List<User> users) {
+    JsonArray array = new JsonArray(new ArrayList<>(users.size()));
+    for (User user : users) {
+      array.add(user.toJson());
+    }
+    return array;
+  }
 }
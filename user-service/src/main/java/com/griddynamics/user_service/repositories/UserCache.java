@@ -0,0 +1,200 @@
+package com.griddynamics.user_service.repositories;
+
+import com.griddynamics.user_service.entities.User;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of users, indexed by id and by username. All methods are thread-safe.
+ * <p>
+ * Post counts are updated in place after the DB write succeeds ({@link #incrementsFinished}),
+ * so a cached read never trails an applied update. A load only enters the cache if no write to
+ * that user started or finished while it was running ({@link #loadStarted} /
+ * {@link #putIfUnchanged}), and never while an increment for that user is in flight. Otherwise a
+ * row read before the update could be put back after it, or a row read after it could get the
+ * delta a second time. Writes to other users don't hold a load back.
+ */
+public class UserCache {
+
+  private final int maxEntries;
+  private final LinkedHashMap<Long, Entry> byId = new LinkedHashMap<>(256, 0.75f, true);
+  private final Map<String, Long> idByUsername = new HashMap<>();
+  private final Map<Long, Integer> incrementsInFlight = new HashMap<>();
+  private long writeSeq;
+  // writeSeq of the last write to each user. Bounded: past maxEntries users it is cleared, and
+  // loads that started before that are dropped, as they can no longer be checked
+  private final Map<Long, Long> lastWrite = new HashMap<>();
+  private long forgottenUpTo;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public UserCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  public synchronized User get(Long id) {
+    Entry entry = byId.get(id);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.toUser();
+  }
+
+  public synchronized User getByUsername(String username) {
+    Long id = idByUsername.get(username);
+    return id == null ? missed() : get(id);
+  }
+
+  // Returns a token for putIfUnchanged; take it before reading from the DB
+  public synchronized long loadStarted() {
+    return writeSeq;
+  }
+
+  public synchronized void putIfUnchanged(User user, long loadToken) {
+    if (user == null || loadToken < forgottenUpTo || lastWrite.getOrDefault(user.getId(), 0L) > loadToken
+      || incrementsInFlight.containsKey(user.getId())) {
+      return;
+    }
+    Entry previous = byId.put(user.getId(), new Entry(user));
+    if (previous != null && !previous.username.equals(user.getUsername())) {
+      idByUsername.remove(previous.username);
+    }
+    idByUsername.put(user.getUsername(), user.getId());
+
+    while (byId.size() > maxEntries) {
+      Map.Entry<Long, Entry> eldest = byId.entrySet().iterator().next();
+      byId.remove(eldest.getKey());
+      idByUsername.remove(eldest.getValue().username);
+      evictions++;
+    }
+  }
+
+  // Call before the DB update of these users' post counts starts
+  public synchronized void incrementsStarted(Collection<Long> ids) {
+    writeSeq++;
+    for (Long id : ids) {
+      incrementsInFlight.merge(id, 1, Integer::sum);
+      written(id);
+    }
+  }
+
+  // Write-through for post counts: call once the DB update has completed. If it failed, the
+  // cached rows are dropped rather than guessed at (a failed commit may still have landed).
+  public synchronized void incrementsFinished(Map<Long, Integer> increments, boolean applied) {
+    writeSeq++;
+    increments.forEach((id, delta) -> {
+      incrementsInFlight.computeIfPresent(id, (key, writes) -> writes == 1 ? null : writes - 1);
+      written(id);
+      Entry entry = byId.get(id);
+      if (entry == null) {
+        return;
+      }
+      if (applied) {
+        entry.postCount += delta;
+      } else {
+        byId.remove(id);
+        idByUsername.remove(entry.username);
+      }
+    });
+  }
+
+  public synchronized void invalidate(Long id) {
+    writeSeq++;
+    written(id);
+    Entry entry = byId.remove(id);
+    if (entry != null) {
+      idByUsername.remove(entry.username);
+    }
+  }
+
+  public synchronized JsonObject toJson() {
+    long lookups = hits + misses;
+    return new JsonObject()
+      .put("entries", byId.size())
+      .put("maxEntries", maxEntries)
+      .put("hits", hits)
+      .put("misses", misses)
+      .put("hitRatio", lookups == 0 ? 0.0 : (double) hits / lookups)
+      .put("evictions", evictions);
+  }
+
+  // Same numbers as toJson, for Prometheus
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("user.cache.hits", this, UserCache::hits)
+      .description("User lookups answered from the entity cache")
+      .register(registry);
+    FunctionCounter.builder("user.cache.misses", this, UserCache::misses)
+      .description("User lookups that had to read the DB")
+      .register(registry);
+    FunctionCounter.builder("user.cache.evictions", this, UserCache::evictions)
+      .description("Users evicted to stay within USER_CACHE_SIZE")
+      .register(registry);
+    Gauge.builder("user.cache.entries", this, UserCache::size)
+      .description("Users in the entity cache")
+      .register(registry);
+  }
+
+  private synchronized long hits() {
+    return hits;
+  }
+
+  private synchronized long misses() {
+    return misses;
+  }
+
+  private synchronized long evictions() {
+    return evictions;
+  }
+
+  private synchronized int size() {
+    return byId.size();
+  }
+
+  private void written(Long id) {
+    if (lastWrite.size() >= maxEntries && !lastWrite.containsKey(id)) {
+      lastWrite.clear();
+      forgottenUpTo = writeSeq;
+    }
+    lastWrite.put(id, writeSeq);
+  }
+
+  private User missed() {
+    misses++;
+    return null;
+  }
+
+  // Callers get a fresh User each time, so they can't change what is cached
+  private static final class Entry {
+    final Long id;
+    final String username;
+    final String email;
+    final String password;
+    int postCount;
+
+    Entry(User user) {
+      this.id = user.getId();
+      this.username = user.getUsername();
+      this.email = user.getEmail();
+      this.password = user.getPassword();
+      this.postCount = user.getPostCount();
+    }
+
+    User toUser() {
+      User user = new User(username, email, password);
+      user.setId(id);
+      user.setPostCount(postCount);
+      return user;
+    }
+  }
+}
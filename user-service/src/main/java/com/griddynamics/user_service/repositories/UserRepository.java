@@ -1,17 +1,30 @@
 package com.griddynamics.user_service.repositories;
 
+import com.griddynamics.common.CollectionVersion;
+import com.griddynamics.common.MeteredPool;
 import com.griddynamics.user_service.entities.User;
 import io.vertx.core.Future;
-import io.vertx.sqlclient.Pool;
 import io.vertx.sqlclient.Tuple;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class UserRepository {
-  private final Pool dbClient;
-  public UserRepository(Pool dbClient) {
+  private final MeteredPool dbClient;
+  private final UserCache cache; // null when caching is disabled
+  // Moves on every write that changes what GET /users returns
+  private final CollectionVersion version = new CollectionVersion();
+
+  public UserRepository(MeteredPool dbClient) {
+    this(dbClient, null);
+  }
+
+  public UserRepository(MeteredPool dbClient, UserCache cache) {
     this.dbClient = dbClient;
+    this.cache = cache;
   }
 
   // 1. Initialize Table
@@ -22,20 +35,27 @@ public class UserRepository {
       "email VARCHAR(255) UNIQUE NOT NULL, " +
       "password VARCHAR(255) NOT NULL, " +
       "post_count INT DEFAULT 0 )";
+    // Per Kafka partition, the offset after the last post-created event applied to post_count
+    String offsets = "CREATE TABLE IF NOT EXISTS applied_offsets (" +
+      "topic VARCHAR(255) NOT NULL, " +
+      "partition_id INT NOT NULL, " +
+      "next_offset BIGINT NOT NULL, " +
+      "PRIMARY KEY (topic, partition_id) )";
 
-    return dbClient.query(schema).execute().mapEmpty();
+    return dbClient.withConnection(conn -> conn.query(schema).execute()
+      .compose(v -> conn.query(offsets).execute())).mapEmpty();
   }
 
   public Future<Void> save(User user) {
     String sql = "INSERT INTO users (username, email, password) VALUES (?, ?, ?)";
-    return dbClient.preparedQuery(sql)
-      .execute(Tuple.of(user.getUsername(), user.getEmail(), user.getPassword()))
-      .mapEmpty();
+    return dbClient.withConnection(conn -> conn.preparedQuery(sql)
+        .execute(Tuple.of(user.getUsername(), user.getEmail(), user.getPassword())))
+      .<Void>mapEmpty()
+      .onComplete(ar -> version.advance());
   }
 
   public Future<List<User>> findAll() {
-    return dbClient.query("SELECT * FROM users")
-      .execute()
+    return dbClient.withConnection(conn -> conn.query("SELECT * FROM users").execute())
       .map(rows -> {
         List<User> users = new ArrayList<>();
         for (io.vertx.sqlclient.Row row : rows) {
@@ -46,29 +66,162 @@ public class UserRepository {
   }
 
   public Future<User> findByUsername(String username) {
+    if (cache != null) {
+      User cached = cache.getByUsername(username);
+      if (cached != null) {
+        return Future.succeededFuture(cached);
+      }
+    }
+    long loadToken = cache != null ? cache.loadStarted() : 0;
+
     String sql = "SELECT * FROM users WHERE username = ?";
-    return dbClient.preparedQuery(sql)
-      .execute(Tuple.of(username))
+    return dbClient.withConnection(conn -> conn.preparedQuery(sql)
+        .execute(Tuple.of(username)))
       .map(rows -> {
         if (rows.size() == 0) return null;
-        return User.fromRow(rows.iterator().next());
+        return cached(User.fromRow(rows.iterator().next()), loadToken);
+      });
+  }
+
+  // Requests queued for a DB connection; background writers hold back while there are any
+  public int connectionsWaiting() {
+    return dbClient.waiting();
+  }
+
+  /**
+   * Applies the post counts of one partition's events {@code [firstOffset, nextOffset)} and moves
+   * the partition's applied offset to {@code nextOffset}, in one transaction. A replay is a no-op:
+   * if the stored offset is already past {@code firstOffset}, nothing is written and the result is
+   * false ({@link #appliedOffset} then says where to resume). All or nothing, since a failed
+   * batch is retried as a whole.
+   */
+  public Future<Boolean> applyPostCounts(String topic, int partition, long firstOffset, long nextOffset,
+                                         Map<Long, Integer> increments) {
+    String select = "SELECT next_offset FROM applied_offsets WHERE topic = ? AND partition_id = ? FOR UPDATE";
+    String sql = "UPDATE users SET post_count = post_count + ? WHERE id = ?";
+    List<Tuple> batch = new ArrayList<>(increments.size());
+    increments.forEach((userId, delta) -> batch.add(Tuple.of(delta, userId)));
+    if (cache != null) {
+      cache.incrementsStarted(increments.keySet());
+    }
+    return dbClient.withTransaction(conn -> conn.preparedQuery(select)
+        .execute(Tuple.of(topic, partition))
+        .compose(rows -> {
+          Long applied = rows.size() == 0 ? null : rows.iterator().next().getLong(0);
+          if (applied != null && applied > firstOffset) {
+            return Future.succeededFuture(false);
+          }
+          // A first insert racing another owner's fails on the key, and the retry sees its row
+          String offset = applied == null
+            ? "INSERT INTO applied_offsets (next_offset, topic, partition_id) VALUES (?, ?, ?)"
+            : "UPDATE applied_offsets SET next_offset = ? WHERE topic = ? AND partition_id = ?";
+          Future<?> counts = batch.isEmpty() ? Future.succeededFuture() : conn.preparedQuery(sql).executeBatch(batch);
+          return counts
+            .compose(v -> conn.preparedQuery(offset).execute(Tuple.of(nextOffset, topic, partition)))
+            .map(true);
+        }))
+      .onComplete(ar -> {
+        // Write-through: the cached counts move only once the DB has them
+        if (cache != null) {
+          cache.incrementsFinished(increments, ar.succeeded() && ar.result());
+        }
+        if (ar.succeeded() && ar.result() && !increments.isEmpty()) {
+          version.advance();
+        }
       });
   }
 
-  public Future<Void> incrementPostCount(Long userId) {
-    String sql = "UPDATE users SET post_count = post_count + 1 WHERE id = ?";
-    return dbClient.preparedQuery(sql)
-      .execute(Tuple.of(userId))
-      .mapEmpty();
+  // Offset after the last event applied for this partition; 0 when none has been
+  public Future<Long> appliedOffset(String topic, int partition) {
+    String sql = "SELECT next_offset FROM applied_offsets WHERE topic = ? AND partition_id = ?";
+    return dbClient.withConnection(conn -> conn.preparedQuery(sql)
+        .execute(Tuple.of(topic, partition)))
+      .map(rows -> rows.size() == 0 ? 0L : rows.iterator().next().getLong(0));
+  }
+
+  public Future<Void> updatePassword(Long userId, String password) {
+    String sql = "UPDATE users SET password = ? WHERE id = ?";
+    return dbClient.withConnection(conn -> conn.preparedQuery(sql)
+        .execute(Tuple.of(password, userId)))
+      .<Void>mapEmpty()
+      .onSuccess(v -> {
+        if (cache != null) {
+          cache.invalidate(userId);
+        }
+      });
   }
 
   public Future<User> findById(Long userId) {
+    if (cache != null) {
+      User cached = cache.get(userId);
+      if (cached != null) {
+        return Future.succeededFuture(cached);
+      }
+    }
+    long loadToken = cache != null ? cache.loadStarted() : 0;
+
     String sql = "SELECT * FROM users WHERE id = ?";
-    return dbClient.preparedQuery(sql)
-      .execute(Tuple.of(userId))
+    return dbClient.withConnection(conn -> conn.preparedQuery(sql)
+        .execute(Tuple.of(userId)))
       .map(rows -> {
         if (rows.size() == 0) return null;
-        return User.fromRow(rows.iterator().next());
+        return cached(User.fromRow(rows.iterator().next()), loadToken);
       });
   }
+
+  // Many users in one round trip: cached ones from the cache, the rest with a single IN query.
+  // Comes back in the order of ids; unknown ids are left out.
+  public Future<List<User>> findByIds(Collection<Long> ids) {
+    Map<Long, User> found = new HashMap<>();
+    List<Long> missing = new ArrayList<>();
+    for (Long id : ids) {
+      User cached = cache != null ? cache.get(id) : null;
+      if (cached != null) {
+        found.put(id, cached);
+      } else {
+        missing.add(id);
+      }
+    }
+
+    Future<Void> loaded = Future.succeededFuture();
+    if (!missing.isEmpty()) {
+      long loadToken = cache != null ? cache.loadStarted() : 0;
+      String sql = "SELECT * FROM users WHERE id IN (" + "?, ".repeat(missing.size() - 1) + "?)";
+      loaded = dbClient.withConnection(conn -> conn.preparedQuery(sql)
+          .execute(Tuple.wrap(new ArrayList<Object>(missing))))
+        .map(rows -> {
+          for (io.vertx.sqlclient.Row row : rows) {
+            User user = cached(User.fromRow(row), loadToken);
+            found.put(user.getId(), user);
+          }
+          return null;
+        });
+    }
+
+    return loaded.map(v -> {
+      List<User> users = new ArrayList<>(found.size());
+      for (Long id : ids) {
+        User user = found.get(id);
+        if (user != null) {
+          users.add(user);
+        }
+      }
+      return users;
+    });
+  }
+
+  public UserCache cache() {
+    return cache;
+  }
+
+  public CollectionVersion version() {
+    return version;
+  }
+
+  private User cached(User user, long loadToken) {
+    if (cache != null) {
+      cache.putIfUnchanged(user, loadToken);
+    }
+    return user;
+  }
 }
@@ -0,0 +1,126 @@
+package com.griddynamics.user_service;
+
+import com.griddynamics.common.MeteredPool;
+import com.griddynamics.common.PostCreatedEvent;
+import com.griddynamics.user_service.entities.User;
+import com.griddynamics.user_service.repositories.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.jdbcclient.JDBCConnectOptions;
+import io.vertx.jdbcclient.JDBCPool;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.kafka.client.consumer.KafkaConsumer;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.PoolOptions;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Two consumers of one partition over one DB, on Kafka's MockConsumer instead of a broker
+@ExtendWith(VertxExtension.class)
+public class TestKafkaConsumerService {
+
+  private static final String TOPIC = "post-created-topic";
+  private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+  private Vertx vertx;
+  private UserRepository repository;
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    this.vertx = vertx;
+    Pool pool = JDBCPool.pool(vertx, new JDBCConnectOptions()
+      .setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1")
+      .setUser("sa")
+      .setPassword(""), new PoolOptions().setMaxSize(4));
+    repository = new UserRepository(new MeteredPool(pool));
+    repository.initData()
+      .compose(v -> repository.save(new User("a", "a@example.com", "secret")))
+      .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  void next_owner_of_a_revoked_partition_skips_what_is_already_counted() throws Exception {
+    MockConsumer<String, byte[]> first = start(0, 10);
+    await(() -> postCount() == 10);
+    // Revoked before its commit counts: the next owner starts over from 0
+    first.schedulePollTask(() -> first.rebalance(List.of()));
+
+    MockConsumer<String, byte[]> next = start(0, 15);
+    await(() -> position(next) == 10);
+    // MockConsumer forgets what a poll returned; after the seek back the broker would serve these again
+    records(10, 15).forEach(next::addRecord);
+
+    await(() -> committed(next) == 15);
+    assertEquals(15, postCount());
+  }
+
+  @Test
+  void two_owners_of_one_partition_count_it_once() throws Exception {
+    MockConsumer<String, byte[]> first = start(0, 15);
+    MockConsumer<String, byte[]> second = start(0, 15);
+
+    await(() -> committed(first) == 15 && committed(second) == 15);
+    assertEquals(15, postCount());
+  }
+
+  // A consumer that is assigned the partition on its first poll, with events [from, to) for user 1
+  private MockConsumer<String, byte[]> start(long from, long to) {
+    MockConsumer<String, byte[]> mock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+    mock.schedulePollTask(() -> {
+      mock.rebalance(List.of(PARTITION));
+      mock.updateBeginningOffsets(Map.of(PARTITION, 0L));
+      records(from, to).forEach(mock::addRecord);
+    });
+    new KafkaConsumerService(vertx, repository, KafkaConsumer.create(vertx, mock), new SimpleMeterRegistry()).start();
+    return mock;
+  }
+
+  private static List<ConsumerRecord<String, byte[]>> records(long from, long to) {
+    return LongStream.range(from, to)
+      .mapToObj(offset -> new ConsumerRecord<>(TOPIC, 0, offset, "1",
+        PostCreatedEvent.of(offset + 1, 1, 1, System.currentTimeMillis()).encode()))
+      .toList();
+  }
+
+  private int postCount() throws Exception {
+    return repository.findById(1L).toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS).getPostCount();
+  }
+
+  private static long position(MockConsumer<String, byte[]> mock) {
+    return mock.assignment().contains(PARTITION) ? mock.position(PARTITION) : -1;
+  }
+
+  private static long committed(MockConsumer<String, byte[]> mock) {
+    OffsetAndMetadata offset = mock.committed(Set.of(PARTITION)).get(PARTITION);
+    return offset == null ? 0 : offset.offset();
+  }
+
+  private static void await(ThrowingCondition condition) throws Exception {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (!condition.test()) {
+      assertTrue(System.currentTimeMillis() < deadline, "timed out");
+      Thread.sleep(20);
+    }
+  }
+
+  private interface ThrowingCondition {
+    boolean test() throws Exception;
+  }
+}
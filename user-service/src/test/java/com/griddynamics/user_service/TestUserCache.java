@@ -0,0 +1,149 @@
+package com.griddynamics.user_service;
+
+import com.griddynamics.user_service.entities.User;
+import com.griddynamics.user_service.repositories.UserCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Replays the interleavings of a cache miss and a post count update one step at a time
+public class TestUserCache {
+
+  @Test
+  void load_that_reads_the_updated_row_during_the_write_is_not_counted_twice() {
+    UserCache cache = new UserCache(10);
+    cache.incrementsStarted(List.of(1L));
+    // A miss runs after the UPDATE committed but before the write completes
+    long token = cache.loadStarted();
+    cache.putIfUnchanged(user(1L, 1), token);
+    cache.incrementsFinished(Map.of(1L, 1), true);
+
+    assertNull(cache.get(1L));
+    cache.putIfUnchanged(user(1L, 1), cache.loadStarted());
+    assertEquals(1, cache.get(1L).getPostCount());
+  }
+
+  @Test
+  void load_that_started_before_the_write_is_dropped_after_it() {
+    UserCache cache = new UserCache(10);
+    long token = cache.loadStarted();
+    cache.incrementsStarted(List.of(1L));
+    cache.incrementsFinished(Map.of(1L, 1), true);
+    // The read saw the row from before the update
+    cache.putIfUnchanged(user(1L, 0), token);
+
+    assertNull(cache.get(1L));
+  }
+
+  @Test
+  void load_that_started_during_the_write_is_dropped_after_it() {
+    UserCache cache = new UserCache(10);
+    cache.incrementsStarted(List.of(1L));
+    long token = cache.loadStarted();
+    cache.incrementsFinished(Map.of(1L, 1), true);
+    cache.putIfUnchanged(user(1L, 1), token);
+
+    assertNull(cache.get(1L));
+  }
+
+  @Test
+  void successful_write_moves_the_cached_count() {
+    UserCache cache = new UserCache(10);
+    cache.putIfUnchanged(user(1L, 3), cache.loadStarted());
+    cache.incrementsStarted(List.of(1L));
+    cache.incrementsFinished(Map.of(1L, 2), true);
+
+    assertEquals(5, cache.get(1L).getPostCount());
+  }
+
+  @Test
+  void failed_write_drops_the_cached_row() {
+    UserCache cache = new UserCache(10);
+    cache.putIfUnchanged(user(1L, 3), cache.loadStarted());
+    cache.incrementsStarted(List.of(1L));
+    cache.incrementsFinished(Map.of(1L, 2), false);
+
+    assertNull(cache.get(1L));
+    assertNull(cache.getByUsername("user1"));
+  }
+
+  @Test
+  void other_users_load_while_a_write_is_in_flight() {
+    UserCache cache = new UserCache(10);
+    cache.incrementsStarted(List.of(1L));
+    cache.putIfUnchanged(user(2L, 0), cache.loadStarted());
+    cache.putIfUnchanged(user(1L, 0), cache.loadStarted());
+
+    assertEquals(0, cache.get(2L).getPostCount());
+    assertNull(cache.get(1L));
+
+    // Still held back until every overlapping write is done
+    cache.incrementsStarted(List.of(1L));
+    cache.incrementsFinished(Map.of(1L, 1), true);
+    cache.putIfUnchanged(user(1L, 1), cache.loadStarted());
+    assertNull(cache.get(1L));
+    cache.incrementsFinished(Map.of(1L, 1), true);
+    cache.putIfUnchanged(user(1L, 2), cache.loadStarted());
+    assertEquals(2, cache.get(1L).getPostCount());
+  }
+
+  @Test
+  void write_to_one_user_keeps_a_concurrent_load_of_another() {
+    UserCache cache = new UserCache(10);
+    long token = cache.loadStarted();
+    cache.incrementsStarted(List.of(1L));
+    cache.incrementsFinished(Map.of(1L, 1), true);
+    cache.invalidate(3L);
+    cache.putIfUnchanged(user(2L, 4), token);
+    cache.putIfUnchanged(user(1L, 0), token);
+
+    assertEquals(4, cache.get(2L).getPostCount());
+    assertNull(cache.get(1L));
+  }
+
+  @Test
+  void loads_older_than_the_forgotten_writes_are_dropped() {
+    UserCache cache = new UserCache(2);
+    long token = cache.loadStarted();
+    cache.invalidate(1L);
+    cache.invalidate(2L);
+    // A third user overflows the per-user write log, which no longer knows about users 1 and 2
+    cache.invalidate(3L);
+    cache.putIfUnchanged(user(4L, 0), token);
+    cache.putIfUnchanged(user(1L, 0), token);
+
+    assertNull(cache.get(4L));
+    assertNull(cache.get(1L));
+    cache.putIfUnchanged(user(1L, 0), cache.loadStarted());
+    assertEquals(0, cache.get(1L).getPostCount());
+  }
+
+  @Test
+  void hits_and_misses_reach_the_registry() {
+    UserCache cache = new UserCache(1);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    cache.bindTo(registry);
+    cache.get(1L);
+    cache.putIfUnchanged(user(1L, 0), cache.loadStarted());
+    cache.get(1L);
+    cache.getByUsername("user1");
+    cache.putIfUnchanged(user(2L, 0), cache.loadStarted());
+
+    assertEquals(2, registry.get("user.cache.hits").functionCounter().count());
+    assertEquals(1, registry.get("user.cache.misses").functionCounter().count());
+    assertEquals(1, registry.get("user.cache.evictions").functionCounter().count());
+    assertEquals(1, registry.get("user.cache.entries").gauge().value());
+  }
+
+  private static User user(Long id, int postCount) {
+    User user = new User("user" + id, "user" + id + "@example.com", "secret");
+    user.setId(id);
+    user.setPostCount(postCount);
+    return user;
+  }
+}
@@ -0,0 +1,109 @@
+package com.griddynamics.user_service.repositories;
+
+import com.griddynamics.common.MeteredPool;
+import com.griddynamics.user_service.entities.User;
+import io.vertx.core.Vertx;
+import io.vertx.jdbcclient.JDBCConnectOptions;
+import io.vertx.jdbcclient.JDBCPool;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import io.vertx.sqlclient.Pool;
+import io.vertx.sqlclient.PoolOptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ExtendWith(VertxExtension.class)
+public class TestUserRepository {
+
+  private static final String TOPIC = "post-created-topic";
+
+  private UserRepository repository;
+
+  @BeforeEach
+  void setUp(Vertx vertx, VertxTestContext testContext) {
+    Pool pool = JDBCPool.pool(vertx, new JDBCConnectOptions()
+      .setJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1")
+      .setUser("sa")
+      .setPassword(""), new PoolOptions().setMaxSize(2));
+    repository = new UserRepository(new MeteredPool(pool), new UserCache(10));
+    repository.initData()
+      .compose(v -> repository.save(new User("a", "a@example.com", "secret")))
+      .compose(v -> repository.save(new User("b", "b@example.com", "secret")))
+      .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  void replayed_events_change_no_counts(Vertx vertx, VertxTestContext testContext) {
+    repository.applyPostCounts(TOPIC, 0, 0, 10, Map.of(1L, 7, 2L, 3))
+      .compose(applied -> {
+        testContext.verify(() -> assertTrue(applied));
+        // Cached before the replays, so a wrong write-through would show too
+        return repository.findById(1L);
+      })
+      // Redelivered as it was, then merged with the events after it
+      .compose(user -> repository.applyPostCounts(TOPIC, 0, 0, 10, Map.of(1L, 7, 2L, 3)))
+      .compose(applied -> {
+        testContext.verify(() -> assertFalse(applied));
+        return repository.applyPostCounts(TOPIC, 0, 5, 12, Map.of(1L, 4));
+      })
+      .compose(applied -> {
+        testContext.verify(() -> assertFalse(applied));
+        return repository.applyPostCounts(TOPIC, 0, 10, 12, Map.of(1L, 2));
+      })
+      .compose(applied -> {
+        testContext.verify(() -> assertTrue(applied));
+        return repository.findById(1L);
+      })
+      .compose(user -> {
+        testContext.verify(() -> assertEquals(9, user.getPostCount()));
+        return repository.findById(2L);
+      })
+      .compose(user -> {
+        testContext.verify(() -> assertEquals(3, user.getPostCount()));
+        return repository.appliedOffset(TOPIC, 0);
+      })
+      .onComplete(testContext.succeeding(offset -> testContext.verify(() -> {
+        assertEquals(12L, offset);
+        testContext.completeNow();
+      })));
+  }
+
+  @Test
+  void partitions_keep_their_own_offsets(Vertx vertx, VertxTestContext testContext) {
+    repository.applyPostCounts(TOPIC, 0, 0, 100, Map.of(1L, 1))
+      .compose(applied -> repository.applyPostCounts(TOPIC, 1, 0, 3, Map.of(2L, 1)))
+      .compose(applied -> {
+        testContext.verify(() -> assertTrue(applied));
+        return repository.appliedOffset(TOPIC, 2);
+      })
+      .compose(none -> {
+        testContext.verify(() -> assertEquals(0L, none));
+        return repository.appliedOffset(TOPIC, 1);
+      })
+      .onComplete(testContext.succeeding(offset -> testContext.verify(() -> {
+        assertEquals(3L, offset);
+        testContext.completeNow();
+      })));
+  }
+
+  @Test
+  void events_without_counts_still_move_the_offset(Vertx vertx, VertxTestContext testContext) {
+    repository.applyPostCounts(TOPIC, 0, 0, 4, Map.of())
+      .compose(applied -> {
+        testContext.verify(() -> assertTrue(applied));
+        return repository.applyPostCounts(TOPIC, 0, 2, 6, Map.of(1L, 1));
+      })
+      .onComplete(testContext.succeeding(applied -> testContext.verify(() -> {
+        assertFalse(applied);
+        testContext.completeNow();
+      })));
+  }
+}